@@ -5,14 +5,21 @@ import io.micronaut.context.event.ApplicationEventPublisher;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.exceptions.HttpStatusException;
 import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.database.ConnectionBuilder;
+import org.dandoy.dbpop.database.Database;
 import org.dandoy.dbpop.database.DatabaseCache;
 import org.dandoy.dbpop.database.DefaultDatabase;
+import org.dandoy.dbpop.database.TableName;
 import org.dandoy.dbpop.database.VirtualFkCache;
 
 import java.io.File;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.dandoy.dbpopd.utils.IOUtils.toCanonical;
 
@@ -24,9 +31,18 @@ public class DatabaseCacheService {
     private final ConnectionBuilder[] connectionBuilders = new ConnectionBuilder[2];
     private final DatabaseCache[] databaseCaches = new DatabaseCache[2];
     private final VirtualFkCache virtualFkCache;
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Database Cache Refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
 
+    /**
+     * @param refreshSeconds how often the table definitions are compared with the databases, 0 to never refresh them
+     */
     public DatabaseCacheService(
             @SuppressWarnings("MnInjectionPoints") @Property(name = "dbpopd.configuration.path") String configurationPath,
+            @Property(name = "dbpopd.databaseCache.refreshSeconds", defaultValue = "60") int refreshSeconds,
             ApplicationEventPublisher<DatabaseCacheChangedEvent> databaseCacheChangedPublisher,
             ApplicationEventPublisher<DatabaseVersionChangedEvent> databaseVersionChangedPublisher) {
         this.databaseCacheChangedPublisher = databaseCacheChangedPublisher;
@@ -34,6 +50,34 @@ public class DatabaseCacheService {
         File configurationDir = toCanonical(new File(configurationPath));
         File vfkFile = new File(configurationDir, "vfk.json");
         virtualFkCache = VirtualFkCache.createVirtualFkCache(vfkFile);
+        if (refreshSeconds > 0) {
+            refreshExecutor.scheduleWithFixedDelay(this::refreshDatabaseCaches, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void preDestroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Only the tables whose definition has changed are introspected again, the connections are kept.
+     * The schema versions are read on a short-lived connection, the connection of the cache may be in the transaction of a populate.
+     */
+    private void refreshDatabaseCaches() {
+        for (ConnectionType type : ConnectionType.values()) {
+            DatabaseCache databaseCache = databaseCaches[type.ordinal()];
+            ConnectionBuilder connectionBuilder = connectionBuilders[type.ordinal()];
+            if (databaseCache == null || connectionBuilder == null) continue;
+            try (DefaultDatabase database = Database.createDefaultDatabase(connectionBuilder)) {
+                Set<TableName> changedTables = databaseCache.invalidateChangedTables(database);
+                if (!changedTables.isEmpty()) {
+                    log.info("The definition of {} tables has changed in the {} database", changedTables.size(), type);
+                }
+            } catch (Exception e) {
+                log.error("Failed to refresh the {} database cache", type, e);
+            }
+        }
     }
 
     @EventListener
@@ -106,8 +150,13 @@ public class DatabaseCacheService {
         return ret;
     }
 
+    /**
+     * Forgets the table definitions of the target database, the connection is kept.
+     */
     public void clearTargetDatabaseCache() {
-        ConnectionBuilder connectionBuilder = connectionBuilders[ConnectionType.TARGET.ordinal()];
-        setConnectionBuilder(ConnectionType.TARGET, connectionBuilder);
+        DatabaseCache databaseCache = getTargetDatabaseCache();
+        if (databaseCache != null) {
+            databaseCache.invalidate();
+        }
     }
 }
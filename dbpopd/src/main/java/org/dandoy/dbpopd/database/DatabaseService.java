@@ -1,5 +1,6 @@
 package org.dandoy.dbpopd.database;
 
+import io.micronaut.context.annotation.Property;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.exceptions.HttpStatusException;
 import io.micronaut.runtime.event.annotation.EventListener;
@@ -16,22 +17,42 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @Singleton
 @Slf4j
 public class DatabaseService {
     private final ConfigurationService configurationService;
-    private final Object sourceRowCountLock = new Object();
-    private Map<TableName, RowCount> sourceRowCounts = new HashMap<>();
+    private final boolean exactRowCounts;
+    private final int rowCountRefreshSeconds;
+    private final ScheduledExecutorService rowCounter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Row Counter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> rowCountFuture;
+    private volatile Map<TableName, RowCount> sourceRowCounts = new HashMap<>();
     @Nullable
-    private DatabaseCache sourceDatabase;
+    private volatile DatabaseCache sourceDatabase;
 
-    public DatabaseService(ConfigurationService configurationService) {
+    /**
+     * @param exactRowCounts         count the rows of the tables that the database has no estimate for, which scans them
+     * @param rowCountRefreshSeconds how often the estimates are refreshed, 0 to only read them when connecting
+     */
+    public DatabaseService(ConfigurationService configurationService,
+                           @Property(name = "dbpopd.rowCount.exact", defaultValue = "false") boolean exactRowCounts,
+                           @Property(name = "dbpopd.rowCount.refreshSeconds", defaultValue = "300") int rowCountRefreshSeconds) {
         this.configurationService = configurationService;
+        this.exactRowCounts = exactRowCounts;
+        this.rowCountRefreshSeconds = rowCountRefreshSeconds;
     }
 
     @PreDestroy
     void preDestroy() {
+        rowCounter.shutdownNow();
         if (sourceDatabase != null) sourceDatabase.close();
     }
 
@@ -47,30 +68,61 @@ public class DatabaseService {
                 loadSourceTableCount(sourceDatabase);
             } else {
                 sourceDatabase = null;
+                loadSourceTableCount(null);
+            }
+        }
+    }
+
+    private synchronized void loadSourceTableCount(@Nullable DatabaseCache sourceDatabase) {
+        if (rowCountFuture != null) rowCountFuture.cancel(false);
+        rowCountFuture = null;
+        sourceRowCounts = new HashMap<>();
+        if (sourceDatabase == null) return;
+        Runnable task = () -> {
+            try {
+                publishSourceRowCounts(sourceDatabase, countSourceRows(sourceDatabase));
+            } catch (Exception e) {
+                log.error("Failed to count the rows of the source database", e);
             }
+        };
+        if (rowCountRefreshSeconds > 0) {
+            rowCountFuture = rowCounter.scheduleWithFixedDelay(task, 0, rowCountRefreshSeconds, TimeUnit.SECONDS);
+        } else {
+            rowCountFuture = rowCounter.submit(task);
         }
     }
 
-    private void loadSourceTableCount(DatabaseCache sourceDatabase) {
-        Thread thread = new Thread(() -> {
-            synchronized (sourceRowCountLock) {
-                Map<TableName, RowCount> rowCounts = new HashMap<>();
-                for (String catalog : sourceDatabase.getCatalogs()) {
-                    for (Table table : sourceDatabase.getTables(catalog)) {
-                        TableName tableName = table.getTableName();
-                        try {
-                            RowCount rowCount = sourceDatabase.getRowCount(tableName);
-                            rowCounts.put(tableName, rowCount);
-                        } catch (Exception e) {
-                            log.error("Failed to count the rows in " + tableName, e);
-                        }
+    /**
+     * cancel() doesn't stop a count in progress, the counts of a source that has been replaced since are dropped
+     */
+    private synchronized void publishSourceRowCounts(DatabaseCache countedDatabase, Map<TableName, RowCount> rowCounts) {
+        if (countedDatabase != sourceDatabase) return;
+        sourceRowCounts = rowCounts;
+    }
+
+    /**
+     * Reads the estimates of the database statistics, one query per catalog.
+     * The tables without an estimate are only counted when exactRowCounts is set.
+     */
+    private Map<TableName, RowCount> countSourceRows(DatabaseCache sourceDatabase) {
+        Map<TableName, RowCount> rowCounts = new HashMap<>();
+        for (String catalog : sourceDatabase.getCatalogs()) {
+            Map<TableName, Long> estimatedRowCounts = sourceDatabase.getEstimatedRowCounts(catalog);
+            for (Table table : sourceDatabase.getTables(catalog)) {
+                TableName tableName = table.getTableName();
+                Long estimatedRowCount = estimatedRowCounts == null ? null : estimatedRowCounts.get(tableName);
+                if (estimatedRowCount != null) {
+                    rowCounts.put(tableName, RowCount.ofEstimate(estimatedRowCount));
+                } else if (exactRowCounts) {
+                    try {
+                        rowCounts.put(tableName, sourceDatabase.getRowCount(tableName));
+                    } catch (Exception e) {
+                        log.error("Failed to count the rows in " + tableName, e);
                     }
                 }
-                sourceRowCounts = rowCounts;
             }
-        }, "Row Counter");
-        thread.setDaemon(true);
-        thread.start();
+        }
+        return rowCounts;
     }
 
     public Collection<Table> getSourceTables() {
@@ -88,6 +140,11 @@ public class DatabaseService {
         return sourceRowCounts.get(tableName);
     }
 
+    public ForeignKeyGraph getSourceForeignKeyGraph() {
+        if (sourceDatabase == null) throw new HttpStatusException(HttpStatus.BAD_REQUEST, "Source database not available");
+        return sourceDatabase.getForeignKeyGraph();
+    }
+
     public List<ForeignKey> getRelatedSourceForeignKeys(TableName pkTableName) {
         if (sourceDatabase == null) throw new HttpStatusException(HttpStatus.BAD_REQUEST, "Source database not available");
         return sourceDatabase.getRelatedForeignKeys(pkTableName);
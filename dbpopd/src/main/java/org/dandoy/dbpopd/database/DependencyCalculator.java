@@ -2,7 +2,7 @@ package org.dandoy.dbpopd.database;
 
 import org.dandoy.dbpop.database.Dependency;
 import org.dandoy.dbpop.database.ForeignKey;
-import org.dandoy.dbpop.database.Table;
+import org.dandoy.dbpop.database.ForeignKeyGraph;
 import org.dandoy.dbpop.database.TableName;
 
 import java.util.HashSet;
@@ -10,10 +10,10 @@ import java.util.Set;
 
 public class DependencyCalculator {
     private final Set<String> processedConstraints = new HashSet<>();
-    private final DatabaseService databaseService;
+    private final ForeignKeyGraph foreignKeyGraph;
 
     public DependencyCalculator(DatabaseService databaseService) {
-        this.databaseService = databaseService;
+        this.foreignKeyGraph = databaseService.getSourceForeignKeyGraph();
     }
 
     public static Dependency calculateDependencies(DatabaseService databaseService, Dependency root) {
@@ -26,10 +26,9 @@ public class DependencyCalculator {
 
         if (dependency.isSelected()) {
             TableName tableName = dependency.getTableName();
-            Table table = databaseService.getSourceTable(tableName);
 
             // If we are on invoices, look for customers
-            for (ForeignKey foreignKey : table.getForeignKeys()) {
+            for (ForeignKey foreignKey : foreignKeyGraph.getForeignKeys(tableName)) {
                 String constraintName = foreignKey.getName();
                 if (processedConstraints.add(constraintName)) {
                     Dependency subDependency = dependency
@@ -41,7 +40,7 @@ public class DependencyCalculator {
             }
 
             // If we are on invoices, look for invoice_details
-            for (ForeignKey foreignKey : databaseService.getRelatedSourceForeignKeys(tableName)) {
+            for (ForeignKey foreignKey : foreignKeyGraph.getRelatedForeignKeys(tableName)) {
                 String constraintName = foreignKey.getName();
                 if (processedConstraints.add(constraintName)) {
                     Dependency subDependency = dependency
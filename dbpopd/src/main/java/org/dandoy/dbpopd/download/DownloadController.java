@@ -1,8 +1,10 @@
 package org.dandoy.dbpopd.download;
 
-import io.micronaut.http.annotation.Body;
-import io.micronaut.http.annotation.Controller;
-import io.micronaut.http.annotation.Post;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.core.annotation.Creator;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.*;
+import io.micronaut.http.exceptions.HttpStatusException;
 import io.micronaut.serde.annotation.Serdeable;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.dandoy.dbpop.database.Database;
@@ -27,17 +29,45 @@ public class DownloadController {
     private final ConfigurationService configurationService;
     private final PopulateService populateService;
     private final DatasetsService datasetsService;
+    private final DownloadJobService downloadJobService;
+    private final int parallelism;
+    private final int chunkParallelism;
+    private final boolean pipelined;
 
-    public DownloadController(ConfigurationService configurationService, PopulateService populateService, DatasetsService datasetsService) {
+    public DownloadController(ConfigurationService configurationService, PopulateService populateService, DatasetsService datasetsService,
+                              DownloadJobService downloadJobService,
+                              @Property(name = "dbpopd.download.parallelism", defaultValue = "1") int parallelism,
+                              @Property(name = "dbpopd.download.chunkParallelism", defaultValue = "1") int chunkParallelism,
+                              @Property(name = "dbpopd.download.pipelined", defaultValue = "false") boolean pipelined) {
         this.configurationService = configurationService;
         this.populateService = populateService;
         this.datasetsService = datasetsService;
+        this.downloadJobService = downloadJobService;
+        this.parallelism = parallelism;
+        this.chunkParallelism = chunkParallelism;
+        this.pipelined = pipelined;
     }
 
     @Post("/structured")
     public DownloadResponse structuredDownload(@Body DownloadRequest downloadRequest) {
         configurationService.assertSourceConnection();
+        return structuredDownload(downloadRequest, createStructuredExecutionContext(downloadRequest));
+    }
+
+    @Post("/jobs/structured")
+    public DownloadJobStatus structuredDownloadJob(@Body DownloadRequest downloadRequest) {
+        configurationService.assertSourceConnection();
+        return downloadJobService
+                .submit("structured", createStructuredExecutionContext(downloadRequest), executionContext -> structuredDownload(downloadRequest, executionContext))
+                .toStatus();
+    }
+
+    private static ExecutionContext createStructuredExecutionContext(DownloadRequest downloadRequest) {
+        ExecutionMode executionMode = downloadRequest.isDryRun() ? ExecutionMode.COUNT : ExecutionMode.SAVE;
+        return ExecutionPlan.createExecutionContext(executionMode, downloadRequest.getMaxRows());
+    }
 
+    private DownloadResponse structuredDownload(DownloadRequest downloadRequest, ExecutionContext executionContext) {
         ExecutionMode executionMode = downloadRequest.isDryRun() ? ExecutionMode.COUNT : ExecutionMode.SAVE;
         // TableExecutionModel is the recursive description at the TableName level
         TableExecutionModel tableExecutionModel = toTableExecutionModel(downloadRequest.getDependency());
@@ -58,7 +88,7 @@ public class DownloadController {
 
         try (Database sourceDatabase = configurationService.createSourceDatabase()) {
             // ExecutionPlan is the recursive description at the Table level
-            ExecutionContext executionContext = ExecutionPlan.execute(
+            ExecutionPlan.executeInContext(
                     sourceDatabase,
                     configurationService.getDatasetsDirectory(),
                     downloadRequest.getDataset(),
@@ -67,9 +97,10 @@ public class DownloadController {
                     filteredColumns,
                     pks,
                     executionMode,
-                    downloadRequest.getMaxRows()
+                    executionContext,
+                    pipelined
             );
-            if (configurationService.hasTargetConnection() && !downloadRequest.isDryRun()) {
+            if (configurationService.hasTargetConnection() && !downloadRequest.isDryRun() && !executionContext.isCancelled()) {
                 if (datasetsService.canPopulate(downloadRequest.getDataset())) {
                     populateService.populate(List.of(downloadRequest.getDataset()));
                 }
@@ -84,25 +115,26 @@ public class DownloadController {
 
     @Post("/bulk")
     public DownloadResponse bulkDownload(@Body DownloadBulkBody downloadBulkBody) {
-        ExecutionContext executionContext = new ExecutionContext();
+        return bulkDownload(downloadBulkBody, new ExecutionContext());
+    }
+
+    @Post("/jobs/bulk")
+    public DownloadJobStatus bulkDownloadJob(@Body DownloadBulkBody downloadBulkBody) {
+        configurationService.assertSourceConnection();
+        return downloadJobService
+                .submit("bulk", new ExecutionContext(), executionContext -> bulkDownload(downloadBulkBody, executionContext))
+                .toStatus();
+    }
+
+    private DownloadResponse bulkDownload(DownloadBulkBody downloadBulkBody, ExecutionContext executionContext) {
         try (Database sourceDatabase = configurationService.createSourceDatabase()) {
-            for (TableName tableName : downloadBulkBody.tableNames) {
-                try (TableDownloader tableDownloader = TableDownloader.builder()
-                        .setDatabase(sourceDatabase)
-                        .setDatasetsDirectory(configurationService.getDatasetsDirectory())
-                        .setDataset(downloadBulkBody.dataset())
-                        .setTableName(tableName)
-                        .setExecutionMode(ExecutionMode.SAVE)
-                        .setExecutionContext(executionContext)
-                        .build()) {
-                    executionContext.tableAdded(tableName);
-                    tableDownloader.download();
-                }
-            }
+            createParallelTableDownloader(sourceDatabase, downloadBulkBody.dataset(), executionContext)
+                    .setResume(downloadBulkBody.resume())
+                    .download(downloadBulkBody.tableNames());
         }
 
         // If the target database contains all the tables we have downloaded
-        if (configurationService.hasTargetConnection()) {
+        if (configurationService.hasTargetConnection() && !executionContext.isCancelled()) {
             if (datasetsService.canPopulate(downloadBulkBody.dataset())) {
                 populateService.populate(List.of(downloadBulkBody.dataset));
             }
@@ -116,33 +148,36 @@ public class DownloadController {
     }
 
     @Serdeable
-    public record FullDownloadRequest(String dataset) {}
+    public record FullDownloadRequest(String dataset, boolean resume) {}
 
     @Post("/source")
     public DownloadResponse downloadSource(@Body FullDownloadRequest request) {
-        ExecutionContext executionContext = new ExecutionContext();
+        return downloadSource(request, new ExecutionContext());
+    }
+
+    @Post("/jobs/source")
+    public DownloadJobStatus downloadSourceJob(@Body FullDownloadRequest request) {
+        configurationService.assertSourceConnection();
+        return downloadJobService
+                .submit("source", new ExecutionContext(), executionContext -> downloadSource(request, executionContext))
+                .toStatus();
+    }
+
+    private DownloadResponse downloadSource(FullDownloadRequest request, ExecutionContext executionContext) {
         try (Database sourceDatabase = configurationService.createSourceDatabase()) {
+            List<TableName> tableNames = new ArrayList<>();
             for (String catalog : sourceDatabase.getCatalogs()) {
                 for (String schema : sourceDatabase.getSchemas(catalog)) {
-                    for (TableName tableName : sourceDatabase.getTableNames(catalog, schema)) {
-                        try (TableDownloader tableDownloader = TableDownloader.builder()
-                                .setDatabase(sourceDatabase)
-                                .setDatasetsDirectory(configurationService.getDatasetsDirectory())
-                                .setDataset(request.dataset())
-                                .setTableName(tableName)
-                                .setExecutionMode(ExecutionMode.SAVE)
-                                .setExecutionContext(executionContext)
-                                .build()) {
-                            executionContext.tableAdded(tableName);
-                            tableDownloader.download();
-                        }
-                    }
+                    tableNames.addAll(sourceDatabase.getTableNames(catalog, schema));
                 }
             }
+            createParallelTableDownloader(sourceDatabase, request.dataset(), executionContext)
+                    .setResume(request.resume())
+                    .download(tableNames);
         }
 
         // If the target database contains all the tables we have downloaded
-        if (configurationService.hasTargetConnection()) {
+        if (configurationService.hasTargetConnection() && !executionContext.isCancelled()) {
             if (datasetsService.canPopulate(request.dataset())) {
                 populateService.populate(List.of(request.dataset));
             }
@@ -155,9 +190,53 @@ public class DownloadController {
         );
     }
 
+    private ParallelTableDownloader createParallelTableDownloader(Database sourceDatabase, String dataset, ExecutionContext executionContext) {
+        return new ParallelTableDownloader()
+                .setDatabase(sourceDatabase)
+                .setExecutionContext(executionContext)
+                .setDatasetsDirectory(configurationService.getDatasetsDirectory())
+                .setDataset(dataset)
+                .setParallelism(parallelism)
+                .setChunkParallelism(chunkParallelism);
+    }
+
     @Post("/target")
     public DownloadResponse downloadTarget(@Body DownloadTargetBody downloadTargetBody) {
-        ExecutionContext executionContext = new ExecutionContext();
+        return downloadTarget(downloadTargetBody, new ExecutionContext());
+    }
+
+    @Post("/jobs/target")
+    public DownloadJobStatus downloadTargetJob(@Body DownloadTargetBody downloadTargetBody) {
+        configurationService.assertTargetConnection();
+        return downloadJobService
+                .submit("target", new ExecutionContext(), executionContext -> downloadTarget(downloadTargetBody, executionContext))
+                .toStatus();
+    }
+
+    @Get("/jobs")
+    public List<DownloadJobStatus> getDownloadJobs() {
+        return downloadJobService.getJobStatuses();
+    }
+
+    @Get("/jobs/{jobId}")
+    public DownloadJobStatus getDownloadJob(String jobId) {
+        return getJob(jobId).toStatus();
+    }
+
+    @Delete("/jobs/{jobId}")
+    public DownloadJobStatus cancelDownloadJob(String jobId) {
+        DownloadJob downloadJob = getJob(jobId);
+        downloadJob.cancel();
+        return downloadJob.toStatus();
+    }
+
+    private DownloadJob getJob(String jobId) {
+        DownloadJob downloadJob = downloadJobService.getJob(jobId);
+        if (downloadJob == null) throw new HttpStatusException(HttpStatus.NOT_FOUND, "Download job not found: " + jobId);
+        return downloadJob;
+    }
+
+    private DownloadResponse downloadTarget(DownloadTargetBody downloadTargetBody, ExecutionContext executionContext) {
         File datasetsDirectory = configurationService.getDatasetsDirectory();
 
         try (Database targetDatabase = configurationService.createTargetDatabase()) {
@@ -180,6 +259,7 @@ public class DownloadController {
             }
 
             for (Table table : targetDatabase.getTables()) {
+                if (executionContext.isCancelled()) break;
                 TableName tableName = table.getTableName();
                 File file = tableNamesToFile.get(tableName);
                 if (file != null) {
@@ -221,7 +301,15 @@ public class DownloadController {
     }
 
     @Serdeable
-    public record DownloadBulkBody(String dataset, List<TableName> tableNames) {}
+    public record DownloadBulkBody(String dataset, List<TableName> tableNames, boolean resume) {
+        @Creator
+        public DownloadBulkBody {
+        }
+
+        public DownloadBulkBody(String dataset, List<TableName> tableNames) {
+            this(dataset, tableNames, false);
+        }
+    }
 
     @Serdeable
     public record DownloadTargetBody(String dataset) {}
@@ -0,0 +1,46 @@
+package org.dandoy.dbpopd.download;
+
+import lombok.Getter;
+import org.dandoy.dbpop.download.ExecutionContext;
+import org.dandoy.dbpopd.jobs.Job;
+
+/**
+ * A download running in the background.
+ * The progress is read from the ExecutionContext, cancelling the job cancels the ExecutionContext.
+ */
+@Getter
+public class DownloadJob extends Job<DownloadJobStatus> {
+    private final String type;
+    private final ExecutionContext executionContext;
+    private volatile DownloadResponse downloadResponse;
+
+    DownloadJob(String type, ExecutionContext executionContext) {
+        this.type = type;
+        this.executionContext = executionContext;
+    }
+
+    @Override
+    public void cancel() {
+        executionContext.cancel();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return executionContext.isCancelled();
+    }
+
+    void completed(DownloadResponse downloadResponse) {
+        this.downloadResponse = downloadResponse;
+        completed();
+    }
+
+    @Override
+    public DownloadJobStatus toStatus() {
+        DownloadResponse response = downloadResponse;
+        if (response == null) {
+            // Still running, or failed: report the rows downloaded so far
+            response = new DownloadResponse(executionContext.getRowCounts(), executionContext.getRowsSkipped(), !executionContext.keepRunning());
+        }
+        return new DownloadJobStatus(getJobId(), type, getStatus(), getElapsedMillis(), getErrorMessages(), response);
+    }
+}
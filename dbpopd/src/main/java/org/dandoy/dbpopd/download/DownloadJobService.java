@@ -0,0 +1,45 @@
+package org.dandoy.dbpopd.download;
+
+import io.micronaut.context.annotation.Property;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.dandoy.dbpop.download.ExecutionContext;
+import org.dandoy.dbpopd.jobs.JobRegistry;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runs the downloads in the background so that the HTTP requests return immediately with a job id.
+ * While a job runs, its progress is published every second on the DownloadJobWebSocket.
+ */
+@Singleton
+public class DownloadJobService {
+    private final JobRegistry<DownloadJob, DownloadJobStatus> jobRegistry;
+
+    /**
+     * @param jobThreads the number of downloads that run at the same time, the other jobs are queued
+     */
+    public DownloadJobService(DownloadJobWebSocket downloadJobWebSocket,
+                              @Property(name = "dbpopd.download.jobThreads", defaultValue = "1") int jobThreads) {
+        jobRegistry = new JobRegistry<>("Download Job", jobThreads, downloadJobWebSocket::sendJobStatuses);
+    }
+
+    @PreDestroy
+    void preDestroy() {
+        jobRegistry.close();
+    }
+
+    public DownloadJob submit(String type, ExecutionContext executionContext, Function<ExecutionContext, DownloadResponse> download) {
+        DownloadJob downloadJob = new DownloadJob(type, executionContext);
+        return jobRegistry.submit(downloadJob, () -> downloadJob.completed(download.apply(executionContext)));
+    }
+
+    public DownloadJob getJob(String jobId) {
+        return jobRegistry.getJob(jobId);
+    }
+
+    public List<DownloadJobStatus> getJobStatuses() {
+        return jobRegistry.getJobStatuses();
+    }
+}
@@ -0,0 +1,20 @@
+package org.dandoy.dbpopd.download;
+
+import io.micronaut.serde.annotation.Serdeable;
+import org.dandoy.dbpopd.jobs.Job;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * @param downloadResponse the rows downloaded so far, or the final result once the job has finished
+ */
+@Serdeable
+public record DownloadJobStatus(
+        String jobId,
+        String type,
+        Job.Status status,
+        long elapsedMillis,
+        @Nullable List<String> errorMessages,
+        DownloadResponse downloadResponse
+) {}
@@ -0,0 +1,46 @@
+package org.dandoy.dbpopd.download;
+
+import io.micronaut.serde.annotation.Serdeable;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.annotation.OnClose;
+import io.micronaut.websocket.annotation.OnMessage;
+import io.micronaut.websocket.annotation.OnOpen;
+import io.micronaut.websocket.annotation.ServerWebSocket;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpopd.jobs.JobSessions;
+
+import java.util.List;
+
+/**
+ * Streams the status of the download jobs.
+ * The messages are only sent to the sessions of this endpoint, the site status messages have a different shape.
+ */
+@Slf4j
+@Singleton
+@ServerWebSocket("/ws/download-jobs")
+public class DownloadJobWebSocket {
+    private final JobSessions<DownloadJobStatus> jobSessions = new JobSessions<>(DownloadJobsMessage::new);
+
+    @OnOpen
+    public void onOpen(WebSocketSession session) {
+        jobSessions.opened(session);
+    }
+
+    @OnMessage
+    public void onMessage(String message, WebSocketSession ignore) {
+        log.debug("DownloadJobWebSocket.onMessage - {}", message);
+    }
+
+    @OnClose
+    public void onClose(WebSocketSession session) {
+        jobSessions.closed(session);
+    }
+
+    void sendJobStatuses(List<DownloadJobStatus> jobStatuses) {
+        jobSessions.sendJobStatuses(jobStatuses);
+    }
+
+    @Serdeable
+    public record DownloadJobsMessage(List<DownloadJobStatus> jobs) {}
+}
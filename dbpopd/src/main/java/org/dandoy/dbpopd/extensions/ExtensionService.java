@@ -5,6 +5,7 @@ import lombok.SneakyThrows;
 import org.dandoy.dbpop.database.Database;
 import org.dandoy.dbpopd.config.ConfigurationService;
 import org.dandoy.dbpopd.config.DatabaseCacheService;
+import org.dandoy.dbpopd.utils.DbPopdFileUtils;
 import org.dandoy.dbpopd.utils.SqlExecuteUtils;
 
 import java.io.File;
@@ -29,6 +30,15 @@ public class ExtensionService {
         execute("afterPopulate/" + dataset);
     }
 
+    /**
+     * @return true if afterPopulate scripts may modify the database after a populate
+     */
+    public boolean hasAfterPopulateScripts() {
+        File directory = new File(configurationService.getExtensionsDirectory(), "afterPopulate");
+        return DbPopdFileUtils.getFiles(directory).stream()
+                .anyMatch(it -> it.getName().toLowerCase().endsWith(".sql"));
+    }
+
     private void execute(String path) {
         File directory = new File(configurationService.getExtensionsDirectory(), path);
         File[] files = directory.listFiles();
@@ -0,0 +1,54 @@
+package org.dandoy.dbpopd.jobs;
+
+import lombok.Getter;
+import org.dandoy.dbpop.utils.ExceptionUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A task running in the background in a JobRegistry.
+ *
+ * @param <S> the status reported to the clients
+ */
+@Getter
+public abstract class Job<S> {
+    public enum Status {QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED}
+
+    private final String jobId = UUID.randomUUID().toString();
+    private final long submitTime = System.currentTimeMillis();
+    private volatile Status status = Status.QUEUED;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile List<String> errorMessages;
+
+    public abstract void cancel();
+
+    public abstract boolean isCancelled();
+
+    public abstract S toStatus();
+
+    public boolean isFinished() {
+        return endTime != 0;
+    }
+
+    protected long getElapsedMillis() {
+        return startTime == 0 ? 0 : (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    void started() {
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    protected void completed() {
+        endTime = System.currentTimeMillis();
+        status = isCancelled() ? Status.CANCELLED : Status.COMPLETED;
+    }
+
+    void failed(Exception e) {
+        errorMessages = ExceptionUtils.getErrorMessages(e);
+        endTime = System.currentTimeMillis();
+        status = isCancelled() ? Status.CANCELLED : Status.FAILED;
+    }
+}
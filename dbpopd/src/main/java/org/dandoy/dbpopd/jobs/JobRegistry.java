@@ -0,0 +1,115 @@
+package org.dandoy.dbpopd.jobs;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the jobs of a service and keeps the last finished ones so that the clients can still read their status.
+ * While a job runs, the statuses of all the jobs are published every second.
+ */
+@Slf4j
+public class JobRegistry<J extends Job<S>, S> {
+    private static final int MAX_FINISHED_JOBS = 20;
+    private final String name;
+    private final Consumer<List<S>> publisher;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService progressExecutor;
+    private final Map<String, J> jobs = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * @param name       the name of the threads and of the jobs in the logs
+     * @param jobThreads the number of jobs that run at the same time, the other jobs are queued
+     * @param publisher  receives the statuses of all the jobs
+     */
+    public JobRegistry(String name, int jobThreads, Consumer<List<S>> publisher) {
+        this.name = name;
+        this.publisher = publisher;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(Math.max(1, jobThreads), runnable -> {
+            Thread thread = new Thread(runnable, jobThreads > 1 ? name + "-" + threadNumber.incrementAndGet() : name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + " Progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressExecutor.scheduleAtFixedRate(this::publishProgress, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Cancels the jobs and stops the threads
+     */
+    public void close() {
+        synchronized (jobs) {
+            jobs.values().forEach(Job::cancel);
+        }
+        progressExecutor.shutdownNow();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @param work runs the job and reports its result to the job, a failure is reported by the registry
+     */
+    public J submit(J job, Runnable work) {
+        jobs.put(job.getJobId(), job);
+        executorService.submit(() -> {
+            job.started();
+            publish();
+            try {
+                work.run();
+            } catch (Exception e) {
+                if (job.isCancelled()) {
+                    log.info("The {} {} has been cancelled", name, job.getJobId());
+                } else {
+                    log.error("The {} {} failed", name, job.getJobId(), e);
+                }
+                job.failed(e);
+            }
+            pruneFinishedJobs();
+            publish();
+        });
+        publish();
+        return job;
+    }
+
+    public J getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public List<S> getJobStatuses() {
+        synchronized (jobs) {
+            return jobs.values().stream().map(Job::toStatus).toList();
+        }
+    }
+
+    private void publishProgress() {
+        try {
+            boolean running;
+            synchronized (jobs) {
+                running = jobs.values().stream().anyMatch(it -> it.getStatus() == Job.Status.RUNNING);
+            }
+            if (running) publish();
+        } catch (Exception e) {
+            log.error("Failed to publish the progress of the {} jobs", name, e);
+        }
+    }
+
+    private void publish() {
+        publisher.accept(getJobStatuses());
+    }
+
+    private void pruneFinishedJobs() {
+        synchronized (jobs) {
+            List<String> finishedJobIds = jobs.values().stream().filter(Job::isFinished).map(Job::getJobId).toList();
+            for (int i = 0; i < finishedJobIds.size() - MAX_FINISHED_JOBS; i++) {
+                jobs.remove(finishedJobIds.get(i));
+            }
+        }
+    }
+}
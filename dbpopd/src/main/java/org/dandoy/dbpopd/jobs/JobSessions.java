@@ -0,0 +1,44 @@
+package org.dandoy.dbpopd.jobs;
+
+import io.micronaut.websocket.WebSocketSession;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The sessions of a job WebSocket, a new session receives the last statuses sent.
+ */
+public class JobSessions<S> {
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private final Function<List<S>, ?> messageFactory;
+    private volatile Object lastMessage;
+
+    /**
+     * @param messageFactory wraps the statuses of the jobs in the message sent to the sessions
+     */
+    public JobSessions(Function<List<S>, ?> messageFactory) {
+        this.messageFactory = messageFactory;
+        this.lastMessage = messageFactory.apply(List.of());
+    }
+
+    public void opened(WebSocketSession session) {
+        sessions.add(session);
+        session.sendAsync(lastMessage);
+    }
+
+    public void closed(WebSocketSession session) {
+        sessions.remove(session);
+    }
+
+    public void sendJobStatuses(List<S> jobStatuses) {
+        Object message = messageFactory.apply(jobStatuses);
+        lastMessage = message;
+        for (WebSocketSession session : sessions) {
+            if (session.isOpen()) {
+                session.sendAsync(message);
+            }
+        }
+    }
+}
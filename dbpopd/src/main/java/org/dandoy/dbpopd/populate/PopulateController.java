@@ -1,8 +1,8 @@
 package org.dandoy.dbpopd.populate;
 
 import io.micronaut.http.HttpStatus;
-import io.micronaut.http.annotation.Controller;
-import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.*;
+import io.micronaut.http.exceptions.HttpStatusException;
 import io.micronaut.problem.HttpStatusType;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
@@ -16,9 +16,11 @@ import java.util.List;
 @Tag(name = "populate")
 public class PopulateController {
     private final PopulateService populateService;
+    private final PopulateJobService populateJobService;
 
-    public PopulateController(PopulateService populateService) {
+    public PopulateController(PopulateService populateService, PopulateJobService populateJobService) {
         this.populateService = populateService;
+        this.populateJobService = populateJobService;
     }
 
     @Get("/populate")
@@ -33,4 +35,33 @@ public class PopulateController {
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    @Post("/populate/jobs")
+    public PopulateJobStatus populateJob(@QueryValue List<String> dataset) {
+        if (dataset.isEmpty()) throw new HttpStatusException(HttpStatus.BAD_REQUEST, "No datasets to populate");
+        return populateJobService.submit(dataset).toStatus();
+    }
+
+    @Get("/populate/jobs")
+    public List<PopulateJobStatus> getPopulateJobs() {
+        return populateJobService.getJobStatuses();
+    }
+
+    @Get("/populate/jobs/{jobId}")
+    public PopulateJobStatus getPopulateJob(String jobId) {
+        return getJob(jobId).toStatus();
+    }
+
+    @Delete("/populate/jobs/{jobId}")
+    public PopulateJobStatus cancelPopulateJob(String jobId) {
+        PopulateJob populateJob = getJob(jobId);
+        populateJob.cancel();
+        return populateJob.toStatus();
+    }
+
+    private PopulateJob getJob(String jobId) {
+        PopulateJob populateJob = populateJobService.getJob(jobId);
+        if (populateJob == null) throw new HttpStatusException(HttpStatus.NOT_FOUND, "Populate job not found: " + jobId);
+        return populateJob;
+    }
+}
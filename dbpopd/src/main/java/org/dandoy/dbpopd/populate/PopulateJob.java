@@ -0,0 +1,80 @@
+package org.dandoy.dbpopd.populate;
+
+import lombok.Getter;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.upload.PopulatorListener;
+import org.dandoy.dbpopd.jobs.Job;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A populate running in the background.
+ * The Populator reports its progress to the job, cancelling the job stops the Populator at the next table or batch.
+ */
+@Getter
+public class PopulateJob extends Job<PopulateJobStatus> implements PopulatorListener {
+    private final List<String> datasets;
+    private final Set<TableName> activeTables = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger tableCount = new AtomicInteger();
+    private final AtomicInteger rowCount = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile PopulateResult populateResult;
+
+    PopulateJob(List<String> datasets) {
+        this.datasets = datasets;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void tableStarted(TableName tableName) {
+        activeTables.add(tableName);
+    }
+
+    @Override
+    public void rowsInserted(TableName tableName, int rowCount) {
+        this.rowCount.addAndGet(rowCount);
+    }
+
+    @Override
+    public void tableCompleted(TableName tableName, int rowCount) {
+        activeTables.remove(tableName);
+        tableCount.incrementAndGet();
+    }
+
+    @Override
+    public boolean keepRunning() {
+        return !cancelled;
+    }
+
+    void completed(PopulateResult populateResult) {
+        this.populateResult = populateResult;
+        completed();
+    }
+
+    @Override
+    public PopulateJobStatus toStatus() {
+        return new PopulateJobStatus(
+                getJobId(),
+                datasets,
+                getStatus(),
+                getElapsedMillis(),
+                activeTables.stream().map(TableName::toQualifiedName).sorted().toList(),
+                tableCount.get(),
+                rowCount.get(),
+                getErrorMessages(),
+                populateResult
+        );
+    }
+}
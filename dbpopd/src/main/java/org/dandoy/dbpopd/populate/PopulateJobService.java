@@ -0,0 +1,41 @@
+package org.dandoy.dbpopd.populate;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.dandoy.dbpopd.jobs.JobRegistry;
+
+import java.util.List;
+
+/**
+ * Runs the populates in the background so that the HTTP requests return immediately with a job id.
+ * The jobs run one at a time, PopulateService also serializes them with the synchronous populates.
+ * While a job runs, its progress is published every second on the PopulateJobWebSocket.
+ */
+@Singleton
+public class PopulateJobService {
+    private final PopulateService populateService;
+    private final JobRegistry<PopulateJob, PopulateJobStatus> jobRegistry;
+
+    public PopulateJobService(PopulateService populateService, PopulateJobWebSocket populateJobWebSocket) {
+        this.populateService = populateService;
+        jobRegistry = new JobRegistry<>("Populate Job", 1, populateJobWebSocket::sendJobStatuses);
+    }
+
+    @PreDestroy
+    void preDestroy() {
+        jobRegistry.close();
+    }
+
+    public PopulateJob submit(List<String> datasets) {
+        PopulateJob populateJob = new PopulateJob(List.copyOf(datasets));
+        return jobRegistry.submit(populateJob, () -> populateJob.completed(populateService.populate(datasets, false, populateJob)));
+    }
+
+    public PopulateJob getJob(String jobId) {
+        return jobRegistry.getJob(jobId);
+    }
+
+    public List<PopulateJobStatus> getJobStatuses() {
+        return jobRegistry.getJobStatuses();
+    }
+}
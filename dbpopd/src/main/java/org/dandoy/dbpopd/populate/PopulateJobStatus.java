@@ -0,0 +1,26 @@
+package org.dandoy.dbpopd.populate;
+
+import io.micronaut.serde.annotation.Serdeable;
+import org.dandoy.dbpopd.jobs.Job;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * @param activeTables   the tables being loaded
+ * @param tableCount     the number of tables loaded so far
+ * @param rowCount       the number of rows inserted so far
+ * @param populateResult the final result once the job has completed
+ */
+@Serdeable
+public record PopulateJobStatus(
+        String jobId,
+        List<String> datasets,
+        Job.Status status,
+        long elapsedMillis,
+        List<String> activeTables,
+        int tableCount,
+        int rowCount,
+        @Nullable List<String> errorMessages,
+        @Nullable PopulateResult populateResult
+) {}
@@ -0,0 +1,45 @@
+package org.dandoy.dbpopd.populate;
+
+import io.micronaut.serde.annotation.Serdeable;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.annotation.OnClose;
+import io.micronaut.websocket.annotation.OnMessage;
+import io.micronaut.websocket.annotation.OnOpen;
+import io.micronaut.websocket.annotation.ServerWebSocket;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpopd.jobs.JobSessions;
+
+import java.util.List;
+
+/**
+ * Streams the status of the populate jobs.
+ */
+@Slf4j
+@Singleton
+@ServerWebSocket("/ws/populate-jobs")
+public class PopulateJobWebSocket {
+    private final JobSessions<PopulateJobStatus> jobSessions = new JobSessions<>(PopulateJobsMessage::new);
+
+    @OnOpen
+    public void onOpen(WebSocketSession session) {
+        jobSessions.opened(session);
+    }
+
+    @OnMessage
+    public void onMessage(String message, WebSocketSession ignore) {
+        log.debug("PopulateJobWebSocket.onMessage - {}", message);
+    }
+
+    @OnClose
+    public void onClose(WebSocketSession session) {
+        jobSessions.closed(session);
+    }
+
+    void sendJobStatuses(List<PopulateJobStatus> jobStatuses) {
+        jobSessions.sendJobStatuses(jobStatuses);
+    }
+
+    @Serdeable
+    public record PopulateJobsMessage(List<PopulateJobStatus> jobs) {}
+}
@@ -1,26 +1,34 @@
 package org.dandoy.dbpopd.populate;
 
+import io.micronaut.context.annotation.Property;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.exceptions.HttpStatusException;
+import io.micronaut.runtime.event.annotation.EventListener;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.database.DatabaseCache;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.download.PrimaryKeyIndex;
+import org.dandoy.dbpop.upload.BinaryDataFile;
+import org.dandoy.dbpop.upload.PopulateCancelledException;
 import org.dandoy.dbpop.upload.PopulateDatasetException;
 import org.dandoy.dbpop.upload.Populator;
 import org.dandoy.dbpop.upload.PopulatorListener;
 import org.dandoy.dbpop.utils.ExceptionUtils;
 import org.dandoy.dbpop.utils.MultiCauseException;
 import org.dandoy.dbpopd.config.ConfigurationService;
+import org.dandoy.dbpopd.config.ConnectionType;
+import org.dandoy.dbpopd.config.DatabaseCacheChangedEvent;
 import org.dandoy.dbpopd.config.DatabaseCacheService;
 import org.dandoy.dbpopd.datasets.DatasetsService;
 import org.dandoy.dbpopd.extensions.ExtensionService;
 import org.dandoy.dbpopd.utils.DbPopdFileUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Singleton
 @Slf4j
@@ -29,24 +37,65 @@ public class PopulateService {
     private final DatabaseCacheService databaseCacheService;
     private final DatasetsService datasetsService;
     private final ExtensionService extensionService;
+    private final int parallelism;
+    private final boolean bulkInsert;
+    private final boolean pipelined;
+    private final boolean deferIndexes;
+    private final long deferIndexesMinSize;
+    private final boolean minimalLogging;
+    private final boolean incremental;
+    /**
+     * dbpopd.populate.snapshot: restores a database snapshot when the same datasets are populated again.
+     * <ul>
+     * <li>The restore reverts the whole catalog, including the objects and the rows that are not in the datasets.</li>
+     * <li>The restore needs exclusive access to the catalog. The other sessions that use it are disconnected
+     * and their transactions rolled back, including the other connections of dbpopd such as the code and download work.</li>
+     * </ul>
+     */
+    private final boolean snapshot;
+    private final PopulateTracker populateTracker = new PopulateTracker();
+    private final PopulateSnapshot populateSnapshot = new PopulateSnapshot();
     private Map<File, Long> fileTimestamps = new HashMap<>();
-    private final PopulatorListener populatorListener = new PopulatorListener() {
-        @Override
-        public void afterPopulate() {
-            extensionService.afterPopulate();
-        }
-
-        @Override
-        public void afterPopulate(String dataset) {
-            extensionService.afterPopulate(dataset);
-        }
-    };
+    /**
+     * Two populates of the same target would delete each other's rows
+     */
+    private final ReentrantLock populateLock = new ReentrantLock();
 
-    public PopulateService(ConfigurationService configurationService, DatabaseCacheService databaseCacheService, DatasetsService datasetsService, ExtensionService extensionService) {
+    public PopulateService(
+            ConfigurationService configurationService,
+            DatabaseCacheService databaseCacheService,
+            DatasetsService datasetsService,
+            ExtensionService extensionService,
+            @Property(name = "dbpopd.populate.parallelism", defaultValue = "1") int parallelism,
+            @Property(name = "dbpopd.populate.bulkInsert", defaultValue = "false") boolean bulkInsert,
+            @Property(name = "dbpopd.populate.pipelined", defaultValue = "false") boolean pipelined,
+            @Property(name = "dbpopd.populate.deferIndexes", defaultValue = "false") boolean deferIndexes,
+            @Property(name = "dbpopd.populate.deferIndexesMinSize", defaultValue = "1048576") long deferIndexesMinSize,
+            @Property(name = "dbpopd.populate.minimalLogging", defaultValue = "false") boolean minimalLogging,
+            @Property(name = "dbpopd.populate.incremental", defaultValue = "false") boolean incremental,
+            @Property(name = "dbpopd.populate.snapshot", defaultValue = "false") boolean snapshot
+    ) {
         this.configurationService = configurationService;
         this.databaseCacheService = databaseCacheService;
         this.datasetsService = datasetsService;
         this.extensionService = extensionService;
+        this.parallelism = parallelism;
+        this.bulkInsert = bulkInsert;
+        this.pipelined = pipelined;
+        this.deferIndexes = deferIndexes;
+        this.deferIndexesMinSize = deferIndexesMinSize;
+        this.minimalLogging = minimalLogging;
+        this.incremental = incremental;
+        this.snapshot = snapshot;
+    }
+
+    @EventListener
+    void receiveDatabaseCacheChangedEvent(DatabaseCacheChangedEvent event) {
+        if (event.type() == ConnectionType.TARGET) {
+            populateTracker.reset();
+            // The snapshot is in the old target database
+            populateSnapshot.discard();
+        }
     }
 
     public PopulateResult populate(List<String> dataset) {
@@ -54,27 +103,118 @@ public class PopulateService {
     }
 
     public PopulateResult populate(List<String> datasets, boolean forceStatic) {
+        return populate(datasets, forceStatic, null);
+    }
+
+    /**
+     * Waits for the populate in progress, if any.
+     *
+     * @param progressListener receives the progress of the populate and can cancel it
+     */
+    public PopulateResult populate(List<String> datasets, boolean forceStatic, @Nullable PopulatorListener progressListener) {
         if (datasets.isEmpty()) throw new HttpStatusException(HttpStatus.BAD_REQUEST, "No datasets to download");
+        populateLock.lock();
+        try {
+            if (progressListener != null && !progressListener.keepRunning()) throw new PopulateCancelledException();
+            Map<TableName, Integer> tableRowCounts = new ConcurrentHashMap<>();
+            return doPopulate(datasets, forceStatic, createPopulatorListener(progressListener, tableRowCounts), tableRowCounts);
+        } finally {
+            populateLock.unlock();
+        }
+    }
+
+    /**
+     * @param tableRowCounts receives the number of rows loaded in each table
+     */
+    private PopulatorListener createPopulatorListener(@Nullable PopulatorListener progressListener, Map<TableName, Integer> tableRowCounts) {
+        return new PopulatorListener() {
+            @Override
+            public void afterPopulate() {
+                extensionService.afterPopulate();
+            }
+
+            @Override
+            public void afterPopulate(String dataset) {
+                extensionService.afterPopulate(dataset);
+            }
+
+            @Override
+            public void tableStarted(TableName tableName) {
+                if (progressListener != null) progressListener.tableStarted(tableName);
+            }
+
+            @Override
+            public void rowsInserted(TableName tableName, int rowCount) {
+                if (progressListener != null) progressListener.rowsInserted(tableName, rowCount);
+            }
+
+            @Override
+            public void tableCompleted(TableName tableName, int rowCount) {
+                tableRowCounts.merge(tableName, rowCount, Integer::sum);
+                if (progressListener != null) progressListener.tableCompleted(tableName, rowCount);
+            }
+
+            @Override
+            public boolean keepRunning() {
+                return progressListener == null || progressListener.keepRunning();
+            }
+        };
+    }
+
+    private PopulateResult doPopulate(List<String> datasets, boolean forceStatic, PopulatorListener populatorListener, Map<TableName, Integer> tableRowCounts) {
         try {
             long t0 = System.currentTimeMillis();
             DatabaseCache databaseCache = databaseCacheService.getTargetDatabaseCacheOrThrow();
             Populator populator = Populator
                     .createPopulator(databaseCache, configurationService.getDatasetsDirectory())
-                    .setPopulatorListener(populatorListener);
-            if (forceStatic) {
+                    .setPopulatorListener(populatorListener)
+                    .setParallelism(parallelism)
+                    .setBulkInsert(bulkInsert)
+                    .setPipelined(pipelined)
+                    .setDeferIndexes(deferIndexes)
+                    .setDeferIndexesMinSize(deferIndexesMinSize)
+                    .setMinimalLogging(minimalLogging);
+            Integer snapshotRows = restoreSnapshot(databaseCache, populator, datasets, forceStatic);
+            if (snapshotRows != null) {
+                long t1 = System.currentTimeMillis();
+                datasetsService.setActive(datasets.get(datasets.size() - 1), snapshotRows, t1 - t0);
+                populateTracker.reset();
+                return new PopulateResult(snapshotRows, t1 - t0);
+            }
+            Set<TableName> affectedTables = getAffectedTables(databaseCache, populator, datasets, forceStatic);
+            int rows;
+            if (affectedTables != null) {
+                log.info("Reloading {} tables", affectedTables.size());
                 populator.setStaticLoaded(false);
+                rows = populator.load(datasets, affectedTables);
             } else {
-                boolean staticChanged = hasStaticChanged();
-                populator.setStaticLoaded(!staticChanged);
+                if (forceStatic) {
+                    populator.setStaticLoaded(false);
+                } else {
+                    boolean staticChanged = hasStaticChanged();
+                    populator.setStaticLoaded(!staticChanged);
+                }
+                rows = populator.load(datasets);
             }
-            int rows = populator.load(datasets);
             long t1 = System.currentTimeMillis();
+            if (incremental) {
+                populateTracker.populated(databaseCache, tableRowCounts, affectedTables);
+                if (affectedTables != null) {
+                    // The tables that have not been reloaded still hold the rows of the previous populates
+                    rows = populateTracker.getRowCount();
+                }
+            }
             datasetsService.setActive(datasets.get(datasets.size() - 1), rows, t1 - t0);
 
             captureStaticTimestamps();
+            if (isSnapshotEnabled(databaseCache)) {
+                populateSnapshot.capture(databaseCache, datasets, rows);
+            }
 
             return new PopulateResult(rows, t1 - t0);
         } catch (Exception e) {
+            populateTracker.reset();
+            populateSnapshot.discard();
             Optional<PopulateDatasetException> optionalCause = ExceptionUtils.getCause(e, PopulateDatasetException.class);
             if (optionalCause.isPresent()) {
                 PopulateDatasetException populateDatasetException = optionalCause.get();
@@ -89,6 +229,38 @@ public class PopulateService {
         }
     }
 
+    /**
+     * @return the tables to reload, or null to reload everything
+     */
+    @Nullable
+    private Set<TableName> getAffectedTables(DatabaseCache databaseCache, Populator populator, List<String> datasets, boolean forceStatic) {
+        if (!incremental) return null;
+        if (forceStatic || extensionService.hasAfterPopulateScripts()) {
+            // Reload everything, the afterPopulate scripts are written for freshly loaded tables
+            populateTracker.reset();
+        }
+        return populateTracker.getAffectedTables(databaseCache, populator.getDatasetsByName(), datasets);
+    }
+
+    /**
+     * @return the number of rows if the snapshot has been restored, null if the datasets must be loaded
+     */
+    @Nullable
+    private Integer restoreSnapshot(DatabaseCache databaseCache, Populator populator, List<String> datasets, boolean forceStatic) {
+        if (!isSnapshotEnabled(databaseCache)) return null;
+        if (forceStatic) {
+            populateSnapshot.drop(databaseCache);
+        }
+        return populateSnapshot.restore(databaseCache, populator.getDatasetsByName(), datasets);
+    }
+
+    /**
+     * The afterPopulate scripts are not tracked, a snapshot would not see their changes
+     */
+    private boolean isSnapshotEnabled(DatabaseCache databaseCache) {
+        return snapshot && databaseCache.isSnapshotSupported() && !extensionService.hasAfterPopulateScripts();
+    }
+
     private boolean hasStaticChanged() {
         boolean ret = false;
         File datasetsDirectory = configurationService.getDatasetsDirectory();
@@ -96,6 +268,8 @@ public class PopulateService {
         if (staticDir.isDirectory()) {
             List<File> files = DbPopdFileUtils.getFiles(staticDir);
             for (File file : files) {
+                if (PrimaryKeyIndex.isIndexFile(file)) continue; // Written by the downloads
+                if (BinaryDataFile.isBinaryFile(file)) continue;
                 Long lastModified = fileTimestamps.get(file);
                 long thatLastModified = file.lastModified();
                 if (lastModified == null) {
@@ -115,6 +289,8 @@ public class PopulateService {
             List<File> files = DbPopdFileUtils.getFiles(staticDir);
             Map<File, Long> newMap = new HashMap<>();
             for (File file : files) {
+                if (PrimaryKeyIndex.isIndexFile(file)) continue;
+                if (BinaryDataFile.isBinaryFile(file)) continue;
                 long lastModified = file.lastModified();
                 newMap.put(file, lastModified);
             }
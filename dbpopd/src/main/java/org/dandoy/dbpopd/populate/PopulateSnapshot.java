@@ -0,0 +1,120 @@
+package org.dandoy.dbpopd.populate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.database.ConnectionBuilder;
+import org.dandoy.dbpop.database.Database;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.upload.Dataset;
+import org.dandoy.dbpopd.populate.PopulateTracker.FileFingerprint;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a snapshot of the target database taken after a populate.
+ * Populating the same datasets again restores the snapshot instead of reloading the data files, as long as none of the files
+ * and none of the table definitions has changed.
+ */
+@Slf4j
+class PopulateSnapshot {
+    private List<String> datasets;
+    private Map<TableName, List<FileFingerprint>> fingerprints;
+    private Set<String> catalogs;
+    private Map<String, Map<TableName, String>> schemaVersions;
+    private ConnectionBuilder connectionBuilder;
+    private int rows;
+    private Map<TableName, List<FileFingerprint>> pendingFingerprints;
+
+    /**
+     * Drops the snapshot on a connection of its own, used when the target database has changed or the populate has failed.
+     */
+    synchronized void discard() {
+        pendingFingerprints = null;
+        if (catalogs == null) return;
+        try (Database database = Database.createDatabase(connectionBuilder)) {
+            drop(database);
+        } catch (RuntimeException e) {
+            log.error("Failed to drop the snapshot of {}", String.join(", ", catalogs), e);
+            forget();
+        }
+    }
+
+    /**
+     * Restores the snapshot if it matches the datasets, drops it otherwise.
+     *
+     * @return the number of rows of the snapshot, null if it could not be used
+     */
+    @Nullable
+    synchronized Integer restore(Database database, Map<String, Dataset> datasetsByName, List<String> datasets) {
+        pendingFingerprints = PopulateTracker.getFingerprints(datasetsByName, datasets);
+        if (this.datasets == null) return null;
+        if (!this.datasets.equals(datasets) || !fingerprints.equals(pendingFingerprints)) {
+            drop(database);
+            return null;
+        }
+        if (!getSchemaVersions(database, catalogs).equals(schemaVersions)) {
+            // Restoring the snapshot would revert the changes made to the tables
+            log.info("The definition of the tables has changed since the snapshot");
+            drop(database);
+            return null;
+        }
+        log.info("Restoring the snapshot of {}", String.join(", ", catalogs));
+        for (String catalog : catalogs) {
+            database.restoreSnapshot(catalog);
+        }
+        return rows;
+    }
+
+    /**
+     * Captures the database after a successful populate
+     */
+    synchronized void capture(Database database, List<String> datasets, int rows) {
+        if (pendingFingerprints == null) return;
+        Set<String> catalogs = pendingFingerprints.keySet().stream()
+                .map(TableName::getCatalog)
+                .collect(Collectors.toCollection(TreeSet::new));
+        log.info("Capturing a snapshot of {}", String.join(", ", catalogs));
+        for (String catalog : catalogs) {
+            database.createSnapshot(catalog);
+        }
+        this.datasets = List.copyOf(datasets);
+        this.fingerprints = pendingFingerprints;
+        this.catalogs = catalogs;
+        this.schemaVersions = getSchemaVersions(database, catalogs);
+        this.connectionBuilder = database.getConnectionBuilder();
+        this.rows = rows;
+        pendingFingerprints = null;
+    }
+
+    /**
+     * Drops the snapshot, the databases are slower to write to while it exists.
+     */
+    synchronized void drop(Database database) {
+        if (catalogs != null) {
+            for (String catalog : catalogs) {
+                database.dropSnapshot(catalog);
+            }
+        }
+        forget();
+    }
+
+    private void forget() {
+        datasets = null;
+        fingerprints = null;
+        catalogs = null;
+        schemaVersions = null;
+        connectionBuilder = null;
+    }
+
+    /**
+     * The versions of a catalog are null when the database cannot tell, the snapshot is then restored as before.
+     */
+    private static Map<String, Map<TableName, String>> getSchemaVersions(Database database, Set<String> catalogs) {
+        Map<String, Map<TableName, String>> ret = new HashMap<>();
+        for (String catalog : catalogs) {
+            ret.put(catalog, database.getTableSchemaVersions(catalog));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,136 @@
+package org.dandoy.dbpopd.populate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.database.Database;
+import org.dandoy.dbpop.database.ForeignKey;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.datasets.Datasets;
+import org.dandoy.dbpop.upload.DataFile;
+import org.dandoy.dbpop.upload.Dataset;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Remembers what the last populate loaded to find the tables that need to be reloaded.
+ * A table is affected when its data files have changed, when it has been written to since the last populate,
+ * or when it references an affected table.
+ */
+@Slf4j
+class PopulateTracker {
+    private Map<TableName, List<FileFingerprint>> fingerprints;
+    private Map<TableName, Long> writeCounters;
+    private Map<TableName, Integer> rowCounts;
+    private Map<TableName, List<FileFingerprint>> pendingFingerprints;
+
+    /**
+     * Forget the last populate, the next one reloads everything.
+     */
+    synchronized void reset() {
+        fingerprints = null;
+        writeCounters = null;
+        rowCounts = null;
+        pendingFingerprints = null;
+    }
+
+    /**
+     * @return the tables that must be reloaded, null if all the tables must be reloaded
+     */
+    @Nullable
+    synchronized Set<TableName> getAffectedTables(Database database, Map<String, Dataset> datasetsByName, List<String> datasets) {
+        pendingFingerprints = getFingerprints(datasetsByName, datasets);
+        if (fingerprints == null || writeCounters == null) return null;
+
+        Map<TableName, Long> newWriteCounters = database.getTableWriteCounters(pendingFingerprints.keySet());
+        if (newWriteCounters == null) return null;
+
+        Set<TableName> affectedTables = new HashSet<>();
+        for (TableName tableName : pendingFingerprints.keySet()) {
+            if (!Objects.equals(fingerprints.get(tableName), pendingFingerprints.get(tableName))) {
+                log.debug("Files changed: {}", tableName.toQualifiedName());
+                affectedTables.add(tableName);
+            } else if (!Objects.equals(writeCounters.get(tableName), newWriteCounters.get(tableName))) {
+                log.debug("Table modified: {}", tableName.toQualifiedName());
+                affectedTables.add(tableName);
+            }
+        }
+        addDependentTables(database, affectedTables, pendingFingerprints.keySet());
+        return affectedTables;
+    }
+
+    /**
+     * Records the state after a successful populate
+     *
+     * @param loadedRowCounts the number of rows loaded in each table
+     * @param reloadedTables  the tables that have been reloaded, null if all the tables have been reloaded
+     */
+    synchronized void populated(Database database, Map<TableName, Integer> loadedRowCounts, @Nullable Set<TableName> reloadedTables) {
+        if (pendingFingerprints == null) return;
+        Map<TableName, Integer> newRowCounts = new HashMap<>();
+        if (reloadedTables != null && rowCounts != null) {
+            newRowCounts.putAll(rowCounts);
+            newRowCounts.keySet().removeAll(reloadedTables);
+        }
+        newRowCounts.putAll(loadedRowCounts);
+        newRowCounts.keySet().retainAll(pendingFingerprints.keySet());
+        fingerprints = pendingFingerprints;
+        writeCounters = database.getTableWriteCounters(fingerprints.keySet());
+        rowCounts = newRowCounts;
+        pendingFingerprints = null;
+    }
+
+    /**
+     * @return the number of rows in the tables of the datasets, including the tables that have not been reloaded
+     */
+    synchronized int getRowCount() {
+        if (rowCounts == null) return 0;
+        return rowCounts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Adds the tables that have a foreign key to an affected table.
+     */
+    private static void addDependentTables(Database database, Set<TableName> affectedTables, Set<TableName> datasetTables) {
+        Deque<TableName> queue = new ArrayDeque<>(affectedTables);
+        while (!queue.isEmpty()) {
+            TableName tableName = queue.pop();
+            for (ForeignKey foreignKey : database.getRelatedForeignKeys(tableName)) {
+                TableName fkTableName = foreignKey.getFkTableName();
+                if (datasetTables.contains(fkTableName) && affectedTables.add(fkTableName)) {
+                    log.debug("Dependent table: {}", fkTableName.toQualifiedName());
+                    queue.add(fkTableName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fingerprints the files of the datasets that are loaded.
+     * Every table of every dataset is present because a populate also empties the tables that are not loaded.
+     */
+    static Map<TableName, List<FileFingerprint>> getFingerprints(Map<String, Dataset> datasetsByName, List<String> datasets) {
+        Set<String> loadedDatasets = new HashSet<>(datasets);
+        loadedDatasets.add(Datasets.STATIC);
+        loadedDatasets.add(Datasets.BASE);
+
+        Map<TableName, List<FileFingerprint>> ret = new HashMap<>();
+        for (Dataset dataset : datasetsByName.values()) {
+            boolean loaded = loadedDatasets.contains(dataset.getName());
+            for (DataFile dataFile : dataset.getDataFiles()) {
+                List<FileFingerprint> tableFingerprints = ret.computeIfAbsent(dataFile.getTableName(), tableName -> new ArrayList<>());
+                if (loaded) {
+                    tableFingerprints.add(FileFingerprint.of(dataFile.getFile()));
+                }
+            }
+        }
+        ret.values().forEach(tableFingerprints -> tableFingerprints.sort(Comparator.comparing(FileFingerprint::file)));
+        return ret;
+    }
+
+    record FileFingerprint(File file, long lastModified, long length) {
+        static FileFingerprint of(File file) {
+            return new FileFingerprint(file, file.lastModified(), file.length());
+        }
+    }
+}
@@ -9,8 +9,13 @@ import org.dandoy.dbpop.tests.mssql.DbPopContainerTest;
 import org.dandoy.dbpopd.CsvAssertionService;
 import org.dandoy.dbpopd.config.DatabaseCacheService;
 import org.dandoy.dbpopd.download.DownloadController;
+import org.dandoy.dbpopd.download.DownloadJob;
+import org.dandoy.dbpopd.download.DownloadJobStatus;
 import org.dandoy.dbpopd.download.DownloadRequest;
 import org.dandoy.dbpopd.download.DownloadResponse;
+import org.dandoy.dbpopd.populate.PopulateController;
+import org.dandoy.dbpopd.populate.PopulateJob;
+import org.dandoy.dbpopd.populate.PopulateJobStatus;
 import org.dandoy.dbpopd.populate.PopulateResult;
 import org.dandoy.dbpopd.populate.PopulateService;
 import org.junit.jupiter.api.Assertions;
@@ -39,6 +44,8 @@ public class FullDownloadTest {
     @Inject
     PopulateService populateService;
     @Inject
+    PopulateController populateController;
+    @Inject
     CsvAssertionService csvAssertionService;
 
     @Test
@@ -220,4 +227,48 @@ public class FullDownloadTest {
                 );
 
     }
+
+    @Test
+    void downloadJobTest() throws InterruptedException {
+        DownloadJobStatus jobStatus = downloadController.bulkDownloadJob(
+                new DownloadController.DownloadBulkBody(
+                        "static",
+                        List.of(
+                                new TableName("dbpop", "dbo", "customer_types"),
+                                new TableName("dbpop", "dbo", "product_categories"),
+                                new TableName("dbpop", "dbo", "products")
+                        )
+                )
+        );
+        for (int i = 0; i < 600 && (jobStatus.status() == DownloadJob.Status.QUEUED || jobStatus.status() == DownloadJob.Status.RUNNING); i++) {
+            Thread.sleep(100);
+            jobStatus = downloadController.getDownloadJob(jobStatus.jobId());
+        }
+        assertEquals(DownloadJob.Status.COMPLETED, jobStatus.status());
+        assertEquals(7, jobStatus.downloadResponse().getRowCount());
+    }
+
+    @Test
+    void populateJobTest() throws InterruptedException {
+        downloadController.bulkDownload(
+                new DownloadController.DownloadBulkBody(
+                        "static",
+                        List.of(
+                                new TableName("dbpop", "dbo", "customer_types"),
+                                new TableName("dbpop", "dbo", "product_categories"),
+                                new TableName("dbpop", "dbo", "products")
+                        )
+                )
+        );
+        PopulateJobStatus jobStatus = populateController.populateJob(List.of("static"));
+        for (int i = 0; i < 600 && (jobStatus.status() == PopulateJob.Status.QUEUED || jobStatus.status() == PopulateJob.Status.RUNNING); i++) {
+            Thread.sleep(100);
+            jobStatus = populateController.getPopulateJob(jobStatus.jobId());
+        }
+        assertEquals(PopulateJob.Status.COMPLETED, jobStatus.status());
+        Assertions.assertNotNull(jobStatus.populateResult());
+        assertEquals(jobStatus.populateResult().rows(), jobStatus.rowCount());
+        assertEquals(emptyList(), jobStatus.activeTables());
+        Assertions.assertTrue(jobStatus.tableCount() >= 3);
+    }
 }
@@ -0,0 +1,138 @@
+package org.dandoy.dbpopd.mssql;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.apache.commons.io.FileUtils;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.tests.TableAssertion;
+import org.dandoy.dbpop.tests.mssql.DbPopContainerTest;
+import org.dandoy.dbpop.upload.PopulatorListener;
+import org.dandoy.dbpopd.config.ConfigurationService;
+import org.dandoy.dbpopd.populate.PopulateResult;
+import org.dandoy.dbpopd.populate.PopulateService;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DbPopContainerTest(target = true, withTargetTables = true)
+@MicronautTest(environments = "temp-test")
+@Property(name = "dbpopd.populate.incremental", value = "true")
+public class IncrementalPopulateTest {
+    private static final TableName customerTypes = new TableName("dbpop", "dbo", "customer_types");
+    private static final TableName productCategories = new TableName("dbpop", "dbo", "product_categories");
+    private static final TableName customers = new TableName("dbpop", "dbo", "customers");
+    private static final TableName products = new TableName("dbpop", "dbo", "products");
+    private static final TableName invoices = new TableName("dbpop", "dbo", "invoices");
+    private static final TableName invoiceDetails = new TableName("dbpop", "dbo", "invoice_details");
+
+    @Inject
+    PopulateService populateService;
+    @Inject
+    ConfigurationService configurationService;
+
+    @Test
+    void testIncrementalPopulate() throws IOException, SQLException {
+        writeDataFile(customerTypes, """
+                customer_type_id,name
+                1,Wholesale
+                2,Retail
+                """);
+        writeDataFile(productCategories, """
+                product_category_id,name
+                1,Electronic
+                """);
+        writeDataFile(customers, """
+                customer_id,customer_type_id,name
+                101,1,AirMethod
+                102,2,Crown Beauty Filters
+                """);
+        writeDataFile(products, """
+                product_id,product_category_id,part_no,part_desc
+                11,1,3000,Circuit Playground Classic
+                """);
+        writeDataFile(invoices, """
+                invoice_id,customer_id,invoice_date
+                1001,101,2023-01-01 00:00:00
+                1002,102,2023-01-02 00:00:00
+                """);
+        writeDataFile(invoiceDetails, """
+                invoice_detail_id,invoice_id,product_id
+                1,1001,11
+                2,1002,11
+                """);
+
+        {   // The first populate loads everything
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(customerTypes, productCategories, customers, products, invoices, invoiceDetails), loadedTables);
+            assertEquals(10, populateResult.rows());
+        }
+
+        {   // Nothing has changed
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(), loadedTables);
+            assertEquals(10, populateResult.rows());
+        }
+
+        {   // A changed data file reloads its table and the tables that reference it
+            writeDataFile(invoices, """
+                    invoice_id,customer_id,invoice_date
+                    1001,101,2023-01-01 00:00:00
+                    1002,102,2023-01-02 00:00:00
+                    1003,101,2023-01-03 00:00:00
+                    """);
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(invoices, invoiceDetails), loadedTables);
+            assertEquals(11, populateResult.rows());
+        }
+
+        {   // A table written to since the last populate is reloaded with the tables that reference it
+            try (Connection targetConnection = configurationService.createTargetConnection()) {
+                try (PreparedStatement preparedStatement = targetConnection.prepareStatement("UPDATE dbpop.dbo.products SET part_desc = 'changed'")) {
+                    preparedStatement.execute();
+                }
+            }
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(products, invoiceDetails), loadedTables);
+            assertEquals(11, populateResult.rows());
+            try (Connection targetConnection = configurationService.createTargetConnection()) {
+                new TableAssertion(targetConnection, "dbpop", "dbo", "products")
+                        .assertRowCount(1)
+                        .assertExists(
+                                List.of("part_desc"),
+                                List.of("Circuit Playground Classic")
+                        );
+                new TableAssertion(targetConnection, "dbpop", "dbo", "invoice_details")
+                        .assertRowCount(2);
+            }
+        }
+    }
+
+    private PopulateResult populate(Set<TableName> loadedTables) {
+        return populateService.populate(List.of("base"), false, new PopulatorListener() {
+            @Override
+            public void tableStarted(TableName tableName) {
+                loadedTables.add(tableName);
+            }
+        });
+    }
+
+    private void writeDataFile(TableName tableName, String csv) throws IOException {
+        File file = new File(configurationService.getDatasetsDirectory(), "base/%s/%s/%s.csv".formatted(tableName.getCatalog(), tableName.getSchema(), tableName.getTable()));
+        FileUtils.writeStringToFile(file, csv, UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package org.dandoy.dbpopd.mssql;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.apache.commons.io.FileUtils;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.tests.TableAssertion;
+import org.dandoy.dbpop.tests.mssql.DbPopContainerTest;
+import org.dandoy.dbpop.upload.PopulatorListener;
+import org.dandoy.dbpopd.config.ConfigurationService;
+import org.dandoy.dbpopd.populate.PopulateResult;
+import org.dandoy.dbpopd.populate.PopulateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DbPopContainerTest(target = true, withTargetTables = true)
+@MicronautTest(environments = "temp-test")
+@Property(name = "dbpopd.populate.snapshot", value = "true")
+public class SnapshotPopulateTest {
+    private static final TableName customerTypes = new TableName("dbpop", "dbo", "customer_types");
+    private static final TableName customers = new TableName("dbpop", "dbo", "customers");
+    private static final TableName invoices = new TableName("dbpop", "dbo", "invoices");
+
+    @Inject
+    PopulateService populateService;
+    @Inject
+    ConfigurationService configurationService;
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        // A database that has a snapshot cannot be dropped by the next test
+        execute("IF DB_ID('dbpop_dbpop_snapshot') IS NOT NULL DROP DATABASE dbpop_dbpop_snapshot");
+    }
+
+    @Test
+    void testSnapshot() throws IOException, SQLException {
+        writeDataFile(customerTypes, """
+                customer_type_id,name
+                1,Wholesale
+                """);
+        writeDataFile(customers, """
+                customer_id,customer_type_id,name
+                101,1,AirMethod
+                102,1,Crown Beauty Filters
+                """);
+        writeDataFile(invoices, """
+                invoice_id,customer_id,invoice_date
+                1001,101,2023-01-01 00:00:00
+                1002,102,2023-01-02 00:00:00
+                """);
+
+        {   // The first populate loads the data files and captures the snapshot
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(customerTypes, customers, invoices), loadedTables);
+            assertEquals(5, populateResult.rows());
+            assertTrue(databaseExists("dbpop_dbpop_snapshot"));
+        }
+
+        {   // The same datasets are restored from the snapshot
+            execute("DELETE FROM dbpop.dbo.invoices");
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(), loadedTables);
+            assertEquals(5, populateResult.rows());
+            try (Connection targetConnection = configurationService.createTargetConnection()) {
+                new TableAssertion(targetConnection, "dbpop", "dbo", "invoices")
+                        .assertRowCount(2);
+            }
+        }
+
+        {   // A table definition has changed, the stale snapshot is dropped instead of reverting the change
+            execute("ALTER TABLE dbpop.dbo.customers ADD note VARCHAR(32) NULL");
+            Set<TableName> loadedTables = ConcurrentHashMap.newKeySet();
+            PopulateResult populateResult = populate(loadedTables);
+            assertEquals(Set.of(customerTypes, customers, invoices), loadedTables);
+            assertEquals(5, populateResult.rows());
+            try (Connection targetConnection = configurationService.createTargetConnection()) {
+                try (PreparedStatement preparedStatement = targetConnection.prepareStatement("SELECT COL_LENGTH('dbpop.dbo.customers', 'note')")) {
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        assertTrue(resultSet.next());
+                        assertNotNull(resultSet.getObject(1));
+                    }
+                }
+            }
+        }
+    }
+
+    private PopulateResult populate(Set<TableName> loadedTables) {
+        return populateService.populate(List.of("base"), false, new PopulatorListener() {
+            @Override
+            public void tableStarted(TableName tableName) {
+                loadedTables.add(tableName);
+            }
+        });
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection targetConnection = configurationService.createTargetConnection()) {
+            try (PreparedStatement preparedStatement = targetConnection.prepareStatement(sql)) {
+                preparedStatement.execute();
+            }
+        }
+    }
+
+    private boolean databaseExists(String name) throws SQLException {
+        try (Connection targetConnection = configurationService.createTargetConnection()) {
+            try (PreparedStatement preparedStatement = targetConnection.prepareStatement("SELECT DB_ID(?)")) {
+                preparedStatement.setString(1, name);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    return resultSet.getObject(1) != null;
+                }
+            }
+        }
+    }
+
+    private void writeDataFile(TableName tableName, String csv) throws IOException {
+        File file = new File(configurationService.getDatasetsDirectory(), "base/%s/%s/%s.csv".formatted(tableName.getCatalog(), tableName.getSchema(), tableName.getTable()));
+        FileUtils.writeStringToFile(file, csv, UTF_8);
+    }
+}
@@ -5,11 +5,13 @@ import {DownloadResponse} from "../models/DownloadResponse";
 interface DownloadBulkBody {
     dataset: string;
     tableNames: TableName[];
+    resume: boolean;
 }
 
-export function bulkDownload(dataset: string, tableNames: TableName[]) {
+export function bulkDownload(dataset: string, tableNames: TableName[], resume: boolean = false) {
     return axios.post<DownloadBulkBody, AxiosResponse<DownloadResponse>>(`/download/bulk`, {
         dataset: dataset,
         tableNames: tableNames,
+        resume: resume,
     })
 }
\ No newline at end of file
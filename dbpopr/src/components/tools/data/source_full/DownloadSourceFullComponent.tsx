@@ -10,11 +10,13 @@ import DownloadResultsComponent from "../DownloadResultsComponent";
 
 interface FullDownloadRequest {
     dataset: string;
+    resume: boolean;
 }
 
-function fullDownload(dataset: string) {
+function fullDownload(dataset: string, resume: boolean) {
     return axios.post<FullDownloadRequest, AxiosResponse<DownloadResponse>>(`/download/source`, {
-        dataset: dataset
+        dataset: dataset,
+        resume: resume,
     });
 }
 
@@ -24,11 +26,12 @@ export default function DownloadSourceFullComponent() {
     const [downloadResponse, setDownloadResponse] = useState<DownloadResponse | undefined>();
     const [datasets, loadingDatasets] = useDatasets();
     const [dataset, setDataset] = useState("base");
+    const [resume, setResume] = useState(false);
 
     function handleDownload() {
         setLoading(true);
         setError(undefined);
-        fullDownload(dataset)
+        fullDownload(dataset, resume)
             .then(response => {
                 setLoading(false);
                 setDownloadResponse(response.data);
@@ -56,6 +59,18 @@ export default function DownloadSourceFullComponent() {
                         ))}
                     </select>
                 </div>
+                <div className="col-auto">
+                    <div className="form-check">
+                        <input className="form-check-input"
+                               type="checkbox"
+                               checked={resume}
+                               onChange={e => setResume(e.target.checked)}
+                               id={"resume"}/>
+                        <label className="form-check-label" htmlFor="resume">
+                            Resume the previous download
+                        </label>
+                    </div>
+                </div>
                 <div className="col-auto">
                     <button onClick={handleDownload} className={"btn btn-primary"}>Download</button>
                 </div>
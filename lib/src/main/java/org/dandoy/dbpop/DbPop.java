@@ -1,5 +1,6 @@
 package org.dandoy.dbpop;
 
+import org.dandoy.dbpop.cli.CommandConvert;
 import org.dandoy.dbpop.cli.CommandDownload;
 import org.dandoy.dbpop.cli.CommandPopulate;
 import picocli.CommandLine;
@@ -15,7 +16,8 @@ import picocli.CommandLine.Command;
         subcommands = {
                 CommandLine.HelpCommand.class,
                 CommandPopulate.class,
-                CommandDownload.class
+                CommandDownload.class,
+                CommandConvert.class
         }
 )
 public class DbPop {
@@ -9,10 +9,49 @@ public class FeatureFlags {
      * if createCsvFilesForEmptyTables is true, should we write headers in an empty file
      */
     public static boolean includeCsvHeadersForEmptyTables = getDefault("INCLUDE_CSV_HEADERS_FOR_EMPTY_TABLES", false);
+    /**
+     * Read the data files with CsvDataReader instead of commons-csv when populating
+     */
+    public static boolean fastCsvReader = getDefault("FAST_CSV_READER", false);
+    /**
+     * Limits of the number of rows sent in a JDBC batch when populating
+     */
+    public static int batchSizeMin = getDefault("BATCH_SIZE_MIN", 100);
+    public static int batchSizeMax = getDefault("BATCH_SIZE_MAX", 50_000);
+    /**
+     * The batch size is adjusted to send about that many bytes per batch
+     */
+    public static int batchTargetBytes = getDefault("BATCH_TARGET_BYTES", 4 * 1024 * 1024);
+    /**
+     * The batch size is adjusted for executeBatch() to take about that long
+     */
+    public static int batchTargetMillis = getDefault("BATCH_TARGET_MILLIS", 1000);
+    /**
+     * Number of rows per primary key range when a large table is downloaded in chunks
+     */
+    public static int downloadChunkRows = getDefault("DOWNLOAD_CHUNK_ROWS", 1_000_000);
+    /**
+     * Maintain a .pkidx file next to the downloaded CSV files to read their primary keys without parsing them
+     */
+    public static boolean primaryKeyIndex = getDefault("PRIMARY_KEY_INDEX", true);
+    /**
+     * Populate from the .dbpb binary file of a CSV file when it matches the CSV file
+     */
+    public static boolean binaryDataFiles = getDefault("BINARY_DATA_FILES", true);
 
     private static boolean getDefault(String name, @SuppressWarnings("SameParameterValue") boolean defaultValue) {
         String value = System.getenv(name);
         if (value == null) return defaultValue;
         return "1".equals(value) || "true".equalsIgnoreCase(value);
     }
+
+    private static int getDefault(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid value for %s: %s".formatted(name, value));
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package org.dandoy.dbpop.cli;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.datasets.Datasets;
+import org.dandoy.dbpop.upload.BinaryDataFile;
+import org.dandoy.dbpop.upload.DataFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+import static picocli.CommandLine.*;
+
+/**
+ * <pre>
+ *   Usage: DbPop convert [-hV] [-d=&lt;directory&gt;] --to=&lt;format&gt; &lt;dataset&gt;...
+ *   &lt;dataset&gt;...                   Datasets to convert
+ *   -d, --directory=&lt;directory&gt;    Dataset directory
+ *   -h, --help                     Show this help message and exit.
+ *       --to=&lt;format&gt;             BINARY: write the .dbpb file of each CSV file, CSV: write the CSV files from their .dbpb files
+ *   -V, --version                  Print version information and exit.
+ * </pre>
+ */
+@Command(name = "convert", description = "Converts the CSV files of the datasets to binary files and back")
+@Slf4j
+public class CommandConvert implements Callable<Integer> {
+    enum Format {CSV, BINARY}
+
+    @Option(names = {"-d", "--directory"}, description = "Dataset directory")
+    File directory;
+
+    @Option(names = {"--to"}, description = "BINARY: write the .dbpb file of each CSV file, CSV: write the CSV files from their .dbpb files", required = true)
+    Format format;
+
+    @Parameters(paramLabel = "<dataset>", description = "Datasets", arity = "1..*")
+    private final List<String> datasets = new ArrayList<>();
+
+    @Override
+    public Integer call() {
+        try {
+            for (String dataset : datasets) {
+                if (format == Format.BINARY) {
+                    for (DataFile dataFile : Datasets.getDataset(directory, dataset).getDataFiles()) {
+                        BinaryDataFile.writeBinaryFile(dataFile.getFile(), null);
+                    }
+                } else {
+                    for (File binaryFile : getBinaryFiles(new File(directory, dataset))) {
+                        String name = binaryFile.getName();
+                        File csvFile = new File(binaryFile.getParentFile(), name.substring(0, name.length() - BinaryDataFile.SUFFIX.length()));
+                        BinaryDataFile.writeCsvFile(csvFile);
+                    }
+                }
+                log.info("Converted {}", dataset);
+            }
+            return 0;
+        } catch (Exception e) {
+            log.error("Internal error", e);
+            return 1;
+        }
+    }
+
+    private static List<File> getBinaryFiles(File datasetDirectory) throws IOException {
+        if (!datasetDirectory.isDirectory()) throw new RuntimeException("Dataset not found: " + datasetDirectory);
+        try (Stream<Path> paths = Files.walk(datasetDirectory.toPath())) {
+            return paths
+                    .map(Path::toFile)
+                    .filter(BinaryDataFile::isBinaryFile)
+                    .toList();
+        }
+    }
+}
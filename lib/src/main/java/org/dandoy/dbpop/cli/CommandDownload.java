@@ -4,7 +4,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.database.Database;
 import org.dandoy.dbpop.database.TableName;
 import org.dandoy.dbpop.database.UrlConnectionBuilder;
-import org.dandoy.dbpop.download.TableDownloader;
+import org.dandoy.dbpop.datasets.CsvCompression;
+import org.dandoy.dbpop.datasets.DatasetSettings;
+import org.dandoy.dbpop.download.ParallelTableDownloader;
 import org.dandoy.dbpop.utils.StringUtils;
 
 import java.io.File;
@@ -30,52 +32,60 @@ public class CommandDownload implements Callable<Integer> {
     @Parameters(paramLabel = "<tables>", description = "Tables", arity = "1..*")
     private final List<String> tables = new ArrayList<>();
 
+    @Option(names = {"--parallelism"}, description = "Number of connections used to download the tables", defaultValue = "1")
+    int parallelism;
+
+    @Option(names = {"--chunk-parallelism"}, description = "Number of connections used to download the primary key ranges of a large table", defaultValue = "1")
+    int chunkParallelism;
+
+    @Option(names = {"--compression"}, description = "Compression of the new CSV files of the dataset: NONE or GZIP, saved in the dataset settings")
+    CsvCompression compression;
+
+    @Option(names = {"--binary"}, description = "Also write the typed .dbpb file of each CSV file, saved in the dataset settings")
+    boolean binary;
+
+    @Option(names = {"--resume"}, description = "Continue the previous download of the dataset, skipping the tables already downloaded")
+    boolean resume;
+
     @Override
     public Integer call() {
         try (Database database = Database.createDatabase(new UrlConnectionBuilder(databaseOptions.dbUrl, databaseOptions.dbUser, databaseOptions.dbPassword))) {
+            List<TableName> tableNames = new ArrayList<>();
             for (String table : tables) {
                 List<String> split = StringUtils.split(table, '.');
 
                 if (split.size() == 1) {            // database, no catalog: "master"
-                    downloadDatabase(database, split.get(0));
+                    tableNames.addAll(getDatabaseTableNames(database, split.get(0)));
                 } else if (split.size() == 2) {      // database and catalog: "master.dbo"
-                    downloadSchema(database, split.get(0), split.get(1));
+                    tableNames.addAll(database.getTableNames(split.get(0), split.get(1)));
                 } else if (split.size() == 3) {      // database and catalog: "master.dbo.mytable"
-                    downloadTable(database, split.get(0), split.get(1), split.get(2));
+                    tableNames.add(new TableName(split.get(0), split.get(1), split.get(2)));
                 } else {
                     throw new RuntimeException("Invalid database/schema/table: " + table);
                 }
             }
+            if (compression != null) {
+                DatasetSettings.setCompression(directory, dataset, compression);
+            }
+            if (binary) {
+                DatasetSettings.setBinary(directory, dataset, true);
+            }
+            new ParallelTableDownloader()
+                    .setDatabase(database)
+                    .setDatasetsDirectory(directory)
+                    .setDataset(dataset)
+                    .setParallelism(parallelism)
+                    .setChunkParallelism(chunkParallelism)
+                    .setResume(resume)
+                    .download(tableNames);
             return 0;
         }
     }
 
-    private void downloadDatabase(Database database, String catalog) {
-        database.getSchemas(catalog)
+    private static List<TableName> getDatabaseTableNames(Database database, String catalog) {
+        return database.getSchemas(catalog)
                 .stream()
                 .flatMap(s -> database.getTableNames(catalog, s).stream())
-                .forEach(tableName -> download(database, tableName));
-    }
-
-    private void downloadSchema(Database database, String catalog, String schema) {
-        database
-                .getTableNames(catalog, schema)
-                .forEach(tableName -> download(database, tableName));
-    }
-
-    private void downloadTable(Database database, String catalog, String schema, String table) {
-        TableName tableName = new TableName(catalog, schema, table);
-        download(database, tableName);
-    }
-
-    private void download(Database database, TableName tableName) {
-        try (TableDownloader tableDownloader = TableDownloader.builder()
-                .setDatabase(database)
-                .setDatasetsDirectory(directory)
-                .setDataset(dataset)
-                .setTableName(tableName)
-                .build()) {
-            tableDownloader.download();
-        }
+                .toList();
     }
 }
@@ -14,12 +14,18 @@ import static picocli.CommandLine.*;
 
 /**
  * <pre>
- *   Usage: DbPop populate [-hvV] [-d=&lt;directory&gt;] [-j=&lt;dbUrl&gt;] -p=&lt;dbPassword&gt; [-u=&lt;dbUser&gt;] &lt;dataset&gt;...
+ *   Usage: DbPop populate [-hvV] [-d=&lt;directory&gt;] [-j=&lt;dbUrl&gt;] -p=&lt;dbPassword&gt; [-u=&lt;dbUser&gt;] [--bulk] [--defer-indexes] [--minimal-logging] [--pipelined] [--parallelism=&lt;parallelism&gt;] &lt;dataset&gt;...
  *   &lt;dataset&gt;...                   Datasets to load
+ *       --bulk                     Use the native bulk protocol of the database
  *   -d, --directory=&lt;directory&gt;    Dataset Directory
+ *       --defer-indexes            Rebuild the secondary indexes after the load
  *   -h, --help                     Show this help message and exit.
  *   -j, --jdbcurl=&lt;dbUrl&gt;          Database URL
+ *       --minimal-logging          Minimally log the load, for throwaway databases
  *   -p, --password=&lt;dbPassword&gt;    Database password
+ *       --parallelism=&lt;parallelism&gt;
+ *                                  Number of connections used to load the tables
+ *       --pipelined                Read the CSV files on a separate thread
  *   -u, --username=&lt;dbUser&gt;        Database user
  *   -V, --version                  Print version information and exit.
  * </pre>
@@ -33,6 +39,21 @@ public class CommandPopulate implements Callable<Integer> {
     @Option(names = {"-d", "--directory"}, description = "Dataset directory")
     String directory;
 
+    @Option(names = {"--parallelism"}, description = "Number of connections used to load the tables", defaultValue = "1")
+    int parallelism;
+
+    @Option(names = {"--bulk"}, description = "Use the native bulk protocol of the database")
+    boolean bulkInsert;
+
+    @Option(names = {"--defer-indexes"}, description = "Rebuild the secondary indexes after the load")
+    boolean deferIndexes;
+
+    @Option(names = {"--minimal-logging"}, description = "Minimally log the load, for throwaway databases")
+    boolean minimalLogging;
+
+    @Option(names = {"--pipelined"}, description = "Read the CSV files on a separate thread")
+    boolean pipelined;
+
     @Parameters(paramLabel = "<dataset>", description = "Datasets", arity = "1..*")
     private final List<String> datasets = new ArrayList<>();
 
@@ -43,7 +64,12 @@ public class CommandPopulate implements Callable<Integer> {
             int rowCount;
             UrlConnectionBuilder connectionBuilder = new UrlConnectionBuilder(databaseOptions.dbUrl, databaseOptions.dbUser, databaseOptions.dbPassword);
             try (Database database = Database.createDatabase(connectionBuilder)) {
-                Populator populator = Populator.createPopulator(database, new File(directory));
+                Populator populator = Populator.createPopulator(database, new File(directory))
+                        .setParallelism(parallelism)
+                        .setBulkInsert(bulkInsert)
+                        .setDeferIndexes(deferIndexes)
+                        .setMinimalLogging(minimalLogging)
+                        .setPipelined(pipelined);
                 rowCount = populator.load(this.datasets);
                 long t1 = System.currentTimeMillis();
                 log.info("Loaded {} rows in {}ms", rowCount, t1 - t0);
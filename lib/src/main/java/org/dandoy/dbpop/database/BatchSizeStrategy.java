@@ -0,0 +1,68 @@
+package org.dandoy.dbpop.database;
+
+import org.dandoy.dbpop.FeatureFlags;
+
+/**
+ * Chooses the number of rows sent in each JDBC batch.
+ * <p>
+ * The first batch size is estimated from the width of the rows.
+ * After each batch, the size is adjusted from the bytes that were bound and from the time executeBatch() took.
+ * The size is at most halved or doubled at a time so that a single slow batch does not collapse it.
+ */
+public class BatchSizeStrategy {
+    /**
+     * Width assumed for the columns of unknown or unlimited length
+     */
+    public static final int LARGE_COLUMN_WIDTH = 8000;
+    private final int minBatchSize = Math.max(1, FeatureFlags.batchSizeMin);
+    private final int maxBatchSize = Math.max(minBatchSize, FeatureFlags.batchSizeMax);
+    private final long targetBytes = FeatureFlags.batchTargetBytes;
+    private final long targetNanos = FeatureFlags.batchTargetMillis * 1_000_000L;
+    private int batchSize;
+
+    /**
+     * @param rowWidth the estimated number of bytes of a row
+     */
+    public BatchSizeStrategy(int rowWidth) {
+        batchSize = clamp(targetBytes / Math.max(1, rowWidth));
+    }
+
+    /**
+     * Estimates the width of a column from its type
+     */
+    public static int getColumnWidth(Column column) {
+        ColumnType columnType = column.getColumnType();
+        if (columnType == ColumnType.INTEGER) return 8;
+        if (columnType == ColumnType.BIG_DECIMAL) return 16;
+        if (columnType == ColumnType.TIMESTAMP || columnType == ColumnType.DATE || columnType == ColumnType.TIME) return 8;
+        if (columnType == ColumnType.BINARY) return LARGE_COLUMN_WIDTH;
+        return 64;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Adjusts the batch size after an executeBatch()
+     *
+     * @param rows  the number of rows in the batch
+     * @param bytes the number of bytes bound, estimated from the length of the values
+     * @param nanos the time executeBatch() took
+     */
+    public void batchExecuted(int rows, long bytes, long nanos) {
+        if (rows == 0) return;
+        double bytesPerRow = Math.max(1.0, (double) bytes / rows);
+        double nanosPerRow = Math.max(1.0, (double) nanos / rows);
+        long wanted = Math.min(
+                (long) (targetBytes / bytesPerRow),
+                (long) (targetNanos / nanosPerRow)
+        );
+        wanted = Math.max(batchSize / 2, Math.min(batchSize * 2L, wanted));
+        batchSize = clamp(wanted);
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minBatchSize, Math.min(maxBatchSize, size));
+    }
+}
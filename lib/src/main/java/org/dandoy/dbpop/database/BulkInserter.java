@@ -0,0 +1,24 @@
+package org.dandoy.dbpop.database;
+
+import org.dandoy.dbpop.upload.DataReader;
+
+import java.sql.SQLException;
+import java.io.IOException;
+
+/**
+ * Loads a table using the native bulk protocol of the database.
+ */
+public interface BulkInserter {
+    /**
+     * Inserts the remaining rows of the reader.
+     *
+     * @return the number of rows inserted
+     */
+    int insert(DataReader dataReader) throws SQLException, IOException;
+
+    /**
+     * Locks the table for the duration of the load, which the database may require to minimally log it.
+     */
+    default void setTableLock(boolean tableLock) {
+    }
+}
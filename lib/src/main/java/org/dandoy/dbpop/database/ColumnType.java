@@ -1,6 +1,7 @@
 package org.dandoy.dbpop.database;
 
 import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.upload.DataRecord;
 
 import java.math.BigDecimal;
 import java.sql.*;
@@ -34,6 +35,20 @@ public abstract class ColumnType {
             }
         }
 
+        @Override
+        public void bind(PreparedStatement preparedStatement, int jdbcPos, DataRecord dataRecord, int pos) throws SQLException {
+            if (dataRecord.isNull(pos)) {
+                preparedStatement.setNull(jdbcPos, Types.INTEGER);
+            } else {
+                preparedStatement.setLong(jdbcPos, dataRecord.getLong(pos));
+            }
+        }
+
+        @Override
+        public Object parse(String input) {
+            return input == null ? null : Long.parseLong(input);
+        }
+
         @Override
         public Integer toSqlType() {
             return Types.INTEGER;
@@ -50,6 +65,20 @@ public abstract class ColumnType {
             }
         }
 
+        @Override
+        public void bind(PreparedStatement preparedStatement, int jdbcPos, DataRecord dataRecord, int pos) throws SQLException {
+            if (dataRecord.isNull(pos)) {
+                preparedStatement.setNull(jdbcPos, Types.DECIMAL);
+            } else {
+                preparedStatement.setBigDecimal(jdbcPos, dataRecord.getBigDecimal(pos));
+            }
+        }
+
+        @Override
+        public Object parse(String input) {
+            return input == null ? null : new BigDecimal(input);
+        }
+
         @Override
         public Integer toSqlType() {
             return Types.DECIMAL;
@@ -64,30 +93,51 @@ public abstract class ColumnType {
                 .appendFraction(ChronoField.MILLI_OF_SECOND, 1, 3, true)
                 .toFormatter();
         private static final DateTimeFormatter FORMAT_10 = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        private static final DateTimeFormatter FORMAT_24 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        private static final DateTimeFormatter FORMAT_ISO = new DateTimeFormatterBuilder()
+                .append(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"))
+                .optionalStart()
+                .appendFraction(ChronoField.MILLI_OF_SECOND, 1, 3, true)
+                .optionalEnd()
+                .appendLiteral('Z')
+                .toFormatter();
 
         @Override
         public void bind(PreparedStatement preparedStatement, int jdbcPos, String input) throws SQLException {
             if (input == null) {
                 preparedStatement.setNull(jdbcPos, Types.TIMESTAMP);
-                return;
+            } else {
+                preparedStatement.setTimestamp(jdbcPos, parse(input));
             }
+        }
+
+        @Override
+        public void bind(PreparedStatement preparedStatement, int jdbcPos, DataRecord dataRecord, int pos) throws SQLException {
+            if (dataRecord.isNull(pos)) {
+                preparedStatement.setNull(jdbcPos, Types.TIMESTAMP);
+            } else {
+                preparedStatement.setTimestamp(jdbcPos, dataRecord.getTimestamp(pos));
+            }
+        }
+
+        @Override
+        public Timestamp parse(String input) {
+            if (input == null) return null;
             int length = input.length();
             LocalDateTime localDateTime;
             if (length == 10) {
                 localDateTime = LocalDate.from(FORMAT_10.parse(input)).atStartOfDay();
             } else {
                 TemporalAccessor temporalAccessor;
-                if (19 <= length && length <= 23) {
+                if (20 <= length && length <= 24 && input.charAt(10) == 'T') {
+                    temporalAccessor = FORMAT_ISO.parse(input);
+                } else if (19 <= length && length <= 23) {
                     temporalAccessor = FORMAT_DEFAULT.parse(input);
-                } else if (length == 24) {
-                    temporalAccessor = FORMAT_24.parse(input);
                 } else {
                     throw new RuntimeException("Invalid date/time format: " + input);
                 }
                 localDateTime = LocalDateTime.from(temporalAccessor);
             }
-            preparedStatement.setTimestamp(jdbcPos, Timestamp.valueOf(localDateTime));
+            return Timestamp.valueOf(localDateTime);
         }
 
         @Override
@@ -98,26 +148,40 @@ public abstract class ColumnType {
     public static final ColumnType TIME = new ColumnType() {
         @Override
         public void bind(PreparedStatement preparedStatement, int jdbcPos, String input) throws SQLException {
-            SimpleDateFormat format_8 = new SimpleDateFormat("HH:mm:ss");
-            SimpleDateFormat format_10 = new SimpleDateFormat("HH:mm:ss.S");
-
             if (input == null) {
                 preparedStatement.setNull(jdbcPos, Types.TIME);
             } else {
-                try {
-                    Date date;
-                    int inputLength = input.length();
-                    if (inputLength == 8) {
-                        date = format_8.parse(input);
-                    } else if (10 <= inputLength && inputLength <= 16) {
-                        date = format_10.parse(input);
-                    } else {
-                        date = java.sql.Date.valueOf(input);
-                    }
-                    preparedStatement.setTime(jdbcPos, new Time(date.getTime()));
-                } catch (ParseException e) {
-                    throw new RuntimeException(e);
+                preparedStatement.setTime(jdbcPos, parse(input));
+            }
+        }
+
+        @Override
+        public void bind(PreparedStatement preparedStatement, int jdbcPos, DataRecord dataRecord, int pos) throws SQLException {
+            if (dataRecord.isNull(pos)) {
+                preparedStatement.setNull(jdbcPos, Types.TIME);
+            } else {
+                preparedStatement.setTime(jdbcPos, dataRecord.getTime(pos));
+            }
+        }
+
+        @Override
+        public Time parse(String input) {
+            if (input == null) return null;
+            SimpleDateFormat format_8 = new SimpleDateFormat("HH:mm:ss");
+            SimpleDateFormat format_10 = new SimpleDateFormat("HH:mm:ss.S");
+            try {
+                Date date;
+                int inputLength = input.length();
+                if (inputLength == 8) {
+                    date = format_8.parse(input);
+                } else if (10 <= inputLength && inputLength <= 16) {
+                    date = format_10.parse(input);
+                } else {
+                    date = java.sql.Date.valueOf(input);
                 }
+                return new Time(date.getTime());
+            } catch (ParseException e) {
+                throw new RuntimeException(e);
             }
         }
 
@@ -129,22 +193,36 @@ public abstract class ColumnType {
     public static final ColumnType DATE = new ColumnType() {
         @Override
         public void bind(PreparedStatement preparedStatement, int jdbcPos, String input) throws SQLException {
-            SimpleDateFormat format_10 = new SimpleDateFormat("yyyy-MM-dd");
-
             if (input == null) {
                 preparedStatement.setNull(jdbcPos, Types.DATE);
             } else {
-                try {
-                    Date date;
-                    if (input.length() == 10) {
-                        date = format_10.parse(input);
-                    } else {
-                        date = java.sql.Date.valueOf(input);
-                    }
-                    preparedStatement.setDate(jdbcPos, new java.sql.Date(date.getTime()));
-                } catch (ParseException e) {
-                    throw new RuntimeException(e);
+                preparedStatement.setDate(jdbcPos, parse(input));
+            }
+        }
+
+        @Override
+        public void bind(PreparedStatement preparedStatement, int jdbcPos, DataRecord dataRecord, int pos) throws SQLException {
+            if (dataRecord.isNull(pos)) {
+                preparedStatement.setNull(jdbcPos, Types.DATE);
+            } else {
+                preparedStatement.setDate(jdbcPos, dataRecord.getDate(pos));
+            }
+        }
+
+        @Override
+        public java.sql.Date parse(String input) {
+            if (input == null) return null;
+            SimpleDateFormat format_10 = new SimpleDateFormat("yyyy-MM-dd");
+            try {
+                Date date;
+                if (input.length() == 10) {
+                    date = format_10.parse(input);
+                } else {
+                    date = java.sql.Date.valueOf(input);
                 }
+                return new java.sql.Date(date.getTime());
+            } catch (ParseException e) {
+                throw new RuntimeException(e);
             }
         }
 
@@ -160,11 +238,15 @@ public abstract class ColumnType {
             if (input == null) {
                 preparedStatement.setNull(jdbcPos, Types.BINARY);
             } else {
-                byte[] bytes = Base64.getDecoder().decode(input);
-                preparedStatement.setBytes(jdbcPos, bytes);
+                preparedStatement.setBytes(jdbcPos, parse(input));
             }
         }
 
+        @Override
+        public byte[] parse(String input) {
+            return input == null ? null : Base64.getDecoder().decode(input);
+        }
+
         @Override
         public Integer toSqlType() {
             return Types.BINARY;
@@ -213,6 +295,20 @@ public abstract class ColumnType {
         preparedStatement.setString(jdbcPos, input);
     }
 
+    /**
+     * Binds a cell of a data record, the types that can be read without a String override it.
+     */
+    public void bind(PreparedStatement preparedStatement, int jdbcPos, DataRecord dataRecord, int pos) throws SQLException {
+        bind(preparedStatement, jdbcPos, dataRecord.get(pos));
+    }
+
+    /**
+     * Converts the text representation of a value to the Java object that is bound to the column.
+     */
+    public Object parse(String input) {
+        return input;
+    }
+
     public void bind(PreparedStatement preparedStatement, int jdbcPos, byte[] input) throws SQLException {
         preparedStatement.setBytes(jdbcPos, input);
     }
@@ -73,6 +73,11 @@ public abstract class Database implements AutoCloseable {
 
     public abstract Connection getConnection();
 
+    /**
+     * The ConnectionBuilder used to open this database, used to open additional connections to the same database.
+     */
+    public abstract ConnectionBuilder getConnectionBuilder();
+
     public abstract DatabaseIntrospector createDatabaseIntrospector();
 
     public abstract Collection<String> getCatalogs();
@@ -97,6 +102,36 @@ public abstract class Database implements AutoCloseable {
 
     public abstract DefaultDatabase.DatabaseInserter createInserter(Table table, List<DataFileHeader> dataFileHeaders) throws SQLException;
 
+    /**
+     * Creates an inserter that uses the native bulk protocol of the database.
+     *
+     * @return null if the database or one of the columns does not support bulk inserts
+     */
+    @Nullable
+    public BulkInserter createBulkInserter(Table table, List<DataFileHeader> dataFileHeaders) {
+        return null;
+    }
+
+    /**
+     * Wraps a strategy to remove the secondary indexes of the tables during the load and rebuild them after.
+     *
+     * @return null if the database does not support it
+     */
+    @Nullable
+    public DatabasePreparationStrategy createDeferredIndexesPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return null;
+    }
+
+    /**
+     * Wraps a strategy to prepare the database for a minimally logged load of the tables, for throwaway databases.
+     *
+     * @return null if the database does not support minimal logging
+     */
+    @Nullable
+    public DatabasePreparationStrategy createMinimalLoggingPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return null;
+    }
+
     public abstract String quote(String delimiter, String... strings);
 
     public abstract String quote(String delimiter, Collection<String> strings);
@@ -117,10 +152,116 @@ public abstract class Database implements AutoCloseable {
 
     public abstract RowCount getRowCount(TableName tableName);
 
+    /**
+     * Returns a counter per table that changes when the table is written to.
+     * Comparing two calls tells which tables have been modified in between, tables that have never been written to may be missing.
+     *
+     * @return null if the database cannot track the writes
+     */
+    @Nullable
+    public Map<TableName, Long> getTableWriteCounters(Collection<TableName> tableNames) {
+        return null;
+    }
+
+    /**
+     * Returns the number of rows of the tables of a catalog, as estimated by the database statistics.
+     *
+     * @return null if the database does not keep estimates
+     */
+    @Nullable
+    public Map<TableName, Long> getEstimatedRowCounts(String catalog) {
+        return null;
+    }
+
+    /**
+     * Returns a value per table that changes when the definition of the table changes: columns, indexes, primary and foreign keys.
+     * The values are only meant to be compared with each other.
+     *
+     * @return null if the database cannot tell
+     */
+    @Nullable
+    public Map<TableName, String> getTableSchemaVersions(String catalog) {
+        return null;
+    }
+
+    /**
+     * @return the foreign keys of all the tables indexed in both directions, null if the database does not keep them
+     */
+    @Nullable
+    public ForeignKeyGraph getForeignKeyGraph() {
+        return null;
+    }
+
+    /**
+     * Splits a table in ranges of primary keys that hold about the same number of rows.
+     *
+     * @param lowerPk only split the rows after that primary key, null to split the whole table
+     * @return the primary keys that end each range except the last one, in primary key order, null if the table cannot be split
+     */
+    @Nullable
+    public List<List<Object>> getPrimaryKeyBoundaries(Table table, long estimatedRowCount, int chunkCount, @Nullable List<Object> lowerPk) {
+        return null;
+    }
+
+    /**
+     * Creates a lookup of the rows of a table by a set of keys.
+     *
+     * @return null if the keys must be bound one by one
+     */
+    @Nullable
+    public KeySetLookup createKeySetLookup(Table table, List<String> columns) {
+        return null;
+    }
+
     public abstract void enableForeignKey(ForeignKey foreignKey);
 
     public abstract void disableForeignKey(ForeignKey foreignKey);
 
+    /**
+     * The batch variants send the statements in as few round trips as the database allows.
+     */
+    public void enableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        foreignKeys.forEach(this::enableForeignKey);
+    }
+
+    public void disableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        foreignKeys.forEach(this::disableForeignKey);
+    }
+
+    public void dropForeignKeys(Collection<ForeignKey> foreignKeys) {
+        foreignKeys.forEach(this::dropForeignKey);
+    }
+
+    public void createForeignKeys(Collection<ForeignKey> foreignKeys) {
+        foreignKeys.forEach(this::createForeignKey);
+    }
+
+    /**
+     * Enables the foreign keys without checking the existing rows, they are then not trusted by the database.
+     */
+    public void enableForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        enableForeignKeys(foreignKeys);
+    }
+
+    /**
+     * Creates the foreign keys without checking the existing rows.
+     */
+    public void createForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        createForeignKeys(foreignKeys);
+    }
+
+    public void deleteTables(Collection<TableName> tableNames) {
+        tableNames.forEach(this::deleteTable);
+    }
+
+    /**
+     * Removes all the rows of the tables, using the cheapest method the database allows.
+     * The foreign keys of the tables have been suppressed by the DatabasePreparationStrategy.
+     */
+    public void resetTables(Collection<TableName> tableNames) {
+        deleteTables(tableNames);
+    }
+
     public TransitionGenerator getTransitionGenerator(String objectType) {
         return INVALID_TRANSITION_GENERATOR;
     }
@@ -137,6 +278,31 @@ public abstract class Database implements AutoCloseable {
         throw new NotImplementedException();
     }
 
+    /**
+     * @return true if the database can capture and restore snapshots of a catalog
+     */
+    public boolean isSnapshotSupported() {
+        return false;
+    }
+
+    /**
+     * Captures the content of the catalog, replacing the previous snapshot.
+     */
+    public void createSnapshot(String catalog) {
+        throw new NotImplementedException();
+    }
+
+    /**
+     * Reverts the whole catalog to the content captured by createSnapshot(), not only the tables that have been populated.
+     */
+    public void restoreSnapshot(String catalog) {
+        throw new NotImplementedException();
+    }
+
+    public void dropSnapshot(String catalog) {
+        throw new NotImplementedException();
+    }
+
     public abstract void dropObject(ObjectIdentifier objectIdentifier);
 
     public String getDefinition(ObjectIdentifier objectIdentifier) {
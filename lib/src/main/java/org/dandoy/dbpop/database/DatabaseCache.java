@@ -2,11 +2,14 @@ package org.dandoy.dbpop.database;
 
 import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.upload.DataFileHeader;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import static org.dandoy.dbpop.utils.CollectionUtils.concat;
 
@@ -14,7 +17,11 @@ import static org.dandoy.dbpop.utils.CollectionUtils.concat;
 public class DatabaseCache extends Database {
     private final Database delegate;
     private final VirtualFkCache virtualFkCache;
-    private Map<TableName, Table> cache = null;
+    private final Map<String, CatalogCache> catalogCaches = new ConcurrentHashMap<>();
+    private final Object loadLock = new Object();
+    private volatile List<String> catalogs;
+    private volatile ForeignKeyGraph foreignKeyGraph;
+    private volatile int foreignKeyGraphVfkVersion;
 
     public DatabaseCache(Database delegate, VirtualFkCache virtualFkCache) {
         super(delegate.getDatabaseVersion());
@@ -42,6 +49,11 @@ public class DatabaseCache extends Database {
         return delegate.getConnection();
     }
 
+    @Override
+    public ConnectionBuilder getConnectionBuilder() {
+        return delegate.getConnectionBuilder();
+    }
+
     @Override
     public DatabaseIntrospector createDatabaseIntrospector() {
         return delegate.createDatabaseIntrospector();
@@ -71,68 +83,241 @@ public class DatabaseCache extends Database {
 
     @Override
     public Collection<TableName> getTableNames(String catalog, String schema) {
-        return getTables().stream()
-                .map(Table::getTableName)
-                .filter(it -> Objects.equals(schema, it.getSchema()) && Objects.equals(catalog, it.getCatalog()))
+        return getCatalogCache(catalog)
+                .tables.keySet().stream()
+                .filter(it -> Objects.equals(schema, it.getSchema()))
                 .toList();
     }
 
-    private Map<TableName, Table> getCache() {
-        if (cache == null) {
-            cache = new HashMap<>();
-            Collection<Table> tables = delegate.getTables();
-            for (Table table : tables) {
-                cache.put(table.getTableName(), table);
-            }
-        }
-        return cache;
-    }
-
     @Override
-    public synchronized Collection<Table> getTables() {
-        return getCache()
-                .values().stream()
-                .map(this::addVFKs)
-                .toList();
+    public Collection<Table> getTables() {
+        List<Table> ret = new ArrayList<>();
+        for (String catalog : getCachedCatalogs()) {
+            ret.addAll(getTables(catalog));
+        }
+        return ret;
     }
 
     @Override
     public Collection<Table> getTables(String catalog) {
-        return delegate.getTables(catalog);
+        return getVfkTables(getCatalogCache(catalog)).values();
     }
 
     @Override
     public Collection<Table> getTables(Set<TableName> datasetTableNames) {
-        Map<TableName, Table> cache = getCache();
         return datasetTableNames.stream()
-                .map(cache::get)
+                .map(this::getCachedTable)
                 .filter(Objects::nonNull)
                 .toList();
     }
 
     @Override
     public Table getTable(TableName tableName) {
-        return addVFKs(getCache().get(tableName));
+        return getVfkTables(getCatalogCache(tableName.getCatalog())).get(tableName);
     }
 
     @Override
     public List<ForeignKey> getRelatedForeignKeys(TableName tableName) {
-        return getTables().stream()
-                .flatMap(it -> it.getForeignKeys().stream())
-                .filter(it -> it.getPkTableName().equals(tableName))
-                .toList();
+        return getForeignKeyGraph().getRelatedForeignKeys(tableName);
+    }
+
+    /**
+     * Built from all the tables the first time it is requested, and again after the tables or the virtual foreign keys have changed.
+     */
+    @Override
+    public ForeignKeyGraph getForeignKeyGraph() {
+        ForeignKeyGraph ret = foreignKeyGraph;
+        int vfkVersion = virtualFkCache.getVersion();
+        if (ret == null || foreignKeyGraphVfkVersion != vfkVersion) {
+            synchronized (loadLock) {
+                ret = foreignKeyGraph;
+                if (ret == null || foreignKeyGraphVfkVersion != vfkVersion) {
+                    ret = ForeignKeyGraph.build(getTables());
+                    foreignKeyGraphVfkVersion = vfkVersion;
+                    foreignKeyGraph = ret;
+                }
+            }
+        }
+        return ret;
     }
 
     @Override
     public List<String> getSchemas(String catalog) {
-        return getCache()
-                .keySet().stream()
-                .filter(it -> Objects.equals(it.getCatalog(), catalog))
+        return getCatalogCache(catalog)
+                .tables.keySet().stream()
                 .map(TableName::getSchema)
                 .distinct()
                 .toList();
     }
 
+    /**
+     * Forgets everything, the tables are introspected again when they are requested.
+     */
+    public void invalidate() {
+        synchronized (loadLock) {
+            catalogs = null;
+            catalogCaches.clear();
+            foreignKeyGraph = null;
+        }
+    }
+
+    public void invalidateCatalog(String catalog) {
+        synchronized (loadLock) {
+            catalogCaches.remove(catalog);
+            foreignKeyGraph = null;
+        }
+    }
+
+    /**
+     * The table is introspected again the next time it is requested, the other tables of the catalog are kept.
+     */
+    public void invalidateTable(TableName tableName) {
+        CatalogCache catalogCache = catalogCaches.get(tableName.getCatalog());
+        if (catalogCache != null) {
+            synchronized (loadLock) {
+                catalogCache.staleTables.add(tableName);
+                catalogCache.tables.remove(tableName);
+                tablesChanged(catalogCache);
+            }
+        }
+    }
+
+    /**
+     * Compares the schema versions of the loaded catalogs with the database, and invalidates the tables that have been created, altered or dropped.
+     * The catalogs of a database that cannot report the schema versions are left untouched.
+     *
+     * @return the tables that have changed
+     */
+    public Set<TableName> invalidateChangedTables() {
+        return invalidateChangedTables(catalog -> {
+            synchronized (loadLock) {
+                return delegate.getTableSchemaVersions(catalog);
+            }
+        });
+    }
+
+    /**
+     * Same as invalidateChangedTables(), but the schema versions are read by another database of the same server,
+     * so that the check doesn't run on the connection of the delegate while it may be in a transaction.
+     */
+    public Set<TableName> invalidateChangedTables(Database database) {
+        return invalidateChangedTables(database::getTableSchemaVersions);
+    }
+
+    private Set<TableName> invalidateChangedTables(Function<String, Map<TableName, String>> schemaVersionsReader) {
+        Set<TableName> ret = new HashSet<>();
+        for (Map.Entry<String, CatalogCache> entry : catalogCaches.entrySet()) {
+            String catalog = entry.getKey();
+            CatalogCache catalogCache = entry.getValue();
+            if (catalogCache.schemaVersions == null) continue;
+            Map<TableName, String> schemaVersions = schemaVersionsReader.apply(catalog);
+            if (schemaVersions == null) continue;
+
+            Set<TableName> changedTables = new HashSet<>(catalogCache.schemaVersions.keySet());
+            changedTables.addAll(schemaVersions.keySet());
+            changedTables.removeIf(it -> Objects.equals(catalogCache.schemaVersions.get(it), schemaVersions.get(it)));
+            if (!changedTables.isEmpty()) {
+                synchronized (loadLock) {
+                    catalogCache.staleTables.addAll(changedTables);
+                    catalogCache.tables.keySet().removeAll(changedTables);
+                    catalogCache.schemaVersions = schemaVersions;
+                    tablesChanged(catalogCache);
+                }
+                ret.addAll(changedTables);
+            }
+        }
+        return ret;
+    }
+
+    private List<String> getCachedCatalogs() {
+        List<String> ret = catalogs;
+        if (ret == null) {
+            synchronized (loadLock) {
+                ret = catalogs;
+                if (ret == null) {
+                    ret = List.copyOf(delegate.getCatalogs());
+                    catalogs = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Nullable
+    private Table getCachedTable(TableName tableName) {
+        return getCatalogCache(tableName.getCatalog()).tables.get(tableName);
+    }
+
+    /**
+     * Introspects the catalog the first time it is requested, and the tables that have been invalidated since.
+     * The introspection shares the connection of the delegate, so it is serialized, the reads are not.
+     */
+    private CatalogCache getCatalogCache(String catalog) {
+        CatalogCache catalogCache = catalogCaches.get(catalog);
+        if (catalogCache == null || !catalogCache.staleTables.isEmpty()) {
+            synchronized (loadLock) {
+                catalogCache = catalogCaches.get(catalog);
+                if (catalogCache == null) {
+                    catalogCache = loadCatalog(catalog);
+                    catalogCaches.put(catalog, catalogCache);
+                    foreignKeyGraph = null;
+                } else {
+                    reloadStaleTables(catalogCache);
+                }
+            }
+        }
+        return catalogCache;
+    }
+
+    private CatalogCache loadCatalog(String catalog) {
+        CatalogCache catalogCache = new CatalogCache();
+        if (!getCachedCatalogs().contains(catalog)) return catalogCache;
+        // Read before the tables, a change made during the introspection is caught by the next comparison
+        catalogCache.schemaVersions = delegate.getTableSchemaVersions(catalog);
+        for (Table table : delegate.getTables(catalog)) {
+            catalogCache.tables.put(table.getTableName(), table);
+        }
+        return catalogCache;
+    }
+
+    private void reloadStaleTables(CatalogCache catalogCache) {
+        for (Iterator<TableName> iterator = catalogCache.staleTables.iterator(); iterator.hasNext(); ) {
+            TableName tableName = iterator.next();
+            Table table = delegate.getTable(tableName);
+            if (table != null) {
+                catalogCache.tables.put(tableName, table);
+            }
+            iterator.remove();
+        }
+        tablesChanged(catalogCache);
+    }
+
+    private void tablesChanged(CatalogCache catalogCache) {
+        catalogCache.vfkTables = null;
+        foreignKeyGraph = null;
+    }
+
+    /**
+     * The tables of the catalog with their virtual foreign keys, only rebuilt when the tables or the virtual foreign keys change.
+     */
+    private Map<TableName, Table> getVfkTables(CatalogCache catalogCache) {
+        Map<TableName, Table> ret = catalogCache.vfkTables;
+        int vfkVersion = virtualFkCache.getVersion();
+        if (ret == null || catalogCache.vfkVersion != vfkVersion) {
+            synchronized (loadLock) {
+                ret = catalogCache.vfkTables;
+                if (ret == null || catalogCache.vfkVersion != vfkVersion) {
+                    Map<TableName, Table> vfkTables = new HashMap<>();
+                    catalogCache.tables.forEach((tableName, table) -> vfkTables.put(tableName, addVFKs(table)));
+                    ret = Collections.unmodifiableMap(vfkTables);
+                    catalogCache.vfkVersion = vfkVersion;
+                    catalogCache.vfkTables = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
     @Override
     public void dropForeignKey(ForeignKey foreignKey) {
         ForeignKey virtualFk = virtualFkCache.getByPkTable(foreignKey.getPkTableName(), foreignKey.getName());
@@ -148,11 +333,78 @@ public class DatabaseCache extends Database {
         delegate.createForeignKey(foreignKey);
     }
 
+    @Override
+    public void dropForeignKeys(Collection<ForeignKey> foreignKeys) {
+        for (ForeignKey foreignKey : foreignKeys) {
+            if (virtualFkCache.getByPkTable(foreignKey.getPkTableName(), foreignKey.getName()) != null) {
+                throw new RuntimeException("Internal Error");
+            }
+        }
+        delegate.dropForeignKeys(foreignKeys);
+    }
+
+    @Override
+    public void createForeignKeys(Collection<ForeignKey> foreignKeys) {
+        delegate.createForeignKeys(foreignKeys);
+    }
+
+    @Override
+    public void enableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        delegate.enableForeignKeys(withoutVirtualForeignKeys(foreignKeys));
+    }
+
+    @Override
+    public void disableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        delegate.disableForeignKeys(withoutVirtualForeignKeys(foreignKeys));
+    }
+
+    @Override
+    public void enableForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        delegate.enableForeignKeysWithoutCheck(withoutVirtualForeignKeys(foreignKeys));
+    }
+
+    @Override
+    public void createForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        delegate.createForeignKeysWithoutCheck(foreignKeys);
+    }
+
+    private List<ForeignKey> withoutVirtualForeignKeys(Collection<ForeignKey> foreignKeys) {
+        List<ForeignKey> virtualForeignKeys = virtualFkCache.getForeignKeys();
+        return foreignKeys.stream()
+                .filter(it -> !virtualForeignKeys.contains(it))
+                .toList();
+    }
+
+    @Override
+    public void deleteTables(Collection<TableName> tableNames) {
+        delegate.deleteTables(tableNames);
+    }
+
+    @Override
+    public void resetTables(Collection<TableName> tableNames) {
+        delegate.resetTables(tableNames);
+    }
+
     @Override
     public DefaultDatabase.DatabaseInserter createInserter(Table table, List<DataFileHeader> dataFileHeaders) throws SQLException {
         return delegate.createInserter(table, dataFileHeaders);
     }
 
+    @Override
+    public BulkInserter createBulkInserter(Table table, List<DataFileHeader> dataFileHeaders) {
+        return delegate.createBulkInserter(table, dataFileHeaders);
+    }
+
+    @Override
+    public DatabasePreparationStrategy createDeferredIndexesPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return delegate.createDeferredIndexesPreparationStrategy(databasePreparationStrategy, tables);
+    }
+
+    @Override
+    public DatabasePreparationStrategy createMinimalLoggingPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return delegate.createMinimalLoggingPreparationStrategy(databasePreparationStrategy, tables);
+    }
+
     @Override
     public String quote(String delimiter, String... strings) {
         return delegate.quote(delimiter, strings);
@@ -209,6 +461,31 @@ public class DatabaseCache extends Database {
         }
     }
 
+    @Override
+    public Map<TableName, Long> getTableWriteCounters(Collection<TableName> tableNames) {
+        return delegate.getTableWriteCounters(tableNames);
+    }
+
+    @Override
+    public Map<TableName, Long> getEstimatedRowCounts(String catalog) {
+        return delegate.getEstimatedRowCounts(catalog);
+    }
+
+    @Override
+    public Map<TableName, String> getTableSchemaVersions(String catalog) {
+        return delegate.getTableSchemaVersions(catalog);
+    }
+
+    @Override
+    public List<List<Object>> getPrimaryKeyBoundaries(Table table, long estimatedRowCount, int chunkCount, List<Object> lowerPk) {
+        return delegate.getPrimaryKeyBoundaries(table, estimatedRowCount, chunkCount, lowerPk);
+    }
+
+    @Override
+    public KeySetLookup createKeySetLookup(Table table, List<String> columns) {
+        return delegate.createKeySetLookup(table, columns);
+    }
+
     @Override
     public void enableForeignKey(ForeignKey foreignKey) {
         if (!virtualFkCache.getForeignKeys().contains(foreignKey)) {
@@ -231,6 +508,7 @@ public class DatabaseCache extends Database {
     @Override
     public void createCatalog(String catalog) {
         delegate.createCatalog(catalog);
+        invalidate();
     }
 
     @Override
@@ -243,6 +521,26 @@ public class DatabaseCache extends Database {
         delegate.createShema(catalog, schema);
     }
 
+    @Override
+    public boolean isSnapshotSupported() {
+        return delegate.isSnapshotSupported();
+    }
+
+    @Override
+    public void createSnapshot(String catalog) {
+        delegate.createSnapshot(catalog);
+    }
+
+    @Override
+    public void restoreSnapshot(String catalog) {
+        delegate.restoreSnapshot(catalog);
+    }
+
+    @Override
+    public void dropSnapshot(String catalog) {
+        delegate.dropSnapshot(catalog);
+    }
+
     @Override
     public void dropObject(ObjectIdentifier objectIdentifier) {
         delegate.dropObject(objectIdentifier);
@@ -252,4 +550,15 @@ public class DatabaseCache extends Database {
     public long getEpochTime() {
         return delegate.getEpochTime();
     }
+
+    /**
+     * The tables of a catalog, keyed by name so that a table can be replaced without touching the others
+     */
+    private static class CatalogCache {
+        private final Map<TableName, Table> tables = new ConcurrentHashMap<>();
+        private final Set<TableName> staleTables = ConcurrentHashMap.newKeySet();
+        private volatile Map<TableName, String> schemaVersions;
+        private volatile Map<TableName, Table> vfkTables;
+        private volatile int vfkVersion;
+    }
 }
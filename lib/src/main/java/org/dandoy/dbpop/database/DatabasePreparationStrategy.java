@@ -3,6 +3,8 @@ package org.dandoy.dbpop.database;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -14,6 +16,15 @@ public abstract class DatabasePreparationStrategy {
 
     @NotNull
     protected static Set<ForeignKey> getForeignKeysToSuppress(Database database, Set<TableName> tableNames) {
+        ForeignKeyGraph foreignKeyGraph = database.getForeignKeyGraph();
+        if (foreignKeyGraph != null) {
+            Set<ForeignKey> ret = new HashSet<>();
+            for (TableName tableName : tableNames) {
+                ret.addAll(foreignKeyGraph.getForeignKeys(tableName));
+                ret.addAll(foreignKeyGraph.getRelatedForeignKeys(tableName));
+            }
+            return ret;
+        }
         return Stream.concat(
                 tableNames.stream()
                         .map(tableName -> database.getTable(tableName).getForeignKeys())
@@ -24,7 +35,22 @@ public abstract class DatabasePreparationStrategy {
         ).collect(Collectors.toSet());
     }
 
+    /**
+     * The foreign keys that are not enforced between beforeInserts() and afterInserts()
+     */
+    public Set<ForeignKey> getSuppressedForeignKeys() {
+        return Collections.emptySet();
+    }
+
     public abstract void beforeInserts();
 
     public abstract void afterInserts();
+
+    /**
+     * Called instead of afterInserts() when the populate is cancelled.
+     * The rows already inserted may not satisfy the foreign keys, they must be restored without checking the rows.
+     *
+     * @param rolledBack true if the work done since beforeInserts() has been rolled back
+     */
+    public abstract void afterCancel(boolean rolledBack);
 }
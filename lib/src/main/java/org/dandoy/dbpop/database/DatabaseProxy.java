@@ -8,6 +8,7 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Slf4j
@@ -41,6 +42,11 @@ public class DatabaseProxy extends Database {
         return delegate.getConnection();
     }
 
+    @Override
+    public ConnectionBuilder getConnectionBuilder() {
+        return delegate.getConnectionBuilder();
+    }
+
     @Override
     public DatabaseIntrospector createDatabaseIntrospector() {
         return delegate.createDatabaseIntrospector();
@@ -117,11 +123,51 @@ public class DatabaseProxy extends Database {
         delegate.createForeignKey(foreignKey);
     }
 
+    @Override
+    public void dropForeignKeys(Collection<ForeignKey> foreignKeys) {
+        for (ForeignKey foreignKey : foreignKeys) {
+            if (virtualFkCache.getByPkTable(foreignKey.getPkTableName(), foreignKey.getName()) != null) {
+                throw new RuntimeException("Internal Error");
+            }
+        }
+        delegate.dropForeignKeys(foreignKeys);
+    }
+
+    @Override
+    public void createForeignKeys(Collection<ForeignKey> foreignKeys) {
+        delegate.createForeignKeys(foreignKeys);
+    }
+
+    @Override
+    public void deleteTables(Collection<TableName> tableNames) {
+        delegate.deleteTables(tableNames);
+    }
+
+    @Override
+    public void resetTables(Collection<TableName> tableNames) {
+        delegate.resetTables(tableNames);
+    }
+
     @Override
     public DefaultDatabase.DatabaseInserter createInserter(Table table, List<DataFileHeader> dataFileHeaders) throws SQLException {
         return delegate.createInserter(table, dataFileHeaders);
     }
 
+    @Override
+    public BulkInserter createBulkInserter(Table table, List<DataFileHeader> dataFileHeaders) {
+        return delegate.createBulkInserter(table, dataFileHeaders);
+    }
+
+    @Override
+    public DatabasePreparationStrategy createDeferredIndexesPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return delegate.createDeferredIndexesPreparationStrategy(databasePreparationStrategy, tables);
+    }
+
+    @Override
+    public DatabasePreparationStrategy createMinimalLoggingPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return delegate.createMinimalLoggingPreparationStrategy(databasePreparationStrategy, tables);
+    }
+
     @Override
     public String quote(String delimiter, String... strings) {
         return delegate.quote(delimiter, strings);
@@ -178,6 +224,31 @@ public class DatabaseProxy extends Database {
         }
     }
 
+    @Override
+    public Map<TableName, Long> getTableWriteCounters(Collection<TableName> tableNames) {
+        return delegate.getTableWriteCounters(tableNames);
+    }
+
+    @Override
+    public Map<TableName, Long> getEstimatedRowCounts(String catalog) {
+        return delegate.getEstimatedRowCounts(catalog);
+    }
+
+    @Override
+    public Map<TableName, String> getTableSchemaVersions(String catalog) {
+        return delegate.getTableSchemaVersions(catalog);
+    }
+
+    @Override
+    public List<List<Object>> getPrimaryKeyBoundaries(Table table, long estimatedRowCount, int chunkCount, List<Object> lowerPk) {
+        return delegate.getPrimaryKeyBoundaries(table, estimatedRowCount, chunkCount, lowerPk);
+    }
+
+    @Override
+    public KeySetLookup createKeySetLookup(Table table, List<String> columns) {
+        return delegate.createKeySetLookup(table, columns);
+    }
+
     @Override
     public void enableForeignKey(ForeignKey foreignKey) {
         delegate.enableForeignKey(foreignKey);
@@ -188,6 +259,26 @@ public class DatabaseProxy extends Database {
         delegate.disableForeignKey(foreignKey);
     }
 
+    @Override
+    public void enableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        delegate.enableForeignKeys(foreignKeys);
+    }
+
+    @Override
+    public void disableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        delegate.disableForeignKeys(foreignKeys);
+    }
+
+    @Override
+    public void enableForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        delegate.enableForeignKeysWithoutCheck(foreignKeys);
+    }
+
+    @Override
+    public void createForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        delegate.createForeignKeysWithoutCheck(foreignKeys);
+    }
+
     @Override
     public TransitionGenerator getTransitionGenerator(String objectType) {
         return delegate.getTransitionGenerator(objectType);
@@ -208,6 +299,26 @@ public class DatabaseProxy extends Database {
         delegate.createShema(catalog, schema);
     }
 
+    @Override
+    public boolean isSnapshotSupported() {
+        return delegate.isSnapshotSupported();
+    }
+
+    @Override
+    public void createSnapshot(String catalog) {
+        delegate.createSnapshot(catalog);
+    }
+
+    @Override
+    public void restoreSnapshot(String catalog) {
+        delegate.restoreSnapshot(catalog);
+    }
+
+    @Override
+    public void dropSnapshot(String catalog) {
+        delegate.dropSnapshot(catalog);
+    }
+
     @Override
     public void dropObject(ObjectIdentifier objectIdentifier) {
         delegate.dropObject(objectIdentifier);
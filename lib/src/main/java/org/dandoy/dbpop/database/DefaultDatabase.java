@@ -2,14 +2,16 @@ package org.dandoy.dbpop.database;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVRecord;
 import org.dandoy.dbpop.upload.DataFileHeader;
+import org.dandoy.dbpop.upload.DataRecord;
 import org.dandoy.dbpop.utils.StopWatch;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import static org.dandoy.dbpop.database.ColumnType.INVALID;
@@ -19,7 +21,9 @@ import static org.dandoy.dbpop.database.ColumnType.INVALID;
 public abstract class DefaultDatabase extends Database {
     private static final ExpressionParser EXPRESSION_PARSER = new ExpressionParser();
     public static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final Base64.Decoder decoder = Base64.getDecoder();
+    private static final int SAMPLE_ROWS_PER_CHUNK = 100;
+    private static final int SQL_BATCH_SIZE = 500;
+    private static final int EXISTS_BATCH_SIZE = 100;
     protected final SafeConnection safeConnection;
     private final String identifierQuoteString;
 
@@ -53,6 +57,11 @@ public abstract class DefaultDatabase extends Database {
         return safeConnection.getConnection();
     }
 
+    @Override
+    public ConnectionBuilder getConnectionBuilder() {
+        return safeConnection.connectionBuilder;
+    }
+
     protected void executeSql(String sql, Object... args) {
         String s = String.format(sql, args);
         try {
@@ -64,6 +73,33 @@ public abstract class DefaultDatabase extends Database {
         }
     }
 
+    /**
+     * Sends the statements in JDBC batches.
+     */
+    protected void executeSqlBatch(List<String> sqls) {
+        try (Statement statement = getConnection().createStatement()) {
+            for (int start = 0; start < sqls.size(); start += SQL_BATCH_SIZE) {
+                List<String> batch = sqls.subList(start, Math.min(sqls.size(), start + SQL_BATCH_SIZE));
+                for (String sql : batch) {
+                    log.debug("SQL: {}", sql);
+                    statement.addBatch(sql);
+                }
+                try {
+                    statement.executeBatch();
+                } catch (BatchUpdateException e) {
+                    // Most drivers stop at the first failure
+                    int failed = e.getUpdateCounts() == null ? batch.size() : e.getUpdateCounts().length;
+                    if (failed < batch.size()) {
+                        throw new RuntimeException(String.format("Failed to execute \"%s\"", batch.get(failed)), e);
+                    }
+                    throw new RuntimeException(String.format("Failed to execute a batch of %d statements, starting with \"%s\"", batch.size(), batch.get(0)), e);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public List<String> getSchemas(String catalog) {
         try {
@@ -93,27 +129,43 @@ public abstract class DefaultDatabase extends Database {
         );
     }
 
+    @Override
+    public void dropForeignKeys(Collection<ForeignKey> foreignKeys) {
+        executeSqlBatch(
+                foreignKeys.stream()
+                        .map(foreignKey -> "ALTER TABLE %s DROP CONSTRAINT %s".formatted(quote(foreignKey.getFkTableName()), quote(foreignKey.getName())))
+                        .toList()
+        );
+    }
+
+    @Override
+    public void createForeignKeys(Collection<ForeignKey> foreignKeys) {
+        executeSqlBatch(foreignKeys.stream().map(this::getCreateForeignKeySql).toList());
+    }
+
+    protected String getCreateForeignKeySql(ForeignKey foreignKey) {
+        String constraintDef = foreignKey.getConstraintDef();
+        if (constraintDef == null) {
+            return "ALTER TABLE %s ADD CONSTRAINT %s FOREIGN KEY (%s) REFERENCES %s (%s)".formatted(
+                    quote(foreignKey.getFkTableName()),
+                    quote(foreignKey.getName()),
+                    quote(",", foreignKey.getFkColumns()),
+                    quote(foreignKey.getPkTableName()),
+                    quote(",", foreignKey.getPkColumns())
+            );
+        } else {
+            return "ALTER TABLE %s ADD CONSTRAINT %s %s".formatted(
+                    quote(foreignKey.getFkTableName()),
+                    foreignKey.getName(),
+                    constraintDef
+            );
+        }
+    }
+
     @Override
     public void createForeignKey(ForeignKey foreignKey) {
         try {
-            String constraintDef = foreignKey.getConstraintDef();
-            if (constraintDef == null) {
-                executeSql(
-                        "ALTER TABLE %s ADD CONSTRAINT %s FOREIGN KEY (%s) REFERENCES %s (%s)",
-                        quote(foreignKey.getFkTableName()),
-                        quote(foreignKey.getName()),
-                        quote(",", foreignKey.getFkColumns()),
-                        quote(foreignKey.getPkTableName()),
-                        quote(",", foreignKey.getPkColumns())
-                );
-            } else {
-                executeSql(
-                        "ALTER TABLE %s ADD CONSTRAINT %s %s",
-                        quote(foreignKey.getFkTableName()),
-                        foreignKey.getName(),
-                        constraintDef
-                );
-            }
+            executeSql("%s", getCreateForeignKeySql(foreignKey));
         } catch (Exception e) {
             throw new RuntimeException(String.format("Failed to create the foreign key %s.%s", foreignKey.getFkTableName().toQualifiedName(), foreignKey.getName()), e);
         }
@@ -210,6 +262,101 @@ public abstract class DefaultDatabase extends Database {
         StopWatch.record("DELETE", () -> executeSql("DELETE FROM %s", quote(tableName)));
     }
 
+    @Override
+    public void deleteTables(Collection<TableName> tableNames) {
+        StopWatch.record("DELETE", () -> executeSqlBatch(
+                tableNames.stream()
+                        .map(tableName -> "DELETE FROM %s".formatted(quote(tableName)))
+                        .toList()
+        ));
+    }
+
+    /**
+     * Skips the tables that are already empty, truncates the tables that can be truncated and deletes the rows of the others.
+     */
+    @Override
+    public void resetTables(Collection<TableName> tableNames) {
+        StopWatch.record("resetTables", () -> {
+            List<TableName> nonEmptyTables = getNonEmptyTables(tableNames);
+            Set<TableName> truncatedTables = getTruncatableTables(nonEmptyTables);
+            if (!truncatedTables.isEmpty() && !tryTruncateTables(truncatedTables)) {
+                truncatedTables = Collections.emptySet();
+            }
+            List<TableName> deletedTables = new ArrayList<>(nonEmptyTables);
+            deletedTables.removeAll(truncatedTables);
+            deleteTables(deletedTables);
+            log.debug("Reset {} tables: {} empty, {} truncated, {} deleted",
+                    tableNames.size(), tableNames.size() - nonEmptyTables.size(), truncatedTables.size(), deletedTables.size());
+        });
+    }
+
+    /**
+     * Probes the tables in batches of queries like <code>SELECT 0 WHERE EXISTS (SELECT 1 FROM t0) UNION ALL ...</code>
+     */
+    private List<TableName> getNonEmptyTables(Collection<TableName> tableNames) {
+        List<TableName> tables = new ArrayList<>(tableNames);
+        boolean[] nonEmpty = new boolean[tables.size()];
+        try (Statement statement = getConnection().createStatement()) {
+            for (int start = 0; start < tables.size(); start += EXISTS_BATCH_SIZE) {
+                int end = Math.min(tables.size(), start + EXISTS_BATCH_SIZE);
+                StringBuilder sql = new StringBuilder();
+                for (int i = start; i < end; i++) {
+                    if (i > start) sql.append("\nUNION ALL\n");
+                    sql.append("SELECT %d WHERE EXISTS (SELECT 1 FROM %s)".formatted(i, quote(tables.get(i))));
+                }
+                try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
+                    while (resultSet.next()) {
+                        nonEmpty[resultSet.getInt(1)] = true;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        List<TableName> ret = new ArrayList<>();
+        for (int i = 0; i < tables.size(); i++) {
+            if (nonEmpty[i]) ret.add(tables.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the tables that can be truncated, none by default
+     */
+    protected Set<TableName> getTruncatableTables(Collection<TableName> tableNames) {
+        return Collections.emptySet();
+    }
+
+    protected void truncateTables(Collection<TableName> tableNames) {
+        executeSqlBatch(
+                tableNames.stream()
+                        .map(tableName -> "TRUNCATE TABLE %s".formatted(quote(tableName)))
+                        .toList()
+        );
+    }
+
+    /**
+     * TRUNCATE can fail for reasons that are not worth checking upfront: permissions, replication, indexed views, ...
+     *
+     * @return false if the tables must be deleted instead
+     */
+    private boolean tryTruncateTables(Collection<TableName> tableNames) {
+        try {
+            Connection connection = getConnection();
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try {
+                StopWatch.record("TRUNCATE", () -> truncateTables(tableNames));
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("Cannot truncate the tables, deleting the rows instead: {}", e.getMessage());
+                if (savepoint != null) connection.rollback(savepoint);
+                return false;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public boolean isBinary(ResultSetMetaData metaData, int i) throws SQLException {
         int columnType = metaData.getColumnType(i + 1);
@@ -240,22 +387,101 @@ public abstract class DefaultDatabase extends Database {
         }
     }
 
+    /**
+     * Reads the primary keys of a sample of the table and picks the boundaries at regular intervals
+     */
+    @Override
+    public List<List<Object>> getPrimaryKeyBoundaries(Table table, long estimatedRowCount, int chunkCount, @Nullable List<Object> lowerPk) {
+        PrimaryKey primaryKey = table.getPrimaryKey();
+        if (primaryKey == null || chunkCount < 2 || estimatedRowCount <= 0) return null;
+        double percent = Math.min(100, 100.0 * chunkCount * SAMPLE_ROWS_PER_CHUNK / estimatedRowCount);
+        String tableSampleClause = getTableSampleClause(percent);
+        if (tableSampleClause == null) return null;
+
+        List<Object> values = new ArrayList<>();
+        String rangeCondition = primaryKey.toRangeCondition(this, table.getTableName(), lowerPk, null, values);
+        String sql = "SELECT %s FROM %s %s%s ORDER BY %s".formatted(
+                quote(",", primaryKey.getColumns()),
+                quote(table.getTableName()),
+                tableSampleClause,
+                rangeCondition == null ? "" : " WHERE " + rangeCondition,
+                quote(",", primaryKey.getColumns())
+        );
+        List<List<Object>> sample = new ArrayList<>();
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
+            for (int i = 0; i < values.size(); i++) {
+                preparedStatement.setObject(i + 1, values.get(i));
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                int columnCount = primaryKey.getColumns().size();
+                while (resultSet.next()) {
+                    List<Object> pk = new ArrayList<>(columnCount);
+                    for (int i = 0; i < columnCount; i++) {
+                        pk.add(resultSet.getObject(i + 1));
+                    }
+                    sample.add(pk);
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Cannot sample {}: {}", table.getTableName().toQualifiedName(), e.getMessage());
+            return null;
+        }
+        if (lowerPk != null) {
+            // Only the rows after lowerPk are sampled, the chunks keep the size they would have for the whole table
+            double expectedSampleSize = estimatedRowCount * percent / 100;
+            chunkCount = (int) Math.min(chunkCount, Math.round(chunkCount * sample.size() / expectedSampleSize));
+        }
+        if (chunkCount < 2 || sample.size() < chunkCount) return null;
+
+        List<List<Object>> ret = new ArrayList<>();
+        for (int i = 1; i < chunkCount; i++) {
+            List<Object> boundary = sample.get(i * sample.size() / chunkCount);
+            if (ret.isEmpty() || !ret.get(ret.size() - 1).equals(boundary)) {
+                ret.add(boundary);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param percent the percentage of the table to sample
+     * @return the TABLESAMPLE clause, null if the database cannot sample a table
+     */
+    protected String getTableSampleClause(double percent) {
+        return null;
+    }
+
     public String getTableDefinition(TableName tableName) {
         throw new RuntimeException("Not Implemented");
     }
 
     public class DatabaseInserter implements AutoCloseable {
-        private static final int BATCH_SIZE = 10000;
         private final List<DataFileHeader> dataFileHeaders;
         private final PreparedStatement preparedStatement;
+        private final BatchSizeStrategy batchSizeStrategy;
         private int batched = 0;
+        private long batchedBytes = 0;
         private final List<ColumnInserter> columnInserters = new ArrayList<>();
+        private IntConsumer batchListener;
 
         protected DatabaseInserter(Table table, List<DataFileHeader> dataFileHeaders, String sql) throws SQLException {
             this.dataFileHeaders = dataFileHeaders;
             preparedStatement = getConnection().prepareStatement(sql);
 
             addColumnInserters(table, dataFileHeaders);
+            batchSizeStrategy = createBatchSizeStrategy(
+                    dataFileHeaders.stream()
+                            .filter(DataFileHeader::isLoadable)
+                            .map(dataFileHeader -> table.getColumn(dataFileHeader.getColumnName()))
+                            .toList()
+            );
+        }
+
+        /**
+         * @param columns the columns that are loaded
+         */
+        protected BatchSizeStrategy createBatchSizeStrategy(List<Column> columns) {
+            return new BatchSizeStrategy(columns.stream().mapToInt(BatchSizeStrategy::getColumnWidth).sum());
         }
 
         private void addColumnInserters(Table table, List<DataFileHeader> dataFileHeaders) {
@@ -283,21 +509,45 @@ public abstract class DefaultDatabase extends Database {
             columnInserters.add(columnInserter);
         }
 
+        /**
+         * @param batchListener receives the number of rows of each batch sent to the database
+         */
+        public DatabaseInserter setBatchListener(@Nullable IntConsumer batchListener) {
+            this.batchListener = batchListener;
+            return this;
+        }
+
         @Override
         public void close() throws SQLException {
-            flush();
-            preparedStatement.close();
+            try {
+                flush();
+            } finally {
+                preparedStatement.close();
+            }
         }
 
         private void flush() throws SQLException {
+            if (batched == 0) return;
+            long t0 = System.nanoTime();
             preparedStatement.executeBatch();
+            batchSizeStrategy.batchExecuted(batched, batchedBytes, System.nanoTime() - t0);
+            int rowCount = batched;
             batched = 0;
+            batchedBytes = 0;
+            if (batchListener != null) {
+                batchListener.accept(rowCount);
+            }
         }
 
-        public void insert(CSVRecord csvRecord) throws SQLException {
-            columnInserters.forEach(columnInserter -> columnInserter.consume(csvRecord));
+        public void insert(DataRecord dataRecord) throws SQLException {
+            for (ColumnInserter columnInserter : columnInserters) {
+                columnInserter.consume(dataRecord);
+            }
+            for (int pos = 0; pos < dataRecord.size(); pos++) {
+                batchedBytes += dataRecord.getLength(pos);
+            }
             preparedStatement.addBatch();
-            if (batched++ > DatabaseInserter.BATCH_SIZE) {
+            if (++batched >= batchSizeStrategy.getBatchSize()) {
                 flush();
             }
         }
@@ -313,20 +563,19 @@ public abstract class DefaultDatabase extends Database {
                 this.columnType = columnType;
             }
 
-            final void consume(CSVRecord csvRecord) {
-                String s = csvRecord.get(csvPos);
+            final void consume(DataRecord dataRecord) {
                 try {
-                    consume(s);
+                    consumeValue(dataRecord);
                 } catch (SQLException e) {
                     throw new RuntimeException(String.format(
                             "Failed to process column %s with value %s",
                             dataFileHeaders.get(csvPos).getColumnName(),
-                            s
+                            dataRecord.get(csvPos)
                     ), e);
                 }
             }
 
-            protected abstract void consume(String s) throws SQLException;
+            protected abstract void consumeValue(DataRecord dataRecord) throws SQLException;
         }
 
         class RegularColumnInserter extends ColumnInserter {
@@ -335,12 +584,12 @@ public abstract class DefaultDatabase extends Database {
             }
 
             @Override
-            protected void consume(String s) throws SQLException {
-                if (s != null && s.startsWith("{{") && s.endsWith("}}")) {
-                    Object value = EXPRESSION_PARSER.evaluate(s);
+            protected void consumeValue(DataRecord dataRecord) throws SQLException {
+                if (dataRecord.isExpression(csvPos)) {
+                    Object value = EXPRESSION_PARSER.evaluate(dataRecord.get(csvPos));
                     columnType.bind(preparedStatement, jdbcPos, value);
                 } else {
-                    columnType.bind(preparedStatement, jdbcPos, s);
+                    columnType.bind(preparedStatement, jdbcPos, dataRecord, csvPos);
                 }
             }
         }
@@ -352,14 +601,8 @@ public abstract class DefaultDatabase extends Database {
             }
 
             @Override
-            protected void consume(String s) throws SQLException {
-                byte[] bytes;
-                if (s != null) {
-                    bytes = decoder.decode(s);
-                } else {
-                    bytes = null;
-                }
-                columnType.bind(preparedStatement, jdbcPos, bytes);
+            protected void consumeValue(DataRecord dataRecord) throws SQLException {
+                columnType.bind(preparedStatement, jdbcPos, dataRecord.getBytes(csvPos));
             }
         }
     }
@@ -0,0 +1,76 @@
+package org.dandoy.dbpop.database;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.utils.ElapsedStopWatch;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes the secondary indexes of the tables once they have been emptied and rebuilds them after the inserts,
+ * so that the inserts do not maintain them row by row.
+ * It wraps the strategy that takes care of the foreign keys and of the deletes.
+ */
+@Slf4j
+public abstract class DeferredIndexesPreparationStrategy extends DatabasePreparationStrategy {
+    private final DatabasePreparationStrategy delegate;
+    protected final List<Index> indexes;
+
+    protected DeferredIndexesPreparationStrategy(DatabasePreparationStrategy delegate, Collection<Table> tables) {
+        this.delegate = delegate;
+        this.indexes = tables.stream()
+                .flatMap(table -> table.getIndexes().stream())
+                .filter(this::isDeferrable)
+                .toList();
+    }
+
+    /**
+     * @return true if the index can be removed during the load
+     */
+    protected abstract boolean isDeferrable(Index index);
+
+    protected abstract void removeIndexes();
+
+    protected abstract void rebuildIndexes();
+
+    @Override
+    public Set<ForeignKey> getSuppressedForeignKeys() {
+        return delegate.getSuppressedForeignKeys();
+    }
+
+    @Override
+    public void beforeInserts() {
+        delegate.beforeInserts();
+        if (indexes.isEmpty()) return;
+        ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+        removeIndexes();
+        log.debug("Removed {} indexes in {}", indexes.size(), stopWatch);
+    }
+
+    @Override
+    public void afterInserts() {
+        try {
+            if (indexes.isEmpty()) return;
+            ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+            rebuildIndexes();
+            log.debug("Rebuilt {} indexes in {}", indexes.size(), stopWatch);
+        } finally {
+            delegate.afterInserts();
+        }
+    }
+
+    @Override
+    public void afterCancel(boolean rolledBack) {
+        if (rolledBack) {
+            // The rollback has restored the indexes
+            delegate.afterCancel(true);
+            return;
+        }
+        try {
+            if (!indexes.isEmpty()) rebuildIndexes();
+        } finally {
+            delegate.afterCancel(false);
+        }
+    }
+}
@@ -21,19 +21,32 @@ public class DisableForeignKeysPreparationStrategy extends DatabasePreparationSt
         this.foreignKeys = getForeignKeysToSuppress(database, tableNames);
     }
 
+    @Override
+    public Set<ForeignKey> getSuppressedForeignKeys() {
+        return foreignKeys;
+    }
+
     @Override
     public void beforeInserts() {
         ElapsedStopWatch stopWatch = new ElapsedStopWatch();
-        foreignKeys.forEach(database::disableForeignKey);
+        database.disableForeignKeys(foreignKeys);
         log.debug("Disabled {} foreign keys in {}", foreignKeys.size(), stopWatch);
-        tablesToDelete.forEach(database::deleteTable);
-        log.debug("Deleted {} tables in {}", tablesToDelete.size(), stopWatch);
+        database.resetTables(tablesToDelete);
+        log.debug("Reset {} tables in {}", tablesToDelete.size(), stopWatch);
     }
 
     @Override
     public void afterInserts() {
         ElapsedStopWatch stopWatch = new ElapsedStopWatch();
-        foreignKeys.forEach(database::enableForeignKey);
+        database.enableForeignKeys(foreignKeys);
         log.debug("Enabled {} foreign keys in {}", foreignKeys.size(), stopWatch);
     }
+
+    @Override
+    public void afterCancel(boolean rolledBack) {
+        if (rolledBack) return; // The rollback has enabled the foreign keys
+        ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+        database.enableForeignKeysWithoutCheck(foreignKeys);
+        log.debug("Enabled {} foreign keys without check in {}", foreignKeys.size(), stopWatch);
+    }
 }
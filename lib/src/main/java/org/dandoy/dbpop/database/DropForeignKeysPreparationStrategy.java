@@ -1,8 +1,12 @@
 package org.dandoy.dbpop.database;
 
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.utils.ElapsedStopWatch;
+
 import java.util.Collection;
 import java.util.Set;
 
+@Slf4j
 public class DropForeignKeysPreparationStrategy extends DatabasePreparationStrategy {
     private final Database database;
     private final Collection<TableName> tablesToDelete;
@@ -14,14 +18,32 @@ public class DropForeignKeysPreparationStrategy extends DatabasePreparationStrat
         this.foreignKeys = getForeignKeysToSuppress(database, tableNames);
     }
 
+    @Override
+    public Set<ForeignKey> getSuppressedForeignKeys() {
+        return foreignKeys;
+    }
+
     @Override
     public void beforeInserts() {
-        foreignKeys.forEach(database::dropForeignKey);
-        tablesToDelete.forEach(database::deleteTable);
+        ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+        database.dropForeignKeys(foreignKeys);
+        log.debug("Dropped {} foreign keys in {}", foreignKeys.size(), stopWatch);
+        database.resetTables(tablesToDelete);
+        log.debug("Reset {} tables in {}", tablesToDelete.size(), stopWatch);
     }
 
     @Override
     public void afterInserts() {
-        foreignKeys.forEach(database::createForeignKey);
+        ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+        database.createForeignKeys(foreignKeys);
+        log.debug("Created {} foreign keys in {}", foreignKeys.size(), stopWatch);
+    }
+
+    @Override
+    public void afterCancel(boolean rolledBack) {
+        if (rolledBack) return; // The rollback has restored the foreign keys
+        ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+        database.createForeignKeysWithoutCheck(foreignKeys);
+        log.debug("Created {} foreign keys without check in {}", foreignKeys.size(), stopWatch);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package org.dandoy.dbpop.database;
+
+import java.util.*;
+
+/**
+ * The foreign keys of a set of tables, indexed in both directions.
+ * A ForeignKeyGraph is immutable, it is rebuilt when the tables or the virtual foreign keys change.
+ */
+public class ForeignKeyGraph {
+    private final Map<TableName, List<ForeignKey>> foreignKeysByFkTable;
+    private final Map<TableName, List<ForeignKey>> foreignKeysByPkTable;
+
+    private ForeignKeyGraph(Map<TableName, List<ForeignKey>> foreignKeysByFkTable, Map<TableName, List<ForeignKey>> foreignKeysByPkTable) {
+        this.foreignKeysByFkTable = foreignKeysByFkTable;
+        this.foreignKeysByPkTable = foreignKeysByPkTable;
+    }
+
+    /**
+     * @param tables the tables, including their virtual foreign keys
+     */
+    public static ForeignKeyGraph build(Collection<Table> tables) {
+        Map<TableName, List<ForeignKey>> byFkTable = new HashMap<>();
+        Map<TableName, List<ForeignKey>> byPkTable = new HashMap<>();
+        for (Table table : tables) {
+            for (ForeignKey foreignKey : table.getForeignKeys()) {
+                byFkTable.computeIfAbsent(foreignKey.getFkTableName(), it -> new ArrayList<>()).add(foreignKey);
+                byPkTable.computeIfAbsent(foreignKey.getPkTableName(), it -> new ArrayList<>()).add(foreignKey);
+            }
+        }
+        return new ForeignKeyGraph(freeze(byFkTable), freeze(byPkTable));
+    }
+
+    private static Map<TableName, List<ForeignKey>> freeze(Map<TableName, List<ForeignKey>> map) {
+        Map<TableName, List<ForeignKey>> ret = new HashMap<>();
+        map.forEach((tableName, foreignKeys) -> ret.put(tableName, List.copyOf(foreignKeys)));
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * If we are on invoices, returns invoices_customers_fk
+     */
+    public List<ForeignKey> getForeignKeys(TableName fkTableName) {
+        return foreignKeysByFkTable.getOrDefault(fkTableName, Collections.emptyList());
+    }
+
+    /**
+     * If we are on customers, returns invoices_customers_fk
+     */
+    public List<ForeignKey> getRelatedForeignKeys(TableName pkTableName) {
+        return foreignKeysByPkTable.getOrDefault(pkTableName, Collections.emptyList());
+    }
+}
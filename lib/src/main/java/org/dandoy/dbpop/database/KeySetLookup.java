@@ -0,0 +1,23 @@
+package org.dandoy.dbpop.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Selects the rows whose key columns match a set of keys that is bound in one shot, instead of one parameter per key value.
+ */
+public interface KeySetLookup {
+    /**
+     * @return the condition on the key columns, it has getParameterCount() parameters
+     */
+    String getCondition();
+
+    int getParameterCount();
+
+    /**
+     * Binds the keys to the parameters of the condition, starting at jdbcPos
+     */
+    void bind(PreparedStatement preparedStatement, int jdbcPos, Collection<List<Object>> keys) throws SQLException;
+}
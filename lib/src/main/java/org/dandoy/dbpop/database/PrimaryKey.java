@@ -1,7 +1,9 @@
 package org.dandoy.dbpop.database;
 
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -46,4 +48,52 @@ public class PrimaryKey {
                         collect(Collectors.joining(", "))
         );
     }
+
+    /**
+     * Builds the condition lowerPk &lt; pk &lt;= upperPk, composite keys are compared column by column:
+     * (a, b) &gt; (1, 2) is written (a &gt; 1) OR (a = 1 AND b &gt; 2)
+     *
+     * @param lowerPk the exclusive lower bound, null if the range has no lower bound
+     * @param upperPk the inclusive upper bound, null if the range has no upper bound
+     * @param values  receives the values to bind
+     * @return the condition, null if the range has no bounds
+     */
+    @Nullable
+    public String toRangeCondition(Database database, TableName tableName, @Nullable List<Object> lowerPk, @Nullable List<Object> upperPk, List<Object> values) {
+        List<String> pkColumns = columns.stream()
+                .map(column -> database.quote(tableName) + "." + database.quote(column))
+                .toList();
+        List<String> conditions = new ArrayList<>();
+        if (lowerPk != null) {
+            conditions.add(getComparison(pkColumns, lowerPk, ">", false, values));
+        }
+        if (upperPk != null) {
+            conditions.add(getComparison(pkColumns, upperPk, "<", true, values));
+        }
+        if (conditions.isEmpty()) return null;
+        return String.join(" AND ", conditions);
+    }
+
+    private static String getComparison(List<String> pkColumns, List<Object> pk, String operator, boolean orEqual, List<Object> values) {
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < pkColumns.size(); i++) {
+            List<String> term = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                term.add(pkColumns.get(j) + " = ?");
+                values.add(pk.get(j));
+            }
+            term.add(pkColumns.get(i) + " " + operator + " ?");
+            values.add(pk.get(i));
+            terms.add("(" + String.join(" AND ", term) + ")");
+        }
+        if (orEqual) {
+            List<String> term = new ArrayList<>();
+            for (int j = 0; j < pkColumns.size(); j++) {
+                term.add(pkColumns.get(j) + " = ?");
+                values.add(pk.get(j));
+            }
+            terms.add("(" + String.join(" AND ", term) + ")");
+        }
+        return "(" + String.join(" OR ", terms) + ")";
+    }
 }
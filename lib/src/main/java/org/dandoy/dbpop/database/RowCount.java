@@ -1,3 +1,11 @@
 package org.dandoy.dbpop.database;
 
-public record RowCount(int rows, boolean plus) {}
+public record RowCount(int rows, boolean plus) {
+    /**
+     * Caps an estimated number of rows at ROW_COUNT_MAX, like Database.getRowCount() does
+     */
+    public static RowCount ofEstimate(long rowCount) {
+        if (rowCount > Database.ROW_COUNT_MAX) return new RowCount(Database.ROW_COUNT_MAX, true);
+        return new RowCount((int) Math.max(0, rowCount), false);
+    }
+}
@@ -1,6 +1,7 @@
 package org.dandoy.dbpop.database;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
 import lombok.SneakyThrows;
 
 import java.io.File;
@@ -11,6 +12,11 @@ import java.util.List;
 public class VirtualFkCache {
     private final File file;
     private final List<ForeignKey> foreignKeys;
+    /**
+     * Incremented when a virtual foreign key is added or removed
+     */
+    @Getter
+    private volatile int version;
 
     private VirtualFkCache(File file, List<ForeignKey> foreignKeys) {
         this.file = file;
@@ -50,6 +56,7 @@ public class VirtualFkCache {
     public void addFK(ForeignKey foreignKey) {
         removeFK(foreignKey.getPkTableName(), foreignKey.getName());
         foreignKeys.add(foreignKey);
+        version++;
         save();
     }
 
@@ -88,6 +95,7 @@ public class VirtualFkCache {
 
     public void removeFK(ForeignKey foreignKey) {
         removeFK(foreignKey.getPkTableName(), foreignKey.getName());
+        version++;
         save();
     }
 
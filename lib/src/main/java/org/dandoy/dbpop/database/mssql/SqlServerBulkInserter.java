@@ -0,0 +1,203 @@
+package org.dandoy.dbpop.database.mssql;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.database.*;
+import org.dandoy.dbpop.upload.DataFileHeader;
+import org.dandoy.dbpop.upload.DataReader;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Loads a table with SQLServerBulkCopy.
+ * Explicit identity values are kept and the identity is reseeded after the load, like SqlServerDatabaseInserter does.
+ */
+@Slf4j
+class SqlServerBulkInserter implements BulkInserter {
+    private static final ExpressionParser EXPRESSION_PARSER = new ExpressionParser();
+    private final SqlServerDatabase database;
+    private final TableName tableName;
+    private final List<BulkColumn> bulkColumns;
+    private boolean tableLock;
+
+    private SqlServerBulkInserter(SqlServerDatabase database, TableName tableName, List<BulkColumn> bulkColumns) {
+        this.database = database;
+        this.tableName = tableName;
+        this.bulkColumns = bulkColumns;
+    }
+
+    /**
+     * @return null if one of the columns cannot be bulk loaded
+     */
+    @Nullable
+    static SqlServerBulkInserter createBulkInserter(SqlServerDatabase database, Table table, List<DataFileHeader> dataFileHeaders) {
+        List<BulkColumn> bulkColumns = new ArrayList<>();
+        for (int csvPos = 0; csvPos < dataFileHeaders.size(); csvPos++) {
+            DataFileHeader dataFileHeader = dataFileHeaders.get(csvPos);
+            Column column = table.getColumn(dataFileHeader.getColumnName());
+            if (column == null || column.getColumnType() == ColumnType.INVALID) {
+                dataFileHeader.setLoadable(false);  // Same as DefaultDatabase.createInserter()
+                continue;
+            }
+            BulkColumn bulkColumn = column instanceof SqlServerColumn sqlServerColumn ? toBulkColumn(csvPos, sqlServerColumn) : null;
+            if (bulkColumn == null) {
+                log.debug("Cannot bulk load {}.{}", table.getTableName().toQualifiedName(), column.getName());
+                return null;
+            }
+            bulkColumns.add(bulkColumn);
+        }
+        return new SqlServerBulkInserter(database, table.getTableName(), bulkColumns);
+    }
+
+    @Nullable
+    private static BulkColumn toBulkColumn(int csvPos, SqlServerColumn column) {
+        if (column.getTypeSchema() != null) return null; // User-defined type
+        String name = column.getName();
+        int precision = column.getTypePrecision() == null ? 0 : column.getTypePrecision();
+        int scale = column.getTypeScale() == null ? 0 : column.getTypeScale();
+        int maxLength = column.getTypeMaxLength() == null || column.getTypeMaxLength() == -1 ? Integer.MAX_VALUE : column.getTypeMaxLength();
+        boolean autoIncrement = column.isAutoIncrement();
+        return switch (column.getTypeName()) {
+            case "int" -> new BulkColumn(csvPos, name, Types.INTEGER, precision, 0, autoIncrement, Integer::valueOf);
+            case "smallint" -> new BulkColumn(csvPos, name, Types.SMALLINT, precision, 0, autoIncrement, Short::valueOf);
+            case "tinyint" -> new BulkColumn(csvPos, name, Types.TINYINT, precision, 0, autoIncrement, Short::valueOf);
+            case "bigint" -> new BulkColumn(csvPos, name, Types.BIGINT, precision, 0, autoIncrement, Long::valueOf);
+            case "bit" -> new BulkColumn(csvPos, name, Types.BIT, 1, 0, false, s -> "1".equals(s) || "true".equalsIgnoreCase(s));
+            case "decimal", "numeric", "money", "smallmoney" -> new BulkColumn(csvPos, name, Types.DECIMAL, precision, scale, autoIncrement, BigDecimal::new);
+            case "float" -> new BulkColumn(csvPos, name, Types.DOUBLE, precision, 0, false, Double::valueOf);
+            case "real" -> new BulkColumn(csvPos, name, Types.REAL, precision, 0, false, Float::valueOf);
+            case "date" -> new BulkColumn(csvPos, name, Types.DATE, precision, 0, false, ColumnType.DATE::parse);
+            case "datetime", "datetime2", "smalldatetime" -> new BulkColumn(csvPos, name, Types.TIMESTAMP, precision, scale, false, ColumnType.TIMESTAMP::parse);
+            case "char", "varchar", "text" -> new BulkColumn(csvPos, name, Types.VARCHAR, maxLength, 0, false, s -> s);
+            case "nchar", "nvarchar", "ntext", "sysname" -> new BulkColumn(csvPos, name, Types.NVARCHAR, maxLength == Integer.MAX_VALUE ? maxLength : maxLength / 2, 0, false, s -> s);
+            case "binary", "varbinary", "image" -> new BulkColumn(csvPos, name, Types.VARBINARY, maxLength, 0, false, ColumnType.BINARY::parse);
+            default -> null;
+        };
+    }
+
+    @Override
+    public void setTableLock(boolean tableLock) {
+        this.tableLock = tableLock;
+    }
+
+    @Override
+    public int insert(DataReader dataReader) throws SQLException {
+        CsvBulkData csvBulkData = new CsvBulkData(dataReader);
+
+        SQLServerBulkCopyOptions bulkCopyOptions = new SQLServerBulkCopyOptions();
+        bulkCopyOptions.setKeepIdentity(true);
+        bulkCopyOptions.setKeepNulls(true);
+        bulkCopyOptions.setFireTriggers(true);  // INSERT statements would fire them
+        bulkCopyOptions.setBulkCopyTimeout(0);
+        bulkCopyOptions.setTableLock(tableLock);
+
+        SQLServerConnection connection = database.getConnection().unwrap(SQLServerConnection.class);
+        try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection)) {
+            bulkCopy.setBulkCopyOptions(bulkCopyOptions);
+            bulkCopy.setDestinationTableName(database.quote(tableName));
+            for (int i = 0; i < bulkColumns.size(); i++) {
+                bulkCopy.addColumnMapping(i + 1, bulkColumns.get(i).name());
+            }
+            bulkCopy.writeToServer(csvBulkData);
+        }
+
+        if (csvBulkData.identityMax != null) {
+            database.setNextIdentityValue(tableName, csvBulkData.identityMax);
+        }
+        return csvBulkData.rowCount;
+    }
+
+    private record BulkColumn(int csvPos, String name, int jdbcType, int precision, int scale, boolean identity, Function<String, Object> converter) {
+        Object toObject(String s) {
+            if (s == null) return null;
+            Object value = EXPRESSION_PARSER.evaluate(s);
+            if (value instanceof Date date) {
+                return jdbcType == Types.DATE ? new java.sql.Date(date.getTime()) : new Timestamp(date.getTime());
+            }
+            return converter.apply(s);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class CsvBulkData implements ISQLServerBulkData {
+        private final DataReader dataReader;
+        private final Set<Integer> columnOrdinals = new LinkedHashSet<>();
+        private Object[] rowData;
+        private int rowCount;
+        private Long identityMax;
+
+        CsvBulkData(DataReader dataReader) {
+            this.dataReader = dataReader;
+            for (int i = 1; i <= bulkColumns.size(); i++) {
+                columnOrdinals.add(i);
+            }
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            return columnOrdinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return bulkColumns.get(column - 1).name();
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return bulkColumns.get(column - 1).jdbcType();
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return bulkColumns.get(column - 1).precision();
+        }
+
+        @Override
+        public int getScale(int column) {
+            return bulkColumns.get(column - 1).scale();
+        }
+
+        @Override
+        public Object[] getRowData() {
+            return rowData;
+        }
+
+        @Override
+        public boolean next() {
+            try {
+                if (!dataReader.next()) return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try {
+                Object[] values = new Object[bulkColumns.size()];
+                for (int i = 0; i < values.length; i++) {
+                    BulkColumn bulkColumn = bulkColumns.get(i);
+                    Object value = bulkColumn.toObject(dataReader.get(bulkColumn.csvPos()));
+                    if (bulkColumn.identity() && value instanceof Number number) {
+                        long l = number.longValue();
+                        if (identityMax == null || l > identityMax) identityMax = l;
+                    }
+                    values[i] = value;
+                }
+                rowData = values;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to process row " + rowCount, e);
+            }
+            rowCount++;
+            return true;
+        }
+    }
+}
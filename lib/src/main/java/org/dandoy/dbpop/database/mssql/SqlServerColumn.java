@@ -53,7 +53,7 @@ public class SqlServerColumn extends Column {
         );
     }
 
-    private String getTypeDDL(Database database) {
+    String getTypeDDL(Database database) {
         if (typeSchema != null) {
             return database.quote(typeSchema) + "." + database.quote(typeName);
         } else {
@@ -1,5 +1,8 @@
 package org.dandoy.dbpop.database.mssql;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -9,6 +12,7 @@ import org.dandoy.dbpop.database.*;
 import org.dandoy.dbpop.database.utils.ForeignKeyCollector;
 import org.dandoy.dbpop.database.utils.TableCollector;
 import org.dandoy.dbpop.upload.DataFileHeader;
+import org.dandoy.dbpop.upload.DataRecord;
 import org.dandoy.dbpop.utils.StopWatch;
 
 import java.sql.*;
@@ -20,7 +24,14 @@ import java.util.stream.Collectors;
 public class SqlServerDatabase extends DefaultDatabase {
     private static final Set<String> SYS_SCHEMAS = new HashSet<>(Arrays.asList("guest", "INFORMATION_SCHEMA", "sys", "db_owner", "db_accessadmin", "db_securityadmin", "db_ddladmin", "db_backupoperator", "db_datareader", "db_datawriter", "db_denydatareader", "db_denydatawriter"));
     private static final boolean QUOTE_WITH_BRACKETS = true;
+    /**
+     * The types of the key columns that can be shipped as JSON in a KeySetLookup
+     */
+    private static final Set<String> KEY_SET_TYPES = Set.of("int", "bigint", "smallint", "tinyint", "bit", "decimal", "numeric",
+            "varchar", "nvarchar", "char", "nchar", "uniqueidentifier");
+    private static final ObjectMapper KEY_SET_MAPPER = new ObjectMapper().enable(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN);
     private final Transitions transitions = new Transitions(this);
+    private final Map<String, Boolean> openJsonSupported = new HashMap<>();
 
     public SqlServerDatabase(ConnectionBuilder connectionBuilder) {
         super(connectionBuilder, SqlServerDatabaseVersion.BASE_VERSION);
@@ -796,7 +807,7 @@ public class SqlServerDatabase extends DefaultDatabase {
         );
     }
 
-    private void setNextIdentityValue(TableName tableName, long value) {
+    void setNextIdentityValue(TableName tableName, long value) {
         executeSql(
                 "DBCC CHECKIDENT ('%s', RESEED, %d);\n",
                 quote(tableName),
@@ -809,6 +820,64 @@ public class SqlServerDatabase extends DefaultDatabase {
         return new SqlServerDatabaseInserter(table, dataFileHeaders, sql);
     }
 
+    @Override
+    public BulkInserter createBulkInserter(Table table, List<DataFileHeader> dataFileHeaders) {
+        return SqlServerBulkInserter.createBulkInserter(this, table, dataFileHeaders);
+    }
+
+    @Override
+    public DatabasePreparationStrategy createDeferredIndexesPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return new SqlServerDeferredIndexesPreparationStrategy(this, databasePreparationStrategy, tables);
+    }
+
+    @Override
+    public DatabasePreparationStrategy createMinimalLoggingPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return new SqlServerMinimalLoggingPreparationStrategy(this, databasePreparationStrategy, tables);
+    }
+
+    String getRecoveryModel(String catalog) {
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("SELECT recovery_model_desc FROM sys.databases WHERE name = ?")) {
+            preparedStatement.setString(1, catalog);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (!resultSet.next()) throw new RuntimeException("Database not found: " + catalog);
+                return resultSet.getString(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * ALTER DATABASE is not allowed in a transaction, it runs on its own connection.
+     */
+    void setRecoveryModel(String catalog, String recoveryModel) {
+        String sql = "ALTER DATABASE %s SET RECOVERY %s".formatted(quote(catalog), recoveryModel);
+        try (Connection connection = getConnectionBuilder().createConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                log.debug("SQL: {}", sql);
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Failed to execute \"%s\"", sql), e);
+        }
+    }
+
+    void disableIndexes(Collection<Index> indexes) {
+        StopWatch.record("disableIndexes", () -> executeSqlBatch(
+                indexes.stream()
+                        .map(index -> "ALTER INDEX %s ON %s DISABLE".formatted(quote(index.getName()), quote(index.getTableName())))
+                        .toList()
+        ));
+    }
+
+    void rebuildIndexes(Collection<Index> indexes) {
+        StopWatch.record("rebuildIndexes", () -> executeSqlBatch(
+                indexes.stream()
+                        .map(index -> "ALTER INDEX %s ON %s REBUILD".formatted(quote(index.getName()), quote(index.getTableName())))
+                        .toList()
+        ));
+    }
+
     @Override
     public String getTableDefinition(TableName tableName) {
         return super.getTableDefinition(tableName);
@@ -819,11 +888,199 @@ public class SqlServerDatabase extends DefaultDatabase {
         return DisableForeignKeysPreparationStrategy::new;
     }
 
+    /**
+     * Ships the keys as a JSON array of arrays, OPENJSON converts them to the declared types of the key columns.
+     */
+    @Override
+    public KeySetLookup createKeySetLookup(Table table, List<String> columns) {
+        TableName tableName = table.getTableName();
+        if (!isOpenJsonSupported(tableName.getCatalog())) return null;
+        List<String> withColumns = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (!(table.getColumn(columns.get(i)) instanceof SqlServerColumn column)) return null;
+            if (column.getTypeSchema() != null || !KEY_SET_TYPES.contains(column.getTypeName())) return null;
+            withColumns.add("k%d %s '$[%d]'".formatted(i, column.getTypeDDL(this), i));
+            conditions.add("%s.%s = k.k%d".formatted(quote(tableName), quote(column.getName()), i));
+        }
+        String condition = "EXISTS (SELECT 1 FROM OPENJSON(?) WITH (%s) k WHERE %s)".formatted(
+                String.join(", ", withColumns),
+                String.join(" AND ", conditions)
+        );
+        return new KeySetLookup() {
+            @Override
+            public String getCondition() {
+                return condition;
+            }
+
+            @Override
+            public int getParameterCount() {
+                return 1;
+            }
+
+            @Override
+            public void bind(PreparedStatement preparedStatement, int jdbcPos, Collection<List<Object>> keys) throws SQLException {
+                try {
+                    preparedStatement.setString(jdbcPos, KEY_SET_MAPPER.writeValueAsString(keys));
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * OPENJSON requires the compatibility level 130
+     */
+    private synchronized boolean isOpenJsonSupported(String catalog) {
+        return openJsonSupported.computeIfAbsent(catalog, it -> {
+            try (PreparedStatement preparedStatement = getConnection().prepareStatement("SELECT compatibility_level FROM sys.databases WHERE name = ?")) {
+                preparedStatement.setString(1, catalog);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    return resultSet.next() && resultSet.getInt(1) >= 130;
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Override
+    protected String getTableSampleClause(double percent) {
+        return String.format(Locale.ROOT, "TABLESAMPLE (%f PERCENT)", percent);
+    }
+
     @Override
     public RowCount getRowCount(TableName tableName) {
         return getRowCount("SELECT TOP (%d) 1 FROM %s".formatted(ROW_COUNT_MAX + 1, quote(tableName)));
     }
 
+    /**
+     * Uses the user_updates of sys.dm_db_index_usage_stats, which requires the VIEW SERVER STATE permission.
+     * The statistics are reset when the server restarts, which makes every table look modified.
+     */
+    @Override
+    public Map<TableName, Long> getTableWriteCounters(Collection<TableName> tableNames) {
+        Set<String> catalogs = tableNames.stream().map(TableName::getCatalog).collect(Collectors.toSet());
+        Map<TableName, Long> ret = new HashMap<>();
+        try {
+            for (String catalog : catalogs) {
+                try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                        SELECT s.name AS schema_name, t.name AS table_name, SUM(ius.user_updates) AS user_updates
+                        FROM %s.sys.tables t
+                                 JOIN %s.sys.schemas s ON s.schema_id = t.schema_id
+                                 JOIN sys.dm_db_index_usage_stats ius ON ius.database_id = DB_ID(?) AND ius.object_id = t.object_id
+                        GROUP BY s.name, t.name
+                        """.formatted(quote(catalog), quote(catalog)))) {
+                    preparedStatement.setString(1, catalog);
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            TableName tableName = new TableName(catalog, resultSet.getString("schema_name"), resultSet.getString("table_name"));
+                            if (tableNames.contains(tableName)) {
+                                ret.put(tableName, resultSet.getLong("user_updates"));
+                            }
+                        }
+                    }
+                }
+            }
+            return ret;
+        } catch (SQLException e) {
+            log.warn("Cannot read the index usage statistics: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Uses sys.partitions, the row counts of the heap or clustered index
+     */
+    @Override
+    public Map<TableName, Long> getEstimatedRowCounts(String catalog) {
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT s.name AS schema_name, t.name AS table_name, SUM(p.rows) AS row_count
+                FROM %s.sys.tables t
+                         JOIN %s.sys.schemas s ON s.schema_id = t.schema_id
+                         JOIN %s.sys.partitions p ON p.object_id = t.object_id AND p.index_id IN (0, 1)
+                WHERE t.is_ms_shipped = 0
+                GROUP BY s.name, t.name
+                """.formatted(quote(catalog), quote(catalog), quote(catalog)))) {
+            Map<TableName, Long> ret = new HashMap<>();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableName tableName = new TableName(catalog, resultSet.getString("schema_name"), resultSet.getString("table_name"));
+                    ret.put(tableName, resultSet.getLong("row_count"));
+                }
+            }
+            return ret;
+        } catch (SQLException e) {
+            log.warn("Cannot read the row count estimates of {}: {}", catalog, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Uses the modify_date of sys.objects, which changes when the table is altered or its indexes are created or altered,
+     * and the modify_date of its foreign keys.
+     */
+    @Override
+    public Map<TableName, String> getTableSchemaVersions(String catalog) {
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT s.name AS schema_name,
+                       t.name AS table_name,
+                       t.object_id,
+                       t.modify_date,
+                       (SELECT MAX(fk.modify_date) FROM %s.sys.foreign_keys fk WHERE fk.parent_object_id = t.object_id) AS fk_modify_date,
+                       (SELECT COUNT(*) FROM %s.sys.foreign_keys fk WHERE fk.parent_object_id = t.object_id)            AS fk_count
+                FROM %s.sys.tables t
+                         JOIN %s.sys.schemas s ON s.schema_id = t.schema_id
+                WHERE t.is_ms_shipped = 0
+                """.formatted(quote(catalog), quote(catalog), quote(catalog), quote(catalog)))) {
+            Map<TableName, String> ret = new HashMap<>();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableName tableName = new TableName(catalog, resultSet.getString("schema_name"), resultSet.getString("table_name"));
+                    ret.put(tableName, String.join(
+                            "/",
+                            resultSet.getString("object_id"),
+                            String.valueOf(resultSet.getTimestamp("modify_date")),
+                            String.valueOf(resultSet.getTimestamp("fk_modify_date")),
+                            resultSet.getString("fk_count")
+                    ));
+                }
+            }
+            return ret;
+        } catch (SQLException e) {
+            log.warn("Cannot read the schema versions of {}: {}", catalog, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * TRUNCATE TABLE is not allowed on a table referenced by a foreign key, even a disabled one, unless it references itself.
+     */
+    @Override
+    protected Set<TableName> getTruncatableTables(Collection<TableName> tableNames) {
+        Set<TableName> ret = new HashSet<>(tableNames);
+        Set<String> catalogs = tableNames.stream().map(TableName::getCatalog).collect(Collectors.toSet());
+        for (String catalog : catalogs) {
+            try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                    SELECT DISTINCT s.name AS schema_name, t.name AS table_name
+                    FROM %s.sys.foreign_keys fk
+                             JOIN %s.sys.tables t ON t.object_id = fk.referenced_object_id
+                             JOIN %s.sys.schemas s ON s.schema_id = t.schema_id
+                    WHERE fk.parent_object_id <> fk.referenced_object_id
+                    """.formatted(quote(catalog), quote(catalog), quote(catalog)))) {
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        ret.remove(new TableName(catalog, resultSet.getString("schema_name"), resultSet.getString("table_name")));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return ret;
+    }
+
     @Override
     public void disableForeignKey(ForeignKey foreignKey) {
         StopWatch.record("disableForeignKey", () -> executeSql(
@@ -833,6 +1090,58 @@ public class SqlServerDatabase extends DefaultDatabase {
         ));
     }
 
+    /**
+     * One ALTER TABLE per table for all its foreign keys.
+     * NOCHECK CONSTRAINT ALL is not used because it would also disable the CHECK constraints.
+     */
+    @Override
+    public void disableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        StopWatch.record("disableForeignKeys", () -> executeSqlBatch(
+                getForeignKeyNamesByTable(foreignKeys).entrySet().stream()
+                        .map(entry -> "ALTER TABLE %s NOCHECK CONSTRAINT %s".formatted(
+                                quote(entry.getKey()),
+                                String.join(", ", entry.getValue())
+                        ))
+                        .toList()
+        ));
+    }
+
+    @Override
+    public void enableForeignKeys(Collection<ForeignKey> foreignKeys) {
+        StopWatch.record("enableForeignKeys", () -> executeSqlBatch(
+                getForeignKeyNamesByTable(foreignKeys).entrySet().stream()
+                        .map(entry -> "ALTER TABLE %s WITH %s CHECK CONSTRAINT %s".formatted(
+                                quote(entry.getKey()),
+                                Settings.CHECK_CONTRAINTS ? "CHECK" : "NOCHECK",
+                                String.join(", ", entry.getValue())
+                        ))
+                        .toList()
+        ));
+    }
+
+    @Override
+    public void enableForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        StopWatch.record("enableForeignKeys", () -> executeSqlBatch(
+                getForeignKeyNamesByTable(foreignKeys).entrySet().stream()
+                        .map(entry -> "ALTER TABLE %s WITH NOCHECK CHECK CONSTRAINT %s".formatted(
+                                quote(entry.getKey()),
+                                String.join(", ", entry.getValue())
+                        ))
+                        .toList()
+        ));
+    }
+
+    /**
+     * @return the quoted names of the foreign keys by table
+     */
+    private Map<TableName, List<String>> getForeignKeyNamesByTable(Collection<ForeignKey> foreignKeys) {
+        Map<TableName, List<String>> ret = new LinkedHashMap<>();
+        for (ForeignKey foreignKey : foreignKeys) {
+            ret.computeIfAbsent(foreignKey.getFkTableName(), it -> new ArrayList<>()).add(quote(foreignKey.getName()));
+        }
+        return ret;
+    }
+
     @Override
     public TransitionGenerator getTransitionGenerator(String objectType) {
         return switch (objectType) {
@@ -887,6 +1196,79 @@ public class SqlServerDatabase extends DefaultDatabase {
         }
     }
 
+    @Override
+    public boolean isSnapshotSupported() {
+        return true;
+    }
+
+    /**
+     * Creates a database snapshot next to the data files of the catalog.
+     */
+    @Override
+    public void createSnapshot(String catalog) {
+        dropSnapshot(catalog);
+        List<String> fileSpecs = new ArrayList<>();
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT name, physical_name
+                FROM sys.master_files
+                WHERE database_id = DB_ID(?)
+                  AND type = 0
+                """)) {
+            preparedStatement.setString(1, catalog);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    String name = resultSet.getString("name");
+                    String snapshotFile = resultSet.getString("physical_name") + ".dbpop-snapshot";
+                    fileSpecs.add("(NAME = %s, FILENAME = '%s')".formatted(quote(name), snapshotFile.replace("'", "''")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        executeSql(
+                "CREATE DATABASE %s ON %s AS SNAPSHOT OF %s",
+                quote(getSnapshotName(catalog)),
+                String.join(", ", fileSpecs),
+                quote(catalog)
+        );
+    }
+
+    /**
+     * Reverting to a snapshot needs exclusive access to the catalog.
+     * SET SINGLE_USER WITH ROLLBACK IMMEDIATE rolls back and disconnects every other session of the catalog, including the other connections of this process.
+     * The connection is moved to master during the restore and then back to its catalog.
+     */
+    @Override
+    public void restoreSnapshot(String catalog) {
+        String previousCatalog;
+        try {
+            previousCatalog = getConnection().getCatalog();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        useCatalog("master");
+        try {
+            executeSql("ALTER DATABASE %s SET SINGLE_USER WITH ROLLBACK IMMEDIATE", quote(catalog));
+            try {
+                executeSql("RESTORE DATABASE %s FROM DATABASE_SNAPSHOT = '%s'", quote(catalog), getSnapshotName(catalog).replace("'", "''"));
+            } finally {
+                executeSql("ALTER DATABASE %s SET MULTI_USER", quote(catalog));
+            }
+        } finally {
+            if (previousCatalog != null) useCatalog(previousCatalog);
+        }
+    }
+
+    @Override
+    public void dropSnapshot(String catalog) {
+        String snapshotName = getSnapshotName(catalog);
+        executeSql("IF DB_ID('%s') IS NOT NULL DROP DATABASE %s", snapshotName.replace("'", "''"), quote(snapshotName));
+    }
+
+    private static String getSnapshotName(String catalog) {
+        return catalog + "_dbpop_snapshot";
+    }
+
     @Override
     public void dropObject(ObjectIdentifier objectIdentifier) {
         String sql = getTransitionGenerator(objectIdentifier.getType()).drop(objectIdentifier);
@@ -948,6 +1330,29 @@ public class SqlServerDatabase extends DefaultDatabase {
             }
         }
 
+        /**
+         * Uses the declared length of the columns, the text and binary columns are assumed to be half full
+         */
+        @Override
+        protected BatchSizeStrategy createBatchSizeStrategy(List<Column> columns) {
+            int rowWidth = 0;
+            for (Column column : columns) {
+                if (column instanceof SqlServerColumn sqlServerColumn && sqlServerColumn.getTypeMaxLength() != null) {
+                    int maxLength = sqlServerColumn.getTypeMaxLength();
+                    if (maxLength == -1) {
+                        rowWidth += BatchSizeStrategy.LARGE_COLUMN_WIDTH; // (n)varchar(max), varbinary(max)
+                    } else if (column.getColumnType() == ColumnType.VARCHAR || column.getColumnType() == ColumnType.BINARY) {
+                        rowWidth += Math.max(1, maxLength / 2);
+                    } else {
+                        rowWidth += maxLength;
+                    }
+                } else {
+                    rowWidth += BatchSizeStrategy.getColumnWidth(column);
+                }
+            }
+            return new BatchSizeStrategy(rowWidth);
+        }
+
         private class IdentityColumnInserter extends ColumnInserter {
             private Long max;
 
@@ -956,20 +1361,20 @@ public class SqlServerDatabase extends DefaultDatabase {
             }
 
             @Override
-            public void consume(String s) {
-                if (s == null) return; // An identity column with a null value?
-                long value = toLong(s);
+            public void consumeValue(DataRecord dataRecord) {
+                if (dataRecord.isNull(csvPos)) return; // An identity column with a null value?
+                long value = toLong(dataRecord);
                 if (max == null || value > max) {
                     max = value;
                 }
             }
-        }
 
-        private static long toLong(String s) {
-            try {
-                return Long.parseLong(s);
-            } catch (NumberFormatException e) {
-                throw new RuntimeException(e);
+            private long toLong(DataRecord dataRecord) {
+                try {
+                    return dataRecord.getLong(csvPos);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException(e);
+                }
             }
         }
 
@@ -0,0 +1,40 @@
+package org.dandoy.dbpop.database.mssql;
+
+import org.dandoy.dbpop.database.DatabasePreparationStrategy;
+import org.dandoy.dbpop.database.DeferredIndexesPreparationStrategy;
+import org.dandoy.dbpop.database.Index;
+import org.dandoy.dbpop.database.Table;
+
+import java.util.Collection;
+
+/**
+ * Disables the non-unique nonclustered indexes and rebuilds them.
+ * The unique indexes are left alone, disabling them would also disable the foreign keys that reference them.
+ * SQL Server builds each index with parallel plans on the editions that support it.
+ */
+class SqlServerDeferredIndexesPreparationStrategy extends DeferredIndexesPreparationStrategy {
+    private final SqlServerDatabase database;
+
+    SqlServerDeferredIndexesPreparationStrategy(SqlServerDatabase database, DatabasePreparationStrategy delegate, Collection<Table> tables) {
+        super(delegate, tables);
+        this.database = database;
+    }
+
+    @Override
+    protected boolean isDeferrable(Index index) {
+        return index instanceof SqlServerIndex sqlServerIndex
+               && sqlServerIndex.isNonClustered()
+               && !sqlServerIndex.isUnique()
+               && !sqlServerIndex.isPrimaryKey();
+    }
+
+    @Override
+    protected void removeIndexes() {
+        database.disableIndexes(indexes);
+    }
+
+    @Override
+    protected void rebuildIndexes() {
+        database.rebuildIndexes(indexes);
+    }
+}
@@ -62,6 +62,10 @@ public class SqlServerIndex extends Index {
         }
     }
 
+    public boolean isNonClustered() {
+        return "NONCLUSTERED".equals(typeDesc);
+    }
+
     private String getUsingXml(Database database) {
         if (usingXmlIndexName == null) return "";
         return " USING XML INDEX %s FOR %s".formatted(database.quote(usingXmlIndexName), usingXmlIndexForType);
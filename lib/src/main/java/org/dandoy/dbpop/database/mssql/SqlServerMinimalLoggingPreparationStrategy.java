@@ -0,0 +1,89 @@
+package org.dandoy.dbpop.database.mssql;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.database.DatabasePreparationStrategy;
+import org.dandoy.dbpop.database.ForeignKey;
+import org.dandoy.dbpop.database.Table;
+import org.dandoy.dbpop.utils.ElapsedStopWatch;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Switches the databases in the FULL recovery model to BULK_LOGGED for the duration of the load, which keeps the log backup chain.
+ * The rows must be bulk loaded with a table lock, in tables without secondary indexes, to be minimally logged.
+ */
+@Slf4j
+class SqlServerMinimalLoggingPreparationStrategy extends DatabasePreparationStrategy {
+    private static final String FULL = "FULL";
+    private static final String BULK_LOGGED = "BULK_LOGGED";
+    private final SqlServerDatabase database;
+    private final DatabasePreparationStrategy delegate;
+    private final Set<String> catalogs;
+    private final Set<String> switchedCatalogs = new HashSet<>();
+
+    SqlServerMinimalLoggingPreparationStrategy(SqlServerDatabase database, DatabasePreparationStrategy delegate, Collection<Table> tables) {
+        this.database = database;
+        this.delegate = delegate;
+        this.catalogs = tables.stream()
+                .map(table -> table.getTableName().getCatalog())
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    @Override
+    public Set<ForeignKey> getSuppressedForeignKeys() {
+        return delegate.getSuppressedForeignKeys();
+    }
+
+    @Override
+    public void beforeInserts() {
+        ElapsedStopWatch stopWatch = new ElapsedStopWatch();
+        for (String catalog : catalogs) {
+            try {
+                if (FULL.equals(database.getRecoveryModel(catalog))) {
+                    database.setRecoveryModel(catalog, BULK_LOGGED);
+                    switchedCatalogs.add(catalog);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Cannot change the recovery model of {}: {}", catalog, e.getMessage());
+            }
+        }
+        log.debug("Switched {} databases to {} in {}", switchedCatalogs.size(), BULK_LOGGED, stopWatch);
+        try {
+            delegate.beforeInserts();
+        } catch (RuntimeException e) {
+            restoreRecoveryModels();
+            throw e;
+        }
+    }
+
+    @Override
+    public void afterInserts() {
+        try {
+            // The indexes are rebuilt with minimal logging too
+            delegate.afterInserts();
+        } finally {
+            restoreRecoveryModels();
+        }
+    }
+
+    @Override
+    public void afterCancel(boolean rolledBack) {
+        try {
+            delegate.afterCancel(rolledBack);
+        } finally {
+            restoreRecoveryModels();
+        }
+    }
+
+    private void restoreRecoveryModels() {
+        for (String catalog : switchedCatalogs) {
+            try {
+                database.setRecoveryModel(catalog, FULL);
+            } catch (RuntimeException e) {
+                log.error("Cannot restore the recovery model of {}", catalog, e);
+            }
+        }
+        switchedCatalogs.clear();
+    }
+}
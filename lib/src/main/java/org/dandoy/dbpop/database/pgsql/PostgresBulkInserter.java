@@ -0,0 +1,105 @@
+package org.dandoy.dbpop.database.pgsql;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.QuoteMode;
+import org.dandoy.dbpop.database.*;
+import org.dandoy.dbpop.upload.DataFileHeader;
+import org.dandoy.dbpop.upload.DataReader;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Loads a table with COPY FROM STDIN.
+ * The rows are streamed as CSV, the expressions are evaluated and the base64 columns are converted to the bytea hex format.
+ */
+class PostgresBulkInserter implements BulkInserter {
+    private static final ExpressionParser EXPRESSION_PARSER = new ExpressionParser();
+    private static final int BUFFER_SIZE = 65536;
+    /**
+     * Quote every non-null value so COPY can tell an empty string from a NULL
+     */
+    private static final CSVFormat COPY_FORMAT = CSVFormat.DEFAULT.builder()
+            .setQuoteMode(QuoteMode.ALL_NON_NULL)
+            .setRecordSeparator('\n')
+            .build();
+    private final PostgresDatabase database;
+    private final TableName tableName;
+    private final List<DataFileHeader> dataFileHeaders;
+    private final List<Integer> csvPositions = new ArrayList<>();
+
+    PostgresBulkInserter(PostgresDatabase database, Table table, List<DataFileHeader> dataFileHeaders) {
+        this.database = database;
+        this.tableName = table.getTableName();
+        this.dataFileHeaders = dataFileHeaders;
+        for (int csvPos = 0; csvPos < dataFileHeaders.size(); csvPos++) {
+            DataFileHeader dataFileHeader = dataFileHeaders.get(csvPos);
+            Column column = table.getColumn(dataFileHeader.getColumnName());
+            if (column == null || column.getColumnType() == ColumnType.INVALID) {
+                dataFileHeader.setLoadable(false);  // Same as DefaultDatabase.createInserter()
+            } else {
+                csvPositions.add(csvPos);
+            }
+        }
+    }
+
+    @Override
+    public int insert(DataReader dataReader) throws SQLException {
+        String sql = "COPY %s (%s) FROM STDIN WITH (FORMAT csv)".formatted(
+                database.quote(tableName),
+                csvPositions.stream()
+                        .map(csvPos -> database.quote(dataFileHeaders.get(csvPos).getColumnName()))
+                        .collect(Collectors.joining(","))
+        );
+        PGConnection pgConnection = database.getConnection().unwrap(PGConnection.class);
+        PGCopyOutputStream copyOutputStream = new PGCopyOutputStream(pgConnection, sql, BUFFER_SIZE);
+        int rowCount = 0;
+        try {
+            Writer writer = new OutputStreamWriter(copyOutputStream, StandardCharsets.UTF_8);
+            CSVPrinter csvPrinter = new CSVPrinter(writer, COPY_FORMAT);
+            List<Object> values = new ArrayList<>(csvPositions.size());
+            while (dataReader.next()) {
+                try {
+                    values.clear();
+                    for (Integer csvPos : csvPositions) {
+                        values.add(toCopyValue(dataFileHeaders.get(csvPos), dataReader.get(csvPos)));
+                    }
+                    csvPrinter.printRecord(values);
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to process row " + rowCount, e);
+                }
+                rowCount++;
+            }
+            csvPrinter.flush();
+            copyOutputStream.endCopy();
+        } catch (IOException e) {
+            throw new SQLException("COPY failed", e);
+        } finally {
+            if (copyOutputStream.isActive()) {
+                copyOutputStream.cancelCopy();
+            }
+        }
+        return rowCount;
+    }
+
+    private static Object toCopyValue(DataFileHeader dataFileHeader, String s) {
+        if (s == null) return null;
+        if (dataFileHeader.isBinary()) {
+            return "\\x" + HexFormat.of().formatHex(Base64.getDecoder().decode(s));
+        }
+        Object value = EXPRESSION_PARSER.evaluate(s);
+        if (value instanceof Date date) {
+            return new Timestamp(date.getTime()).toString();
+        }
+        return s;
+    }
+}
@@ -1,17 +1,23 @@
 package org.dandoy.dbpop.database.pgsql;
 
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.database.ConnectionBuilder;
 import org.dandoy.dbpop.database.*;
 import org.dandoy.dbpop.database.utils.ForeignKeyCollector;
 import org.dandoy.dbpop.database.utils.IndexCollector;
 import org.dandoy.dbpop.database.utils.TableCollector;
+import org.dandoy.dbpop.upload.DataFileHeader;
 import org.dandoy.dbpop.utils.NotImplementedException;
+import org.dandoy.dbpop.utils.StopWatch;
+import org.jetbrains.annotations.Nullable;
 
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
 import java.util.stream.Collectors;
 
+@Slf4j
 public class PostgresDatabase extends DefaultDatabase {
 
     public PostgresDatabase(ConnectionBuilder connection) {
@@ -639,16 +645,290 @@ public class PostgresDatabase extends DefaultDatabase {
         throw new RuntimeException("Unexpected type: " + dataType);
     }
 
+    @Override
+    public BulkInserter createBulkInserter(Table table, List<DataFileHeader> dataFileHeaders) {
+        return new PostgresBulkInserter(this, table, dataFileHeaders);
+    }
+
     @Override
     public DatabasePreparationFactory createDatabasePreparationFactory() {
         return DropForeignKeysPreparationStrategy::new;
     }
 
+    /**
+     * Ships the keys as one text array per key column, cast to arrays of the types of the key columns.
+     * A single column is matched with = ANY(array), several columns with IN (SELECT * FROM unnest(array1, array2...)).
+     */
+    @Override
+    public KeySetLookup createKeySetLookup(Table table, List<String> columns) {
+        TableName tableName = table.getTableName();
+        Map<String, String> typeNames = getColumnTypeNames(tableName);
+        if (typeNames == null) return null;
+        List<String> quotedColumns = new ArrayList<>();
+        List<String> arrays = new ArrayList<>();
+        for (String columnName : columns) {
+            Column column = table.getColumn(columnName);
+            String typeName = typeNames.get(columnName);
+            if (column == null || typeName == null || typeName.equals("bytea")) return null;
+            ColumnType columnType = column.getColumnType();
+            if (columnType != ColumnType.INTEGER && columnType != ColumnType.BIG_DECIMAL && columnType != ColumnType.VARCHAR) return null;
+            quotedColumns.add(quote(tableName) + "." + quote(columnName));
+            arrays.add("CAST(? AS %s[])".formatted(typeName));
+        }
+        String condition = columns.size() == 1
+                ? "%s = ANY(%s)".formatted(quotedColumns.get(0), arrays.get(0))
+                : "(%s) IN (SELECT * FROM unnest(%s))".formatted(String.join(", ", quotedColumns), String.join(", ", arrays));
+        return new KeySetLookup() {
+            @Override
+            public String getCondition() {
+                return condition;
+            }
+
+            @Override
+            public int getParameterCount() {
+                return columns.size();
+            }
+
+            @Override
+            public void bind(PreparedStatement preparedStatement, int jdbcPos, Collection<List<Object>> keys) throws SQLException {
+                for (int i = 0; i < columns.size(); i++) {
+                    String[] values = new String[keys.size()];
+                    int j = 0;
+                    for (List<Object> key : keys) {
+                        Object value = key.get(i);
+                        values[j++] = value instanceof BigDecimal bigDecimal ? bigDecimal.toPlainString() : String.valueOf(value);
+                    }
+                    preparedStatement.setArray(jdbcPos + i, preparedStatement.getConnection().createArrayOf("text", values));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the type of each column of a table, null if the table is not in the current database
+     */
+    @Nullable
+    private Map<String, String> getColumnTypeNames(TableName tableName) {
+        try {
+            if (!tableName.getCatalog().equals(getConnection().getCatalog())) return null;
+            try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                    SELECT a.attname, format_type(a.atttypid, NULL) AS type_name
+                    FROM pg_attribute a
+                    WHERE a.attrelid = CAST(? AS regclass)
+                      AND a.attnum > 0
+                      AND NOT a.attisdropped
+                    """)) {
+                preparedStatement.setString(1, quote(tableName.getSchema()) + "." + quote(tableName.getTable()));
+                Map<String, String> ret = new HashMap<>();
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        ret.put(resultSet.getString("attname"), resultSet.getString("type_name"));
+                    }
+                }
+                return ret;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected String getTableSampleClause(double percent) {
+        return String.format(Locale.ROOT, "TABLESAMPLE SYSTEM (%f)", percent);
+    }
+
     @Override
     public RowCount getRowCount(TableName tableName) {
         return getRowCount("SELECT 1 FROM %s LIMIT (%d)".formatted(quote(tableName), ROW_COUNT_MAX + 1));
     }
 
+    /**
+     * Uses pg_class.reltuples, the tables that have never been analyzed are missing
+     */
+    @Override
+    public Map<TableName, Long> getEstimatedRowCounts(String catalog) {
+        try {
+            if (!catalog.equals(getConnection().getCatalog())) return null;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT n.nspname AS schema_name, c.relname AS table_name, c.reltuples AS row_count
+                FROM pg_class c
+                         JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE c.relkind IN ('r', 'p')
+                  AND n.nspname NOT IN ('pg_catalog', 'information_schema')
+                  AND c.reltuples >= 0
+                """)) {
+            Map<TableName, Long> ret = new HashMap<>();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableName tableName = new TableName(catalog, resultSet.getString("schema_name"), resultSet.getString("table_name"));
+                    ret.put(tableName, (long) resultSet.getDouble("row_count"));
+                }
+            }
+            return ret;
+        } catch (SQLException e) {
+            log.warn("Cannot read the row count estimates of {}: {}", catalog, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * PostgreSQL does not timestamp the DDL, but every catalog row it writes gets a new xmin.
+     * The version of a table combines the xmin of its pg_class, pg_attribute, pg_constraint and pg_index rows.
+     */
+    @Override
+    public Map<TableName, String> getTableSchemaVersions(String catalog) {
+        try {
+            if (!catalog.equals(getConnection().getCatalog())) return null;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT n.nspname                                                                            AS schema_name,
+                       c.relname                                                                            AS table_name,
+                       c.oid::TEXT || '/' || c.xmin::TEXT
+                           || '/' || (SELECT COUNT(*) || ':' || COALESCE(MAX(a.xmin::TEXT::BIGINT), 0) FROM pg_attribute a WHERE a.attrelid = c.oid)
+                           || '/' || (SELECT COUNT(*) || ':' || COALESCE(MAX(co.xmin::TEXT::BIGINT), 0) FROM pg_constraint co WHERE co.conrelid = c.oid)
+                           || '/' || (SELECT COUNT(*) || ':' || COALESCE(MAX(i.xmin::TEXT::BIGINT), 0) FROM pg_index i WHERE i.indrelid = c.oid)
+                                                                                                            AS schema_version
+                FROM pg_class c
+                         JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE c.relkind IN ('r', 'p')
+                  AND n.nspname NOT IN ('pg_catalog', 'information_schema')
+                """)) {
+            Map<TableName, String> ret = new HashMap<>();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableName tableName = new TableName(catalog, resultSet.getString("schema_name"), resultSet.getString("table_name"));
+                    ret.put(tableName, resultSet.getString("schema_version"));
+                }
+            }
+            return ret;
+        } catch (SQLException e) {
+            log.warn("Cannot read the schema versions of {}: {}", catalog, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The tables are truncated in a single statement, so a table can be truncated if every table that references it is truncated too.
+     * TRUNCATE ... CASCADE is not used, it would empty the tables that are not part of the datasets.
+     */
+    @Override
+    protected Set<TableName> getTruncatableTables(Collection<TableName> tableNames) {
+        String catalog;
+        try {
+            catalog = getConnection().getCatalog();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        Set<TableName> ret = tableNames.stream()
+                .filter(tableName -> tableName.getCatalog().equals(catalog))
+                .collect(Collectors.toSet());
+        List<TableName[]> references = new ArrayList<>();
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT fn.nspname AS fk_schema, fc.relname AS fk_table, pn.nspname AS pk_schema, pc.relname AS pk_table
+                FROM pg_constraint co
+                         JOIN pg_class fc ON fc.oid = co.conrelid
+                         JOIN pg_namespace fn ON fn.oid = fc.relnamespace
+                         JOIN pg_class pc ON pc.oid = co.confrelid
+                         JOIN pg_namespace pn ON pn.oid = pc.relnamespace
+                WHERE co.contype = 'f'
+                  AND co.conrelid <> co.confrelid
+                """)) {
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    references.add(new TableName[]{
+                            new TableName(catalog, resultSet.getString("fk_schema"), resultSet.getString("fk_table")),
+                            new TableName(catalog, resultSet.getString("pk_schema"), resultSet.getString("pk_table"))
+                    });
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        // Removing a table can exclude the tables it references
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (TableName[] reference : references) {
+                if (ret.contains(reference[1]) && !ret.contains(reference[0])) {
+                    ret.remove(reference[1]);
+                    changed = true;
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public DatabasePreparationStrategy createDeferredIndexesPreparationStrategy(DatabasePreparationStrategy databasePreparationStrategy, Collection<Table> tables) {
+        return new PostgresDeferredIndexesPreparationStrategy(this, databasePreparationStrategy, tables);
+    }
+
+    /**
+     * Drops the indexes that do not back a constraint.
+     *
+     * @return the definitions of the dropped indexes
+     */
+    List<String> dropIndexes(Collection<Index> indexes) {
+        Map<List<String>, String> indexDefinitions = new HashMap<>();
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement("""
+                SELECT n.nspname AS schema_name, i.relname AS index_name, pg_get_indexdef(x.indexrelid) AS index_definition
+                FROM pg_index x
+                         JOIN pg_class i ON i.oid = x.indexrelid
+                         JOIN pg_namespace n ON n.oid = i.relnamespace
+                WHERE n.nspname NOT IN ('pg_catalog', 'information_schema')
+                  AND NOT EXISTS (SELECT 1 FROM pg_constraint co WHERE co.conindid = x.indexrelid AND co.contype IN ('p', 'u', 'x'))
+                """)) {
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    indexDefinitions.put(
+                            List.of(resultSet.getString("schema_name"), resultSet.getString("index_name")),
+                            resultSet.getString("index_definition")
+                    );
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        List<String> dropSqls = new ArrayList<>();
+        List<String> ret = new ArrayList<>();
+        for (Index index : indexes) {
+            String schema = index.getTableName().getSchema();
+            String indexDefinition = indexDefinitions.get(List.of(schema, index.getName()));
+            if (indexDefinition == null) continue;
+            dropSqls.add("DROP INDEX %s.%s".formatted(quote(schema), quote(index.getName())));
+            ret.add(indexDefinition);
+        }
+        StopWatch.record("dropIndexes", () -> executeSqlBatch(dropSqls));
+        return ret;
+    }
+
+    void createIndexes(List<String> indexDefinitions) {
+        StopWatch.record("createIndexes", () -> executeSqlBatch(indexDefinitions));
+    }
+
+    @Override
+    protected void truncateTables(Collection<TableName> tableNames) {
+        executeSql("TRUNCATE TABLE %s", tableNames.stream().map(this::quote).collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * NOT VALID skips the check of the existing rows, the new rows are still checked
+     */
+    @Override
+    public void createForeignKeysWithoutCheck(Collection<ForeignKey> foreignKeys) {
+        executeSqlBatch(
+                foreignKeys.stream()
+                        .map(this::getCreateForeignKeySql)
+                        .map(sql -> sql.endsWith(" NOT VALID") ? sql : sql + " NOT VALID")
+                        .toList()
+        );
+    }
+
     @Override
     public void enableForeignKey(ForeignKey foreignKey) {
         throw new RuntimeException("Not supported");
@@ -0,0 +1,42 @@
+package org.dandoy.dbpop.database.pgsql;
+
+import org.dandoy.dbpop.database.DatabasePreparationStrategy;
+import org.dandoy.dbpop.database.DeferredIndexesPreparationStrategy;
+import org.dandoy.dbpop.database.Index;
+import org.dandoy.dbpop.database.Table;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * PostgreSQL cannot disable an index, the non-unique indexes are dropped and created again from their pg_get_indexdef() definition,
+ * which keeps the expressions, predicates and access methods that Index does not describe.
+ * PostgreSQL builds the B-tree indexes with parallel workers, up to max_parallel_maintenance_workers.
+ */
+class PostgresDeferredIndexesPreparationStrategy extends DeferredIndexesPreparationStrategy {
+    private final PostgresDatabase database;
+    private List<String> indexDefinitions;
+
+    PostgresDeferredIndexesPreparationStrategy(PostgresDatabase database, DatabasePreparationStrategy delegate, Collection<Table> tables) {
+        super(delegate, tables);
+        this.database = database;
+    }
+
+    @Override
+    protected boolean isDeferrable(Index index) {
+        return !index.isUnique() && !index.isPrimaryKey();
+    }
+
+    @Override
+    protected void removeIndexes() {
+        indexDefinitions = database.dropIndexes(indexes);
+    }
+
+    @Override
+    protected void rebuildIndexes() {
+        if (indexDefinitions != null) {
+            database.createIndexes(indexDefinitions);
+            indexDefinitions = null;
+        }
+    }
+}
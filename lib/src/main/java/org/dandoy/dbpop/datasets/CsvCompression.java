@@ -0,0 +1,82 @@
+package org.dandoy.dbpop.datasets;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The formats of the data files, identified by their suffix.
+ * <p>
+ * A gzip file can be appended to: each writer adds a gzip member and the reader reads the members one after the other.
+ */
+public enum CsvCompression {
+    NONE(".csv"),
+    GZIP(".csv.gz");
+
+    private static final int BUFFER_SIZE = 65536;
+    private final String suffix;
+
+    CsvCompression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * @return null if the file is not a data file
+     */
+    @Nullable
+    public static CsvCompression fromFileName(String fileName) {
+        for (CsvCompression csvCompression : values()) {
+            if (fileName.endsWith(csvCompression.suffix)) return csvCompression;
+        }
+        return null;
+    }
+
+    /**
+     * @return the compression of the data file, NONE for the files that are not data files
+     */
+    public static CsvCompression of(File file) {
+        CsvCompression csvCompression = fromFileName(file.getName());
+        return csvCompression == null ? NONE : csvCompression;
+    }
+
+    /**
+     * @return the name of the file without the suffix
+     */
+    public String getTableName(String fileName) {
+        return fileName.substring(0, fileName.length() - suffix.length());
+    }
+
+    public Reader newReader(File file) throws IOException {
+        if (this == NONE) return Files.newBufferedReader(file.toPath());
+        InputStream inputStream = Files.newInputStream(file.toPath());
+        try {
+            return new BufferedReader(new InputStreamReader(new GZIPInputStream(inputStream, BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the file or appends to it.
+     */
+    public Writer newWriter(File file) throws IOException {
+        if (this == NONE) return Files.newBufferedWriter(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        OutputStream outputStream = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(outputStream, BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            outputStream.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.dandoy.dbpop.datasets;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * The settings of a dataset, in a properties file next to the dataset directory:
+ * <pre>
+ * compression=GZIP
+ * binary=true
+ * </pre>
+ */
+public class DatasetSettings {
+    private static final String COMPRESSION = "compression";
+    private static final String BINARY = "binary";
+
+    public static File getSettingsFile(File datasetsDirectory, String dataset) {
+        return new File(datasetsDirectory, dataset + ".properties");
+    }
+
+    /**
+     * @return the compression of the data files created by the downloads, NONE by default
+     */
+    public static CsvCompression getCompression(File datasetsDirectory, String dataset) {
+        String compression = read(datasetsDirectory, dataset).getProperty(COMPRESSION);
+        if (compression == null) return CsvCompression.NONE;
+        try {
+            return CsvCompression.valueOf(compression.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid compression in " + getSettingsFile(datasetsDirectory, dataset) + ": " + compression);
+        }
+    }
+
+    public static void setCompression(File datasetsDirectory, String dataset, CsvCompression csvCompression) {
+        write(datasetsDirectory, dataset, COMPRESSION, csvCompression.name());
+    }
+
+    /**
+     * @return true if the downloads also write the BinaryDataFile of the CSV files, false by default
+     */
+    public static boolean isBinary(File datasetsDirectory, String dataset) {
+        return Boolean.parseBoolean(read(datasetsDirectory, dataset).getProperty(BINARY, "false").trim());
+    }
+
+    public static void setBinary(File datasetsDirectory, String dataset, boolean binary) {
+        write(datasetsDirectory, dataset, BINARY, Boolean.toString(binary));
+    }
+
+    private static void write(File datasetsDirectory, String dataset, String key, String value) {
+        Properties properties = read(datasetsDirectory, dataset);
+        properties.setProperty(key, value);
+        File file = getSettingsFile(datasetsDirectory, dataset);
+        try (Writer writer = Files.newBufferedWriter(file.toPath())) {
+            properties.store(writer, null);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write " + file, e);
+        }
+    }
+
+    private static Properties read(File datasetsDirectory, String dataset) {
+        Properties properties = new Properties();
+        File file = getSettingsFile(datasetsDirectory, dataset);
+        if (file.isFile()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath())) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read " + file, e);
+            }
+        }
+        return properties;
+    }
+}
@@ -61,7 +61,7 @@ public class Datasets {
         File[] catalogFiles = datasetFile.listFiles();
         if (catalogFiles == null) return null;
 
-        Collection<DataFile> dataFiles = new ArrayList<>();
+        Map<TableName, DataFile> dataFiles = new LinkedHashMap<>();
         for (File catalogFile : catalogFiles) {
             String catalog = catalogFile.getName();
             File[] schemaFiles = catalogFile.listFiles();
@@ -72,14 +72,18 @@ public class Datasets {
                     if (tableFiles != null) {
                         for (File tableFile : tableFiles) {
                             String tableFileName = tableFile.getName();
-                            if (tableFileName.endsWith(".csv")) {
-                                String table = tableFileName.substring(0, tableFileName.length() - 4);
-                                dataFiles.add(
-                                        new DataFile(
-                                                tableFile,
-                                                new TableName(catalog, schema, table)
-                                        )
-                                );
+                            CsvCompression csvCompression = CsvCompression.fromFileName(tableFileName);
+                            if (csvCompression != null) {
+                                TableName tableName = new TableName(catalog, schema, csvCompression.getTableName(tableFileName));
+                                DataFile dataFile = dataFiles.put(tableName, new DataFile(tableFile, tableName));
+                                if (dataFile != null) {
+                                    throw new RuntimeException(String.format(
+                                            "Table %s has more than one data file: %s and %s",
+                                            tableName.toQualifiedName(),
+                                            dataFile.getFile(),
+                                            tableFile
+                                    ));
+                                }
                             }
                         }
                     } else {
@@ -93,7 +97,7 @@ public class Datasets {
 
         return new Dataset(
                 datasetFile.getName(),
-                dataFiles
+                new ArrayList<>(dataFiles.values())
         );
     }
 
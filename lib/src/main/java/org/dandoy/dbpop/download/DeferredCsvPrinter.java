@@ -3,38 +3,54 @@ package org.dandoy.dbpop.download;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.dandoy.dbpop.FeatureFlags;
+import org.dandoy.dbpop.datasets.CsvCompression;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 /**
- * A CSV printer that only creates the file if needed
+ * A CSV printer that only creates the file if needed.
+ * When indexed, it maintains the PrimaryKeyIndex of the file.
  */
 public class DeferredCsvPrinter implements AutoCloseable {
     private final File file;
     private final List<String> headers;
+    private final boolean indexed;
     private CSVPrinter csvPrinter;
+    private Writer writer;
+    private PrimaryKeyIndex.Writer indexWriter;
 
     public DeferredCsvPrinter(File file, List<String> headers) {
+        this(file, headers, false);
+    }
+
+    public DeferredCsvPrinter(File file, List<String> headers, boolean indexed) {
         this.file = file;
         this.headers = headers;
+        this.indexed = indexed;
     }
 
     private CSVPrinter create(boolean writeHeaders) {
         try {
             boolean newFile = !file.exists();
-            BufferedWriter bufferedWriter = Files.newBufferedWriter(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (indexed) {
+                // The index must be checked against the file before the file is modified
+                indexWriter = PrimaryKeyIndex.openWriter(file, false);
+            }
+            Writer fileWriter = CsvCompression.of(file).newWriter(file);
 
             CSVFormat.Builder csvFormatBuilder = CSVFormat.DEFAULT.builder()
                     .setNullString("");
-            if (newFile && writeHeaders) {
+            if (newFile && writeHeaders && headers != null) {
                 csvFormatBuilder.setHeader(headers.toArray(String[]::new));
             }
-            return new CSVPrinter(bufferedWriter, csvFormatBuilder.build());
+            writer = fileWriter;
+            return new CSVPrinter(fileWriter, csvFormatBuilder.build());
         } catch (IOException e) {
             throw new RuntimeException("Failed to create a DeferredCsvPrinter for " + file, e);
         }
@@ -42,23 +58,18 @@ public class DeferredCsvPrinter implements AutoCloseable {
 
     @Override
     public void close() {
-        if (csvPrinter != null) {
-            try {
-                csvPrinter.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
-            if (FeatureFlags.createCsvFilesForEmptyTables) {
-                if (!file.exists()) {
-                    try {
-                        create(FeatureFlags.includeCsvHeadersForEmptyTables)
-                                .close();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            }
+        if (csvPrinter == null) {
+            if (!FeatureFlags.createCsvFilesForEmptyTables || file.exists()) return;
+            // The empty file gets an empty index, like any other file written by the printer
+            csvPrinter = create(FeatureFlags.includeCsvHeadersForEmptyTables);
+        }
+        try {
+            csvPrinter.close();
+            if (indexWriter != null) indexWriter.commit();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (indexWriter != null) indexWriter.close();
         }
     }
 
@@ -76,4 +87,29 @@ public class DeferredCsvPrinter implements AutoCloseable {
     public void println() throws IOException {
         getCsvPrinter().println();
     }
+
+    /**
+     * Ends the record of that primary key
+     */
+    public void println(@Nullable List<String> pk) throws IOException {
+        getCsvPrinter().println();
+        if (indexWriter != null && pk != null) {
+            indexWriter.add(pk);
+        }
+    }
+
+    /**
+     * Appends the records of a file written by a DeferredCsvPrinter without headers
+     */
+    public void append(File recordsFile) throws IOException {
+        CSVPrinter csvPrinter = getCsvPrinter();
+        csvPrinter.flush();
+        try (Reader reader = Files.newBufferedReader(recordsFile.toPath())) {
+            reader.transferTo(writer);
+        }
+        writer.flush();
+        if (indexWriter != null) {
+            indexWriter.appendIndex(recordsFile);
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package org.dandoy.dbpop.download;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.dandoy.dbpop.database.TableName;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Journal of a download, written next to the dataset directory so that a failed download can be resumed.
+ * It records the tables that have been downloaded and, for the tables downloaded in primary key ranges,
+ * the last primary key written to the CSV file.
+ * <p>
+ * The journal is a CSV file:
+ * <pre>
+ * done,catalog,schema,table
+ * pk,catalog,schema,table,value1,value2...
+ * </pre>
+ */
+@Slf4j
+public class DownloadCheckpoint implements AutoCloseable {
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setNullString("")
+            .build();
+    private static final String DONE = "done";
+    private static final String PK = "pk";
+    private final File file;
+    private final Set<TableName> completedTables = new HashSet<>();
+    private final Map<TableName, List<String>> lastPrimaryKeys = new HashMap<>();
+    private CSVPrinter csvPrinter;
+
+    private DownloadCheckpoint(File file) {
+        this.file = file;
+    }
+
+    public static File getCheckpointFile(File datasetsDirectory, String dataset) {
+        return new File(datasetsDirectory, dataset + ".checkpoint");
+    }
+
+    /**
+     * @param resume true to read the journal of the previous download, false to start a new journal
+     */
+    public static DownloadCheckpoint open(File datasetsDirectory, String dataset, boolean resume) {
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(getCheckpointFile(datasetsDirectory, dataset));
+        if (resume) {
+            checkpoint.read();
+        } else {
+            checkpoint.delete();
+        }
+        return checkpoint;
+    }
+
+    private void read() {
+        if (!file.exists()) return;
+        try (Reader reader = Files.newBufferedReader(file.toPath());
+             CSVParser csvParser = CSV_FORMAT.parse(reader)) {
+            for (CSVRecord csvRecord : csvParser) {
+                if (csvRecord.size() < 4) continue; // Partially written record
+                TableName tableName = new TableName(csvRecord.get(1), csvRecord.get(2), csvRecord.get(3));
+                if (DONE.equals(csvRecord.get(0))) {
+                    completedTables.add(tableName);
+                } else if (PK.equals(csvRecord.get(0))) {
+                    List<String> values = new ArrayList<>();
+                    for (int i = 4; i < csvRecord.size(); i++) {
+                        values.add(csvRecord.get(i));
+                    }
+                    lastPrimaryKeys.put(tableName, values);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Cannot read the checkpoint {}: {}", file, e.getMessage());
+        }
+        log.info("Resuming the download, {} tables already downloaded", completedTables.size());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (csvPrinter != null) {
+            try {
+                csvPrinter.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            csvPrinter = null;
+        }
+    }
+
+    /**
+     * Deletes the journal once the download is complete.
+     */
+    public synchronized void delete() {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("Failed to delete " + file);
+        }
+    }
+
+    public synchronized boolean isCompleted(TableName tableName) {
+        return completedTables.contains(tableName);
+    }
+
+    /**
+     * @return the last primary key written to the CSV file of a table that has not been completed, as found in the CSV file
+     */
+    @Nullable
+    public synchronized List<String> getLastPrimaryKey(TableName tableName) {
+        if (completedTables.contains(tableName)) return null;
+        return lastPrimaryKeys.get(tableName);
+    }
+
+    public synchronized void tableCompleted(TableName tableName) {
+        completedTables.add(tableName);
+        lastPrimaryKeys.remove(tableName);
+        write(DONE, tableName, Collections.emptyList());
+    }
+
+    /**
+     * The rows up to that primary key have been written to the CSV file.
+     */
+    public synchronized void primaryKeyWritten(TableName tableName, List<String> pk) {
+        lastPrimaryKeys.put(tableName, pk);
+        write(PK, tableName, pk);
+    }
+
+    private void write(String type, TableName tableName, List<String> values) {
+        try {
+            if (csvPrinter == null) {
+                csvPrinter = new CSVPrinter(
+                        Files.newBufferedWriter(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                        CSV_FORMAT
+                );
+            }
+            List<String> record = new ArrayList<>();
+            record.add(type);
+            record.add(tableName.getCatalog());
+            record.add(tableName.getSchema());
+            record.add(tableName.getTable());
+            record.addAll(values);
+            csvPrinter.printRecord(record);
+            csvPrinter.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write " + file, e);
+        }
+    }
+}
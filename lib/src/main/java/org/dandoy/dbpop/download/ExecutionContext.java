@@ -3,15 +3,22 @@ package org.dandoy.dbpop.download;
 import lombok.Getter;
 import org.dandoy.dbpop.database.TableName;
 
-import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the rows downloaded and skipped per table.
+ * It is shared by the tables that are downloaded concurrently.
+ * The download stops when the row limit is reached or when it is cancelled.
+ */
 @Getter
 public class ExecutionContext {
     private final int totalRowCountLimit;
-    private int totalRowCount;
-    private final Map<TableName, Integer> rowCounts = new HashMap<>();
-    private final Map<TableName, Integer> rowsSkipped = new HashMap<>();
+    private final AtomicInteger totalRowCount = new AtomicInteger();
+    private final Map<TableName, Integer> rowCounts = new ConcurrentHashMap<>();
+    private final Map<TableName, Integer> rowsSkipped = new ConcurrentHashMap<>();
+    private volatile boolean cancelled;
 
     public ExecutionContext() {
         this(Integer.MAX_VALUE);
@@ -21,28 +28,31 @@ public class ExecutionContext {
         this.totalRowCountLimit = totalRowCountLimit;
     }
 
+    public int getTotalRowCount() {
+        return totalRowCount.get();
+    }
+
     public void tableAdded(TableName tableName) {
         rowCounts.putIfAbsent(tableName, 0);
     }
 
     public void rowAdded(TableName tableName) {
-        Integer integer = rowCounts.get(tableName);
-        if (integer == null) {
-            integer = 0;
-        }
-        rowCounts.put(tableName, integer + 1);
-        totalRowCount++;
+        rowCounts.merge(tableName, 1, Integer::sum);
+        totalRowCount.incrementAndGet();
     }
 
     public void rowSkipped(TableName tableName) {
-        Integer integer = rowsSkipped.get(tableName);
-        if (integer == null) {
-            integer = 0;
-        }
-        rowsSkipped.put(tableName, integer + 1);
+        rowsSkipped.merge(tableName, 1, Integer::sum);
+    }
+
+    /**
+     * Stops the download, the tables being downloaded stop at their next row
+     */
+    public void cancel() {
+        cancelled = true;
     }
 
     public boolean keepRunning() {
-        return totalRowCount < totalRowCountLimit;
+        return !cancelled && totalRowCount.get() < totalRowCountLimit;
     }
 }
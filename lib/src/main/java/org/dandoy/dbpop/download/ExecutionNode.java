@@ -2,29 +2,49 @@ package org.dandoy.dbpop.download;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.database.Database;
 import org.dandoy.dbpop.database.TableName;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 @Slf4j
 public class ExecutionNode implements Consumer<ResultSet>, AutoCloseable {
     public static final int BATCH_SIZE = 1000;
+    /**
+     * Number of batches a pipelined node can receive before its parent waits
+     */
+    private static final int QUEUE_CAPACITY = 4;
+    private static final Set<List<Object>> END_OF_KEYS = Collections.unmodifiableSet(new HashSet<>());
     @Getter
     private final TableName tableName;
     private final TableDownloader tableDownloader;
     private final List<SelectedColumn> extractedColumns;
+    @Nullable
+    private final Database nodeDatabase;
+    private final List<ExecutionNode> childExecutionNodes = new ArrayList<>();
     private final Set<List<Object>> keys = new HashSet<>();
+    private BlockingQueue<Set<List<Object>>> queue;
+    private AtomicReference<RuntimeException> failure;
 
     public ExecutionNode(TableName tableName, TableDownloader tableDownloader, List<SelectedColumn> extractedColumns) {
+        this(tableName, tableDownloader, extractedColumns, null);
+    }
+
+    /**
+     * @param nodeDatabase the connection used by the tableDownloader of a pipelined node, closed with the node
+     */
+    public ExecutionNode(TableName tableName, TableDownloader tableDownloader, List<SelectedColumn> extractedColumns, @Nullable Database nodeDatabase) {
         this.tableName = tableName;
         this.tableDownloader = tableDownloader;
         this.extractedColumns = extractedColumns;
+        this.nodeDatabase = nodeDatabase;
     }
 
     @Override
@@ -38,6 +58,9 @@ public class ExecutionNode implements Consumer<ResultSet>, AutoCloseable {
     @Override
     public void close() {
         tableDownloader.close();
+        if (nodeDatabase != null) {
+            nodeDatabase.close();
+        }
     }
 
     public void download(Set<List<Object>> pks) {
@@ -51,6 +74,9 @@ public class ExecutionNode implements Consumer<ResultSet>, AutoCloseable {
     @Override
     public void accept(ResultSet resultSet) {
         log.debug("{} receives a row", tableName);
+        if (failure != null && failure.get() != null) {
+            throw new RuntimeException("The download of " + tableName + " has been aborted");
+        }
         try {
             List<Object> values = new ArrayList<>();
             for (SelectedColumn selectedColumn : extractedColumns) {
@@ -60,7 +86,11 @@ public class ExecutionNode implements Consumer<ResultSet>, AutoCloseable {
             }
             keys.add(values);
             if (keys.size() > BATCH_SIZE) {
-                flush();
+                if (queue == null) {
+                    flush();
+                } else {
+                    send();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -76,6 +106,77 @@ public class ExecutionNode implements Consumer<ResultSet>, AutoCloseable {
     }
 
     public void addExecutionNode(ExecutionNode childExecutionNode) {
+        childExecutionNodes.add(childExecutionNode);
         tableDownloader.addConsumer(childExecutionNode);
     }
+
+    /**
+     * Prepares the node to receive its keys from the thread of its parent.
+     *
+     * @param failure the first failure of the pipeline, shared by all the nodes
+     */
+    void startPipeline(AtomicReference<RuntimeException> failure) {
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.failure = failure;
+    }
+
+    /**
+     * Downloads the batches of keys sent by the parent node until the parent has sent all its keys.
+     * After a failure, or once the row limit has been reached, the batches are drained without being downloaded so that the parent never waits.
+     */
+    void runPipeline(ExecutionContext executionContext) {
+        try {
+            while (true) {
+                Set<List<Object>> batch = queue.take();
+                if (batch == END_OF_KEYS) break;
+                if (failure.get() == null && executionContext.keepRunning()) {
+                    try {
+                        log.debug("{} downloads {} rows", tableName, batch.size());
+                        tableDownloader.download(batch);
+                        if (queue.isEmpty()) {
+                            // Don't let the children wait for a full batch while this node is idle
+                            childExecutionNodes.forEach(ExecutionNode::send);
+                        }
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new RuntimeException(e));
+        } finally {
+            endOfKeys();
+        }
+    }
+
+    /**
+     * Sends the remaining keys to the children and tells them that this node has no more keys
+     */
+    void endOfKeys() {
+        for (ExecutionNode childExecutionNode : childExecutionNodes) {
+            if (failure.get() == null) {
+                childExecutionNode.send();
+            }
+            childExecutionNode.put(END_OF_KEYS);
+        }
+    }
+
+    /**
+     * Sends the buffered keys to the thread of this node, waits if the queue is full
+     */
+    private void send() {
+        if (keys.isEmpty()) return;
+        put(new HashSet<>(keys));
+        keys.clear();
+    }
+
+    private void put(Set<List<Object>> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.dandoy.dbpop.download;
 
 import org.dandoy.dbpop.database.Database;
 import org.dandoy.dbpop.database.ForeignKey;
+import org.dandoy.dbpop.database.ForeignKeyGraph;
 import org.dandoy.dbpop.database.Table;
 import org.dandoy.dbpop.database.TableName;
 import org.jetbrains.annotations.NotNull;
@@ -9,22 +10,41 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Downloads a table and the tables related to it as described by a TableExecutionModel.
+ * <p>
+ * By default, the nodes are flushed one after the other on the connection of the plan.
+ * When pipelined, every node but the root runs on its own thread and its own connection:
+ * a node streams the keys it extracts to its children through bounded queues, so sibling tables
+ * and the successive levels of the tree are downloaded concurrently.
+ */
 public class ExecutionPlan implements AutoCloseable {
     private final Database database;
     private final File datasetsDirectory;
     private final String dataset;
     private final ExecutionMode executionMode;
     private final ExecutionContext executionContext;
+    private final boolean pipelined;
+    /**
+     * The same snapshot of the foreign keys is used to build the whole plan
+     */
+    @Nullable
+    private final ForeignKeyGraph foreignKeyGraph;
     private final Set<TableName> processed = new HashSet<>();
     private final List<ExecutionNode> executionNodes = new ArrayList<>();
 
-    private ExecutionPlan(Database database, File datasetsDirectory, String dataset, ExecutionMode executionMode, ExecutionContext executionContext) {
+    private ExecutionPlan(Database database, File datasetsDirectory, String dataset, ExecutionMode executionMode, ExecutionContext executionContext, boolean pipelined) {
         this.database = database;
         this.datasetsDirectory = datasetsDirectory;
         this.dataset = dataset;
         this.executionMode = executionMode;
         this.executionContext = executionContext;
+        this.pipelined = pipelined;
+        this.foreignKeyGraph = database.getForeignKeyGraph();
     }
 
     @Override
@@ -47,6 +67,51 @@ public class ExecutionPlan implements AutoCloseable {
         } while (hasFlushed);
     }
 
+    private void executePipelined(ExecutionNode rootExecutionNode, Set<List<Object>> pks) {
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        executionNodes.forEach(executionNode -> executionNode.startPipeline(failure));
+        List<ExecutionNode> pipelinedNodes = executionNodes.stream().filter(it -> it != rootExecutionNode).toList();
+        if (pipelinedNodes.isEmpty()) {
+            rootExecutionNode.download(pks);
+            return;
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(pipelinedNodes.size(), runnable -> {
+            Thread thread = new Thread(runnable, "Pipeline-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ExecutionNode executionNode : pipelinedNodes) {
+                futures.add(executorService.submit(() -> executionNode.runPipeline(executionContext)));
+            }
+            try {
+                rootExecutionNode.download(pks);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                rootExecutionNode.endOfKeys();
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new RuntimeException(e));
+        } finally {
+            executorService.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
     public static ExecutionContext execute(
             @NotNull Database database,
             @NotNull File datasetsDirectory,
@@ -58,16 +123,59 @@ public class ExecutionPlan implements AutoCloseable {
             @NotNull ExecutionMode executionMode,
             @Nullable Integer rowCountLimit
     ) {
-        int effectiveRowCountLimit = getEffectiveRowCountLimit(executionMode, rowCountLimit);
-        ExecutionContext executionContext = new ExecutionContext(effectiveRowCountLimit);
-        try (ExecutionPlan executionPlan = new ExecutionPlan(database, datasetsDirectory, dataset, executionMode, executionContext)) {
+        return execute(database, datasetsDirectory, dataset, tableName, tableExecutionModel, filteredColumns, pks, executionMode, rowCountLimit, false);
+    }
+
+    /**
+     * @param pipelined true to download the related tables concurrently, using one connection per table
+     */
+    public static ExecutionContext execute(
+            @NotNull Database database,
+            @NotNull File datasetsDirectory,
+            @NotNull String dataset,
+            @NotNull TableName tableName,
+            @NotNull TableExecutionModel tableExecutionModel,
+            @NotNull List<String> filteredColumns,
+            @NotNull Set<List<Object>> pks,
+            @NotNull ExecutionMode executionMode,
+            @Nullable Integer rowCountLimit,
+            boolean pipelined
+    ) {
+        ExecutionContext executionContext = createExecutionContext(executionMode, rowCountLimit);
+        return executeInContext(database, datasetsDirectory, dataset, tableName, tableExecutionModel, filteredColumns, pks, executionMode, executionContext, pipelined);
+    }
+
+    /**
+     * @param executionContext created by {@link #createExecutionContext(ExecutionMode, Integer)}, the caller can cancel it
+     */
+    public static ExecutionContext executeInContext(
+            @NotNull Database database,
+            @NotNull File datasetsDirectory,
+            @NotNull String dataset,
+            @NotNull TableName tableName,
+            @NotNull TableExecutionModel tableExecutionModel,
+            @NotNull List<String> filteredColumns,
+            @NotNull Set<List<Object>> pks,
+            @NotNull ExecutionMode executionMode,
+            @NotNull ExecutionContext executionContext,
+            boolean pipelined
+    ) {
+        try (ExecutionPlan executionPlan = new ExecutionPlan(database, datasetsDirectory, dataset, executionMode, executionContext, pipelined)) {
             ExecutionNode executionNode = executionPlan.build(tableName, tableExecutionModel, filteredColumns);
-            executionNode.download(pks);
-            executionPlan.flush(executionContext);
+            if (pipelined) {
+                executionPlan.executePipelined(executionNode, pks);
+            } else {
+                executionNode.download(pks);
+                executionPlan.flush(executionContext);
+            }
             return executionContext;
         }
     }
 
+    public static ExecutionContext createExecutionContext(@NotNull ExecutionMode executionMode, @Nullable Integer rowCountLimit) {
+        return new ExecutionContext(getEffectiveRowCountLimit(executionMode, rowCountLimit));
+    }
+
     private static int getEffectiveRowCountLimit(ExecutionMode executionMode, Integer rowCountLimit) {
         if (executionMode == ExecutionMode.COUNT) {
             if (rowCountLimit != null) return rowCountLimit;
@@ -181,7 +289,7 @@ public class ExecutionPlan implements AutoCloseable {
 
     private void addDataNodes(TableExecutionModel parentTableExecutionModel, ExecutionNode parentExecutionNode, Table table) {
         // If we are on "invoices", fetch "invoice_details"
-        for (ForeignKey foreignKey : database.getRelatedForeignKeys(table.getTableName())) {
+        for (ForeignKey foreignKey : getRelatedForeignKeys(table.getTableName())) {
             TableExecutionModel tableExecutionModel = parentTableExecutionModel.removeTableExecutionModel(foreignKey.getName());
             if (tableExecutionModel != null) {
                 TableName fkTableName = foreignKey.getFkTableName();
@@ -196,6 +304,11 @@ public class ExecutionPlan implements AutoCloseable {
         }
     }
 
+    private List<ForeignKey> getRelatedForeignKeys(TableName tableName) {
+        if (foreignKeyGraph != null) return foreignKeyGraph.getRelatedForeignKeys(tableName);
+        return database.getRelatedForeignKeys(tableName);
+    }
+
     private void addLookupNodes(TableExecutionModel parentTableExecutionModel, ExecutionNode parentExecutionNode, Table table) {
         // If we are on "invoices", fetch "customers"
         for (ForeignKey foreignKey : table.getForeignKeys()) {
@@ -223,19 +336,26 @@ public class ExecutionPlan implements AutoCloseable {
         List<TableJoin> tableJoins = new ArrayList<>();
         List<TableQuery> wheres = new ArrayList<>();
         collectJoins(database, table.getTableName(), tableExecutionModel, tableJoins, wheres);
-        TableDownloader tableDownloader = TableDownloader.builder()
-                .setDatabase(database)
-                .setDatasetsDirectory(datasetsDirectory)
-                .setDataset(dataset)
-                .setTableName(table.getTableName())
-                .setTableJoins(tableJoins)
-                .setWheres(wheres)
-                .setFilteredColumns(filteredColumns)
-                .setExecutionMode(executionMode)
-                .setExecutionContext(executionContext)
-                .build();
-        ExecutionNode executionNode = new ExecutionNode(table.getTableName(), tableDownloader, extractSelectedColumns);
-        executionNodes.add(executionNode);
-        return executionNode;
+        // A pipelined node runs its queries on its own connection
+        Database nodeDatabase = pipelined ? Database.createDatabase(database.getConnectionBuilder()) : null;
+        try {
+            TableDownloader tableDownloader = TableDownloader.builder()
+                    .setDatabase(nodeDatabase != null ? nodeDatabase : database)
+                    .setDatasetsDirectory(datasetsDirectory)
+                    .setDataset(dataset)
+                    .setTableName(table.getTableName())
+                    .setTableJoins(tableJoins)
+                    .setWheres(wheres)
+                    .setFilteredColumns(filteredColumns)
+                    .setExecutionMode(executionMode)
+                    .setExecutionContext(executionContext)
+                    .build();
+            ExecutionNode executionNode = new ExecutionNode(table.getTableName(), tableDownloader, extractSelectedColumns, nodeDatabase);
+            executionNodes.add(executionNode);
+            return executionNode;
+        } catch (RuntimeException e) {
+            if (nodeDatabase != null) nodeDatabase.close();
+            throw e;
+        }
     }
 }
@@ -52,7 +52,10 @@ public class OutputFile {
         headers = selectedColumns.stream().map(SelectedColumn::asHeaderName).toList();
     }
 
-    public DeferredCsvPrinter createCsvPrinter() {
-        return new DeferredCsvPrinter(file, headers);
+    /**
+     * @param indexed true to maintain the PrimaryKeyIndex of the file
+     */
+    public DeferredCsvPrinter createCsvPrinter(boolean indexed) {
+        return new DeferredCsvPrinter(file, headers, indexed);
     }
 }
@@ -0,0 +1,225 @@
+package org.dandoy.dbpop.download;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.FeatureFlags;
+import org.dandoy.dbpop.database.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads whole tables on a pool of connections.
+ * <p>
+ * The tables are sorted by their estimated number of rows and the largest tables are downloaded first,
+ * so that a large table does not start when the other connections are idle.
+ * Each download thread uses its own connection, the ExecutionContext is shared.
+ * <p>
+ * The tables that have more than twice FeatureFlags.downloadChunkRows rows are split in ranges of primary keys
+ * fetched on chunkParallelism additional connections.
+ * <p>
+ * The progress is journaled in a DownloadCheckpoint, a download started with resume skips the tables that have been downloaded
+ * and continues the tables downloaded in ranges after the last primary key written.
+ */
+@Slf4j
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ParallelTableDownloader {
+    private static final int MAX_CHUNKS = 1000;
+    private Database database;
+    private File datasetsDirectory;
+    private String dataset;
+    /**
+     * Number of connections, 1 downloads the tables one after the other on the database connection
+     */
+    private int parallelism = 1;
+    /**
+     * Number of connections used to download the ranges of primary keys of a large table, 1 downloads a table with a single query
+     */
+    private int chunkParallelism = 1;
+    private ExecutionContext executionContext = new ExecutionContext();
+    private TableDownloadListener tableDownloadListener = new TableDownloadListener() {};
+    /**
+     * Continue the download described by the checkpoint of the dataset
+     */
+    private boolean resume;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private DownloadCheckpoint checkpoint;
+    @Getter(AccessLevel.NONE)
+    private final Map<TableName, Long> estimatedRowCounts = new HashMap<>();
+
+    public ExecutionContext download(Collection<TableName> tableNames) {
+        if (database == null) throw new RuntimeException("database not set");
+        if (datasetsDirectory == null) throw new RuntimeException("datasetsDirectory not set");
+        if (dataset == null) throw new RuntimeException("dataset not set");
+
+        checkpoint = DownloadCheckpoint.open(datasetsDirectory, dataset, resume);
+        try {
+            List<TableName> sortedTableNames = sortLargestFirst(tableNames.stream()
+                    .filter(tableName -> {
+                        if (!checkpoint.isCompleted(tableName)) return true;
+                        log.info("Skipping {}, already downloaded", tableName.toQualifiedName());
+                        return false;
+                    })
+                    .toList());
+            sortedTableNames.forEach(executionContext::tableAdded);
+            AtomicInteger completed = new AtomicInteger();
+            if (parallelism <= 1) {
+                for (TableName tableName : sortedTableNames) {
+                    if (!executionContext.keepRunning()) break;
+                    downloadTable(database, tableName, completed, sortedTableNames.size());
+                }
+            } else {
+                downloadInParallel(sortedTableNames, completed);
+            }
+            if (executionContext.keepRunning()) {
+                checkpoint.delete();
+            }
+        } finally {
+            checkpoint.close();
+        }
+        return executionContext;
+    }
+
+    private void downloadInParallel(List<TableName> tableNames, AtomicInteger completed) {
+        int threadCount = Math.min(parallelism, tableNames.size());
+        if (threadCount == 0) return;
+        List<Database> databases = new ArrayList<>();
+        BlockingQueue<Database> availableDatabases = new ArrayBlockingQueue<>(threadCount);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "Downloader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                Database workerDatabase = Database.createDatabase(database.getConnectionBuilder());
+                databases.add(workerDatabase);
+                availableDatabases.add(workerDatabase);
+            }
+
+            // The executor runs the tasks in submission order, the largest tables first
+            List<Future<?>> futures = new ArrayList<>();
+            for (TableName tableName : tableNames) {
+                futures.add(executorService.submit(() -> {
+                    if (!executionContext.keepRunning()) return null;
+                    Database workerDatabase = availableDatabases.take();
+                    try {
+                        downloadTable(workerDatabase, tableName, completed, tableNames.size());
+                    } finally {
+                        availableDatabases.add(workerDatabase);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    futures.forEach(it -> it.cancel(true));
+                    throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executorService.shutdownNow();
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            databases.forEach(Database::close);
+        }
+    }
+
+    private void downloadTable(Database database, TableName tableName, AtomicInteger completed, int total) {
+        tableDownloadListener.tableStarted(tableName);
+        long t0 = System.currentTimeMillis();
+        try (TableDownloader tableDownloader = TableDownloader.builder()
+                .setDatabase(database)
+                .setDatasetsDirectory(datasetsDirectory)
+                .setDataset(dataset)
+                .setTableName(tableName)
+                .setExecutionMode(ExecutionMode.SAVE)
+                .setExecutionContext(executionContext)
+                .build()) {
+            long estimatedRowCount = estimatedRowCounts.getOrDefault(tableName, -1L);
+            List<Object> lastPk = getLastPrimaryKey(database, tableName);
+            if (lastPk != null || (chunkParallelism > 1 && estimatedRowCount >= 2L * FeatureFlags.downloadChunkRows)) {
+                int chunkCount = (int) Math.min(estimatedRowCount / FeatureFlags.downloadChunkRows, MAX_CHUNKS);
+                tableDownloader.download(estimatedRowCount, chunkCount, chunkParallelism, lastPk, pk -> checkpoint.primaryKeyWritten(tableName, pk));
+            } else {
+                tableDownloader.download();
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to download " + tableName.toQualifiedName(), e);
+        }
+        if (!executionContext.keepRunning()) {
+            // Cancelled or stopped by the row limit, the table must be resumed by the next download
+            log.info("Stopped {}", tableName.toQualifiedName());
+            return;
+        }
+        checkpoint.tableCompleted(tableName);
+        long millis = System.currentTimeMillis() - t0;
+        int rows = executionContext.getRowCounts().getOrDefault(tableName, 0);
+        int done = completed.incrementAndGet();
+        log.info("Downloaded {} - {} rows in {}ms ({}/{})", tableName.toQualifiedName(), rows, millis, done, total);
+        tableDownloadListener.tableDownloaded(tableName, rows, millis, done, total);
+    }
+
+    /**
+     * Converts the last primary key found in the checkpoint to the values bound to the primary key columns
+     *
+     * @return null if the table must be downloaded from the start
+     */
+    @Nullable
+    private List<Object> getLastPrimaryKey(Database database, TableName tableName) {
+        List<String> lastPk = checkpoint.getLastPrimaryKey(tableName);
+        if (lastPk == null) return null;
+        Table table = database.getTable(tableName);
+        PrimaryKey primaryKey = table.getPrimaryKey();
+        if (primaryKey == null || primaryKey.getColumns().size() != lastPk.size()) return null;
+        try {
+            List<Object> ret = new ArrayList<>();
+            for (int i = 0; i < lastPk.size(); i++) {
+                Column column = table.getColumn(primaryKey.getColumns().get(i));
+                ret.add(column.getColumnType().parse(lastPk.get(i)));
+            }
+            log.info("Resuming {} after {}", tableName.toQualifiedName(), lastPk);
+            return ret;
+        } catch (RuntimeException e) {
+            log.warn("Cannot resume {} after {}: {}", tableName.toQualifiedName(), lastPk, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sorts the tables by their estimated number of rows, the tables without an estimate are downloaded last
+     */
+    private List<TableName> sortLargestFirst(Collection<TableName> tableNames) {
+        Set<String> catalogs = new HashSet<>();
+        tableNames.forEach(tableName -> catalogs.add(tableName.getCatalog()));
+        for (String catalog : catalogs) {
+            if (catalog == null) continue;
+            Map<TableName, Long> catalogRowCounts = database.getEstimatedRowCounts(catalog);
+            if (catalogRowCounts != null) {
+                estimatedRowCounts.putAll(catalogRowCounts);
+            }
+        }
+        List<TableName> ret = new ArrayList<>(tableNames);
+        ret.sort(Comparator.comparingLong((TableName tableName) -> estimatedRowCounts.getOrDefault(tableName, -1L)).reversed());
+        return ret;
+    }
+}
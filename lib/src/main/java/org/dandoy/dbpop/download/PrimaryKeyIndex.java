@@ -0,0 +1,244 @@
+package org.dandoy.dbpop.download;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.FeatureFlags;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sidecar file of a CSV file that lists the primary keys of its records, so that TablePrimaryKeys doesn't have to parse the CSV file.
+ * <p>
+ * The header holds the length and the last modification time of the CSV file when the index was completed,
+ * an index that doesn't match its CSV file is ignored.
+ * The header is followed by the keys: the number of values as a var-int, then each value as a var-int of its length plus one
+ * (0 for null) followed by its UTF-8 bytes.
+ */
+@Slf4j
+public class PrimaryKeyIndex {
+    public static final String SUFFIX = ".pkidx";
+    private static final int MAGIC = 0x44425049; // DBPI
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final long INCOMPLETE = -1;
+
+    public static File getIndexFile(File csvFile) {
+        return new File(csvFile.getParentFile(), csvFile.getName() + SUFFIX);
+    }
+
+    public static boolean isIndexFile(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    public static void deleteIndex(File csvFile) {
+        //noinspection ResultOfMethodCallIgnored
+        getIndexFile(csvFile).delete();
+    }
+
+    /**
+     * @return true if the index of the CSV file is complete and matches the CSV file
+     */
+    static boolean isValid(File csvFile) {
+        File indexFile = getIndexFile(csvFile);
+        if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE) return false;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), HEADER_SIZE))) {
+            return inputStream.readInt() == MAGIC &&
+                   inputStream.readInt() == VERSION &&
+                   inputStream.readLong() == csvFile.length() &&
+                   inputStream.readLong() == csvFile.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the primary keys of a CSV file from its index.
+     *
+     * @return false if there is no valid index, the CSV file must then be parsed
+     */
+    public static boolean read(File csvFile, Consumer<List<String>> consumer) {
+        if (!FeatureFlags.primaryKeyIndex) return false;
+        if (!isValid(csvFile)) return false;
+        File indexFile = getIndexFile(csvFile);
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) return false;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.position(HEADER_SIZE);
+            byte[] bytes = new byte[256];
+            while (buffer.hasRemaining()) {
+                int count = readVarInt(buffer);
+                List<String> key = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int length = readVarInt(buffer) - 1;
+                    if (length < 0) {
+                        key.add(null);
+                    } else {
+                        if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+                        buffer.get(bytes, 0, length);
+                        key.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                    }
+                }
+                consumer.accept(key);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read the primary key index {}: {}", indexFile, e.toString());
+            return false;
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    /**
+     * Opens the index of a CSV file to add the keys of the records appended to the CSV file.
+     * The index is marked as incomplete until {@link Writer#commit()}.
+     *
+     * @param rebuild true to start a new index of an existing CSV file, the caller adds all its keys
+     * @return null if the index cannot be maintained because the existing CSV file has no valid index
+     */
+    @Nullable
+    public static Writer openWriter(File csvFile, boolean rebuild) {
+        if (!FeatureFlags.primaryKeyIndex) return null;
+        File indexFile = getIndexFile(csvFile);
+        boolean newIndex = rebuild || !csvFile.exists() || csvFile.length() == 0;
+        if (!newIndex && !isValid(csvFile)) {
+            deleteIndex(csvFile);
+            return null;
+        }
+        try {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "rw")) {
+                if (newIndex) randomAccessFile.setLength(0);
+                writeHeader(randomAccessFile, INCOMPLETE, INCOMPLETE);
+            }
+            return new Writer(csvFile, indexFile);
+        } catch (IOException e) {
+            log.warn("Cannot write the primary key index {}: {}", indexFile, e.toString());
+            deleteIndex(csvFile);
+            return null;
+        }
+    }
+
+    private static void writeHeader(RandomAccessFile randomAccessFile, long csvLength, long csvLastModified) throws IOException {
+        randomAccessFile.seek(0);
+        randomAccessFile.writeInt(MAGIC);
+        randomAccessFile.writeInt(VERSION);
+        randomAccessFile.writeLong(csvLength);
+        randomAccessFile.writeLong(csvLastModified);
+    }
+
+    /**
+     * Appends keys to an index.
+     * An I/O error doesn't fail the download, the index is deleted instead.
+     */
+    public static class Writer implements AutoCloseable {
+        private final File csvFile;
+        private final File indexFile;
+        private final OutputStream outputStream;
+        private final byte[] varInt = new byte[5];
+        private boolean failed;
+        private boolean closed;
+
+        private Writer(File csvFile, File indexFile) throws IOException {
+            this.csvFile = csvFile;
+            this.indexFile = indexFile;
+            this.outputStream = new BufferedOutputStream(new FileOutputStream(indexFile, true), 65536);
+        }
+
+        public void add(List<String> key) {
+            if (failed) return;
+            try {
+                writeVarInt(key.size());
+                for (String value : key) {
+                    if (value == null) {
+                        writeVarInt(0);
+                    } else {
+                        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                        writeVarInt(bytes.length + 1);
+                        outputStream.write(bytes);
+                    }
+                }
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        /**
+         * Appends the keys of the index of a CSV file whose records have been appended to this CSV file
+         */
+        public void appendIndex(File recordsFile) {
+            if (failed) return;
+            if (!isValid(recordsFile)) {
+                failed(new IOException("No valid index for " + recordsFile));
+                return;
+            }
+            try (InputStream inputStream = new FileInputStream(getIndexFile(recordsFile))) {
+                inputStream.skipNBytes(HEADER_SIZE);
+                inputStream.transferTo(outputStream);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            int pos = 0;
+            while ((value & ~0x7F) != 0) {
+                varInt[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            varInt[pos++] = (byte) value;
+            outputStream.write(varInt, 0, pos);
+        }
+
+        private void failed(IOException e) {
+            log.warn("Cannot write the primary key index {}: {}", indexFile, e.toString());
+            failed = true;
+        }
+
+        /**
+         * Marks the index as matching the CSV file, which must have been closed
+         */
+        public void commit() {
+            close();
+            if (failed) {
+                deleteIndex(csvFile);
+                return;
+            }
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "rw")) {
+                writeHeader(randomAccessFile, csvFile.length(), csvFile.lastModified());
+            } catch (IOException e) {
+                failed(e);
+                deleteIndex(csvFile);
+            }
+        }
+
+        /**
+         * Closes the index without committing it, it remains incomplete
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+}
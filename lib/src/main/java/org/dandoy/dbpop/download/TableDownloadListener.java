@@ -0,0 +1,17 @@
+package org.dandoy.dbpop.download;
+
+import org.dandoy.dbpop.database.TableName;
+
+/**
+ * Reports the progress of a ParallelTableDownloader.
+ * The methods are called from the download threads.
+ */
+public interface TableDownloadListener {
+    default void tableStarted(TableName tableName) {}
+
+    /**
+     * @param completed the number of tables completed so far
+     * @param total     the number of tables to download
+     */
+    default void tableDownloaded(TableName tableName, int rows, long millis, int completed, int total) {}
+}
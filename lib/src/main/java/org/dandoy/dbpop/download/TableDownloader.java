@@ -5,7 +5,10 @@ import lombok.Setter;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.database.*;
+import org.dandoy.dbpop.datasets.DatasetSettings;
 import org.dandoy.dbpop.datasets.Datasets;
+import org.dandoy.dbpop.upload.BinaryColumnType;
+import org.dandoy.dbpop.upload.BinaryDataFile;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
@@ -13,35 +16,50 @@ import java.io.IOException;
 import java.io.Reader;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 @Slf4j
 public class TableDownloader implements AutoCloseable {
     private static final int MAX_LENGTH = 1024 * 32;
+    private final Database database;
+    private final Table table;
     private final TableName tableName;
     private final TablePrimaryKeys tablePrimaryKeys;
     private final TableFetcher tableFetcher;
     private final DeferredCsvPrinter csvPrinter;
+    private final File file;
+    private final List<BinaryColumnType> binaryColumnTypes;
     private final ExecutionContext executionContext;
     private final TableExpressions tableExpressions;
     private final List<SelectedColumn> selectedColumns;
     private final List<Consumer<ResultSet>> consumers = new ArrayList<>();
 
-    private TableDownloader(TableName tableName,
+    private TableDownloader(Database database,
+                            Table table,
                             TablePrimaryKeys tablePrimaryKeys,
                             TableFetcher tableFetcher,
                             List<SelectedColumn> selectedColumns,
                             @Nullable DeferredCsvPrinter csvPrinter,
+                            File file,
+                            @Nullable List<BinaryColumnType> binaryColumnTypes,
                             ExecutionContext executionContext,
                             TableExpressions tableExpressions) {
-        this.tableName = tableName;
+        this.database = database;
+        this.table = table;
+        this.tableName = table.getTableName();
         this.tablePrimaryKeys = tablePrimaryKeys;
         this.tableFetcher = tableFetcher;
         this.selectedColumns = selectedColumns;
         this.csvPrinter = csvPrinter;
+        this.file = file;
+        this.binaryColumnTypes = binaryColumnTypes;
         this.executionContext = executionContext;
         this.tableExpressions = tableExpressions;
-        this.consumers.add(this::consumeResultSet);
+        this.consumers.add(resultSet -> consumeResultSet(resultSet, csvPrinter));
     }
 
     public static Builder builder() {
@@ -65,11 +83,17 @@ public class TableDownloader implements AutoCloseable {
         }
 
         DeferredCsvPrinter csvPrinter = null;
+        List<BinaryColumnType> binaryColumnTypes = null;
         if (executionMode == ExecutionMode.SAVE) {
-            csvPrinter = outputFile.createCsvPrinter();
+            csvPrinter = outputFile.createCsvPrinter(tablePrimaryKeys != null);
+            if (DatasetSettings.isBinary(datasetsDirectory, dataset)) {
+                binaryColumnTypes = selectedColumns.stream()
+                        .map(it -> it == null ? BinaryColumnType.STRING : BinaryColumnType.of(it.columnType(), it.binary()))
+                        .toList();
+            }
         }
 
-        return new TableDownloader(tableName, tablePrimaryKeys, tableFetcher, selectedColumns, csvPrinter, executionContext, tableExpressions);
+        return new TableDownloader(database, table, tablePrimaryKeys, tableFetcher, selectedColumns, csvPrinter, outputFile.getFile(), binaryColumnTypes, executionContext, tableExpressions);
     }
 
     private static List<SelectedColumn> filterSelectedColumns(List<SelectedColumn> selectedColumns, List<String> headers) {
@@ -89,8 +113,17 @@ public class TableDownloader implements AutoCloseable {
 
     @Override
     public void close() {
-        if (csvPrinter != null) csvPrinter.close();
-        tableFetcher.close();
+        try {
+            if (csvPrinter != null) {
+                csvPrinter.close();
+                if (binaryColumnTypes != null && file.exists()) {
+                    // The binary file is converted from the complete CSV file, which includes the rows of the previous downloads
+                    BinaryDataFile.writeBinaryFile(file, binaryColumnTypes);
+                }
+            }
+        } finally {
+            tableFetcher.close();
+        }
     }
 
     @Override
@@ -122,6 +155,133 @@ public class TableDownloader implements AutoCloseable {
         tableFetcher.execute(Collections.emptySet(), this::dispatchResultSet);
     }
 
+    /**
+     * Download the whole table in ranges of primary keys that are fetched concurrently on their own connections.
+     * Each range is spooled to a temporary file and the files are appended in primary key order.
+     * Falls back to a single query when the table cannot be split.
+     */
+    public void download(long estimatedRowCount, int chunkCount, int parallelism) {
+        download(estimatedRowCount, chunkCount, parallelism, null, pk -> {});
+    }
+
+    /**
+     * Download the rows after a primary key in ranges of primary keys.
+     *
+     * @param lowerPk           the rows up to that primary key have already been downloaded, null to download the whole table
+     * @param primaryKeyWritten called with the last primary key of each range once the range has been written to the CSV file
+     */
+    public void download(long estimatedRowCount, int chunkCount, int parallelism, @Nullable List<Object> lowerPk, Consumer<List<String>> primaryKeyWritten) {
+        if (csvPrinter == null || consumers.size() > 1 || tableExpressions != null) {
+            download();
+            return;
+        }
+        List<List<Object>> boundaries = database.getPrimaryKeyBoundaries(table, estimatedRowCount, chunkCount, lowerPk);
+        if (boundaries == null || boundaries.isEmpty()) {
+            if (lowerPk == null) {
+                download();
+                return;
+            }
+            boundaries = Collections.emptyList();
+        }
+        log.info("Downloading {} in {} chunks", tableName.toQualifiedName(), boundaries.size() + 1);
+
+        int threadCount = Math.min(parallelism, boundaries.size() + 1);
+        List<Database> databases = new ArrayList<>();
+        BlockingQueue<Database> availableDatabases = new ArrayBlockingQueue<>(threadCount);
+        List<File> chunkFiles = new ArrayList<>();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "Chunk-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                Database chunkDatabase = Database.createDatabase(database.getConnectionBuilder());
+                databases.add(chunkDatabase);
+                availableDatabases.add(chunkDatabase);
+            }
+
+            List<Future<Chunk>> futures = new ArrayList<>();
+            for (int i = 0; i <= boundaries.size(); i++) {
+                List<Object> chunkLowerPk = i == 0 ? lowerPk : boundaries.get(i - 1);
+                List<Object> chunkUpperPk = i == boundaries.size() ? null : boundaries.get(i);
+                File chunkFile = File.createTempFile("dbpop-" + tableName.getTable() + "-", ".csv.part");
+                chunkFiles.add(chunkFile);
+                futures.add(executorService.submit(() -> {
+                    if (!executionContext.keepRunning()) return new Chunk(chunkFile, null, false);
+                    Database chunkDatabase = availableDatabases.take();
+                    try {
+                        return downloadChunk(chunkDatabase, chunkLowerPk, chunkUpperPk, chunkFile);
+                    } finally {
+                        availableDatabases.add(chunkDatabase);
+                    }
+                }));
+            }
+
+            for (Future<Chunk> future : futures) {
+                try {
+                    Chunk chunk = future.get();
+                    if (chunk.file().length() > 0) {
+                        csvPrinter.append(chunk.file());
+                    }
+                    //noinspection ResultOfMethodCallIgnored
+                    chunk.file().delete();
+                    PrimaryKeyIndex.deleteIndex(chunk.file());
+                    if (chunk.lastPk() != null) {
+                        primaryKeyWritten.accept(chunk.lastPk());
+                    }
+                    if (!chunk.complete()) {
+                        // The next chunks would leave a hole in the CSV file after the rows of this one
+                        futures.forEach(it -> it.cancel(true));
+                        break;
+                    }
+                } catch (ExecutionException e) {
+                    futures.forEach(it -> it.cancel(true));
+                    throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executorService.shutdownNow();
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            databases.forEach(Database::close);
+            //noinspection ResultOfMethodCallIgnored
+            chunkFiles.forEach(File::delete);
+            chunkFiles.forEach(PrimaryKeyIndex::deleteIndex);
+        }
+    }
+
+    private Chunk downloadChunk(Database chunkDatabase, List<Object> lowerPk, List<Object> upperPk, File chunkFile) {
+        AtomicReference<List<String>> lastPk = new AtomicReference<>();
+        AtomicBoolean stopped = new AtomicBoolean();
+        try (TableFetcher chunkFetcher = TableFetcher.createRangeTableFetcher(chunkDatabase, table, lowerPk, upperPk, executionContext);
+             DeferredCsvPrinter chunkPrinter = new DeferredCsvPrinter(chunkFile, null, tablePrimaryKeys != null)) {
+            chunkFetcher.execute(Collections.emptySet(), resultSet -> {
+                lastPk.set(consumeResultSet(resultSet, chunkPrinter));
+                if (executionContext.keepRunning()) return true;
+                stopped.set(true);
+                return false;
+            });
+        }
+        return new Chunk(chunkFile, lastPk.get(), !stopped.get());
+    }
+
+    /**
+     * @param lastPk   the primary key of the last row of the range, null if the range is empty
+     * @param complete false if the download stopped before the end of the range
+     */
+    private record Chunk(File file, @Nullable List<String> lastPk, boolean complete) {}
+
     private boolean dispatchResultSet(ResultSet resultSet) {
         for (Consumer<ResultSet> consumer : consumers) {
             consumer.accept(resultSet);
@@ -129,11 +289,14 @@ public class TableDownloader implements AutoCloseable {
         return executionContext.keepRunning();
     }
 
-    private void consumeResultSet(ResultSet resultSet) {
+    /**
+     * @return the primary key of the row
+     */
+    private List<String> consumeResultSet(ResultSet resultSet, @Nullable DeferredCsvPrinter csvPrinter) {
         List<String> pkRow = extractPrimaryKey(resultSet);
         if (isExistingPk(pkRow)) {
             executionContext.rowSkipped(tableName);
-            return;
+            return pkRow;
         }
 
         log.debug("{} prints a row", tableName);
@@ -174,11 +337,12 @@ public class TableDownloader implements AutoCloseable {
                         downloadString(resultSet, csvPrinter, columnName, jdbcPos);
                     }
                 }
-                csvPrinter.println();
+                csvPrinter.println(pkRow);
             } catch (SQLException | IOException e) {
                 throw new RuntimeException(e);
             }
         }
+        return pkRow;
     }
 
     private List<String> extractPrimaryKey(ResultSet resultSet) {
@@ -191,7 +355,9 @@ public class TableDownloader implements AutoCloseable {
      */
     private boolean isExistingPk(List<String> pkRow) {
         if (tablePrimaryKeys == null) return false;
-        return !tablePrimaryKeys.addPrimaryKey(pkRow);
+        synchronized (tablePrimaryKeys) {
+            return !tablePrimaryKeys.addPrimaryKey(pkRow);
+        }
     }
 
     private void downloadClob(ResultSet resultSet, DeferredCsvPrinter csvPrinter, String columnName, int jdbcPos) throws SQLException, IOException {
@@ -3,8 +3,10 @@ package org.dandoy.dbpop.download;
 import lombok.extern.slf4j.Slf4j;
 import org.dandoy.dbpop.database.ColumnType;
 import org.dandoy.dbpop.database.Database;
+import org.dandoy.dbpop.database.KeySetLookup;
 import org.dandoy.dbpop.database.PrimaryKey;
 import org.dandoy.dbpop.database.Table;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.util.*;
@@ -15,6 +17,10 @@ import java.util.stream.Stream;
 @Slf4j
 public class TableFetcher implements AutoCloseable {
     public static final int BATCH_SIZE = 100;
+    /**
+     * Maximum number of keys sent in one KeySetLookup query
+     */
+    public static final int KEY_SET_BATCH_SIZE = 10_000;
     private final Database database;
     private final String sql;
     private final PreparedStatement preparedStatement;
@@ -22,6 +28,8 @@ public class TableFetcher implements AutoCloseable {
     private final int batchSize;
     private final List<ColumnType> pkColumnTypes;
     private final ExecutionContext executionContext;
+    private KeySetLookup keySetLookup;
+    private PreparedStatement keySetStatement;
 
     private TableFetcher(Database database, String sql, PreparedStatement preparedStatement, int skipBind, int batchSize, List<ColumnType> pkColumnTypes, ExecutionContext executionContext) {
         this.database = database;
@@ -33,6 +41,11 @@ public class TableFetcher implements AutoCloseable {
         this.executionContext = executionContext;
     }
 
+    /**
+     * When filteredColumns is not empty, the keys are matched with a chain of (column = ?) OR (column = ?)...
+     * When the database supports it, a second query matches the keys with a KeySetLookup,
+     * it is used when there are too many keys for a single query of the chain.
+     */
     public static TableFetcher createTableFetcher(Database database, Table table, List<TableJoin> tableJoins, List<TableQuery> where, List<String> filteredColumns, ExecutionContext executionContext) {
         String sql = ("SELECT %s.*\nFROM %s").formatted(
                 database.quote(table.getTableName()),
@@ -67,7 +80,9 @@ public class TableFetcher implements AutoCloseable {
         String childFilterClause = "";
         int batchSize = Integer.MAX_VALUE;
         List<ColumnType> pkColumnTypes = null;
+        KeySetLookup keySetLookup = null;
         if (!filteredColumns.isEmpty()) {
+            keySetLookup = database.createKeySetLookup(table, filteredColumns);
             String pkWhereClause = filteredColumns.stream()
                     .map(filteredColumn -> "(%s.%s = ?)".formatted(
                             database.quote(table.getTableName()),
@@ -80,8 +95,25 @@ public class TableFetcher implements AutoCloseable {
                     .collect(Collectors.joining("\nOR "));
             pkColumnTypes = filteredColumns.stream().map(it -> table.getColumn(it).getColumnType()).toList();
         }
-        if (!whereClause.isEmpty() || !childFilterClause.isEmpty()) {
-            sql = sql + "\nWHERE " + Stream.of(whereClause, childFilterClause)
+        String selectSql = sql;
+        sql = toSql(selectSql, whereClause, childFilterClause, table);
+        log.debug(sql);
+
+        PreparedStatement preparedStatement = prepareStatement(database, sql, where);
+        TableFetcher tableFetcher = new TableFetcher(database, sql, preparedStatement, where.size(), batchSize, pkColumnTypes, executionContext);
+        if (keySetLookup != null) {
+            String keySetSql = toSql(selectSql, whereClause, keySetLookup.getCondition(), table);
+            log.debug(keySetSql);
+            tableFetcher.keySetLookup = keySetLookup;
+            tableFetcher.keySetStatement = prepareStatement(database, keySetSql, where);
+        }
+        return tableFetcher;
+    }
+
+    private static String toSql(String selectSql, String whereClause, String filterClause, Table table) {
+        String sql = selectSql;
+        if (!whereClause.isEmpty() || !filterClause.isEmpty()) {
+            sql = sql + "\nWHERE " + Stream.of(whereClause, filterClause)
                     .filter(it -> !it.isEmpty())
                     .map(it -> "(" + it + ")")
                     .collect(Collectors.joining(" AND "));
@@ -95,16 +127,53 @@ public class TableFetcher implements AutoCloseable {
                     String.join(",", primaryKey.getColumns())
             );
         }
+        return sql;
+    }
 
-        log.debug(sql);
-
+    private static PreparedStatement prepareStatement(Database database, String sql, List<TableQuery> where) {
         try {
             Connection connection = database.getConnection();
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             for (int i = 0; i < where.size(); i++) {
                 preparedStatement.setString(i + 1, where.get(i).value());
             }
-            return new TableFetcher(database, sql, preparedStatement, where.size(), batchSize, pkColumnTypes, executionContext);
+            return preparedStatement;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute " + sql, e);
+        }
+    }
+
+    /**
+     * Fetches the rows of a table where lowerPk &lt; pk &lt;= upperPk, sorted by primary key.
+     *
+     * @param lowerPk the exclusive lower bound, null for the first range
+     * @param upperPk the inclusive upper bound, null for the last range
+     */
+    public static TableFetcher createRangeTableFetcher(Database database, Table table, @Nullable List<Object> lowerPk, @Nullable List<Object> upperPk, ExecutionContext executionContext) {
+        PrimaryKey primaryKey = table.getPrimaryKey();
+        List<Object> values = new ArrayList<>();
+        String rangeCondition = primaryKey.toRangeCondition(database, table.getTableName(), lowerPk, upperPk, values);
+        String sql = "SELECT %s.*\nFROM %s".formatted(
+                database.quote(table.getTableName()),
+                database.quote(table.getTableName())
+        );
+        if (rangeCondition != null) {
+            sql += "\nWHERE " + rangeCondition;
+        }
+        sql = "%s\nORDER BY %s".formatted(
+                sql,
+                String.join(",", primaryKey.getColumns())
+        );
+
+        log.debug(sql);
+
+        try {
+            Connection connection = database.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            for (int i = 0; i < values.size(); i++) {
+                preparedStatement.setObject(i + 1, values.get(i));
+            }
+            return new TableFetcher(database, sql, preparedStatement, values.size(), Integer.MAX_VALUE, null, executionContext);
         } catch (SQLException e) {
             throw new RuntimeException("Failed to execute " + sql, e);
         }
@@ -113,6 +182,7 @@ public class TableFetcher implements AutoCloseable {
     @Override
     public void close() {
         try {
+            if (keySetStatement != null) keySetStatement.close();
             preparedStatement.close();
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -121,7 +191,14 @@ public class TableFetcher implements AutoCloseable {
 
     public void execute(Set<List<Object>> pks, Predicate<ResultSet> predicate) {
         try {
-            if (!pks.isEmpty()) {
+            if (keySetStatement != null && pks.size() > batchSize) {
+                List<List<Object>> pks2 = new ArrayList<>(pks);
+                for (int start = 0; start < pks2.size(); start += KEY_SET_BATCH_SIZE) {
+                    List<List<Object>> todo = pks2.subList(start, Math.min(start + KEY_SET_BATCH_SIZE, pks2.size()));
+                    keySetLookup.bind(keySetStatement, skipBind + 1, todo);
+                    if (!executeQuery(keySetStatement, predicate)) break;
+                }
+            } else if (!pks.isEmpty()) {
                 List<List<Object>> pks2 = new LinkedList<>(pks);
                 while (!pks2.isEmpty()) {
                     int split = Math.min(batchSize, pks2.size());
@@ -155,16 +232,24 @@ public class TableFetcher implements AutoCloseable {
         if (!pks.isEmpty()) {
             bind(pks);
         }
+        executeQuery(preparedStatement, consumer);
+    }
+
+    /**
+     * @return false if the row count limit has been reached or the consumer has stopped
+     */
+    private boolean executeQuery(PreparedStatement statement, Predicate<ResultSet> consumer) throws SQLException {
         int rowsLeft = executionContext.getTotalRowCountLimit() - executionContext.getTotalRowCount();
-        if (rowsLeft <= 0) return;
-        preparedStatement.setMaxRows(rowsLeft);
-        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        if (rowsLeft <= 0) return false;
+        statement.setMaxRows(rowsLeft);
+        try (ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
                 if (!consumer.test(resultSet)) {
-                    break;
+                    return false;
                 }
             }
         }
+        return true;
     }
 
     public List<SelectedColumn> getSelectedColumns() {
@@ -2,25 +2,27 @@ package org.dandoy.dbpop.download;
 
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.dandoy.dbpop.database.Column;
+import org.dandoy.dbpop.database.ColumnType;
 import org.dandoy.dbpop.database.PrimaryKey;
 import org.dandoy.dbpop.database.Table;
 import org.dandoy.dbpop.datasets.Datasets;
 import org.dandoy.dbpop.utils.DbPopUtils;
+import org.dandoy.dbpop.utils.EncodedKeySet;
+import org.dandoy.dbpop.utils.LongHashSet;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class TablePrimaryKeys {
-    private final Set<List<String>> pkValues;
+    private final PkValues pkValues;
     private final List<SelectedColumn> selectedPkColumns;
 
-    private TablePrimaryKeys(Set<List<String>> pkValues, List<SelectedColumn> selectedPkColumns) {
+    private TablePrimaryKeys(PkValues pkValues, List<SelectedColumn> selectedPkColumns) {
         this.pkValues = pkValues;
         this.selectedPkColumns = selectedPkColumns;
     }
@@ -28,7 +30,7 @@ public class TablePrimaryKeys {
     public static TablePrimaryKeys createTablePrimaryKeys(File datasetsDirectory, String dataset, Table table, List<SelectedColumn> selectedColumns) {
         PrimaryKey primaryKey = table.getPrimaryKey();
         if (primaryKey == null) return null;
-        Set<List<String>> pkValues = new HashSet<>();
+        PkValues pkValues = new PkValues(isIntegral(table, primaryKey));
         List<SelectedColumn> selectedPkColumns = primaryKey.getColumns().stream()
                 .map(columnName -> SelectedColumn.findByName(selectedColumns, columnName))
                 .toList();
@@ -39,10 +41,25 @@ public class TablePrimaryKeys {
         return new TablePrimaryKeys(pkValues, selectedPkColumns);
     }
 
-    private static void readPrimaryKeys(Set<List<String>> pkValues, File datasetsDirectory, Table table, String dataset) {
+    /**
+     * @return true if the primary key is a single column that usually holds integers
+     */
+    private static boolean isIntegral(Table table, PrimaryKey primaryKey) {
+        List<String> columns = primaryKey.getColumns();
+        if (columns.size() != 1) return false;
+        Column column = table.getColumn(columns.get(0));
+        if (column == null) return false;
+        ColumnType columnType = column.getColumnType();
+        return columnType == ColumnType.INTEGER || columnType == ColumnType.BIG_DECIMAL;
+    }
+
+    private static void readPrimaryKeys(PkValues pkValues, File datasetsDirectory, Table table, String dataset) {
         File outputFile = DbPopUtils.getOutputFile(datasetsDirectory, dataset, table.getTableName());
         if (outputFile.exists()) {
-            try (CSVParser csvParser = DbPopUtils.createCsvParser(outputFile)) {
+            if (PrimaryKeyIndex.read(outputFile, pkValues::add)) return;
+            // No index or an outdated one, parse the file and index it for the next time
+            try (CSVParser csvParser = DbPopUtils.createCsvParser(outputFile);
+                 PrimaryKeyIndex.Writer indexWriter = PrimaryKeyIndex.openWriter(outputFile, true)) {
                 PrimaryKey primaryKey = table.getPrimaryKey();
                 List<String> columns = primaryKey.getColumns();
                 for (CSVRecord csvRecord : csvParser) {
@@ -52,7 +69,9 @@ public class TablePrimaryKeys {
                         values.add(value);
                     }
                     pkValues.add(values);
+                    if (indexWriter != null) indexWriter.add(values);
                 }
+                if (indexWriter != null) indexWriter.commit();
             } catch (IOException e) {
                 throw new RuntimeException("Failed to read " + outputFile);
             }
@@ -75,4 +94,44 @@ public class TablePrimaryKeys {
     public boolean addPrimaryKey(List<String> pkRow) {
         return pkValues.add(pkRow);
     }
+
+    /**
+     * The primary keys already downloaded.
+     * The keys of a single integer column are kept in a primitive set, the other keys are encoded.
+     */
+    private static class PkValues {
+        private final LongHashSet longValues;
+        private final EncodedKeySet encodedValues = new EncodedKeySet();
+
+        PkValues(boolean integral) {
+            this.longValues = integral ? new LongHashSet() : null;
+        }
+
+        boolean add(List<String> pkRow) {
+            if (longValues != null) {
+                String value = pkRow.get(0);
+                if (isCanonicalLong(value)) {
+                    return longValues.add(Long.parseLong(value));
+                }
+            }
+            return encodedValues.add(pkRow);
+        }
+
+        /**
+         * Only the values that Long.toString() would produce can be stored as longs, "007" and "7" are different keys
+         */
+        private static boolean isCanonicalLong(String value) {
+            if (value == null) return false;
+            int length = value.length();
+            int start = value.startsWith("-") ? 1 : 0;
+            int digits = length - start;
+            if (digits < 1 || digits > 18) return false; // 19 digits may overflow
+            if (value.charAt(start) == '0') return digits == 1 && start == 0;
+            for (int i = start; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9') return false;
+            }
+            return true;
+        }
+    }
 }
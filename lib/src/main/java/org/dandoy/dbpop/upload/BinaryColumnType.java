@@ -0,0 +1,102 @@
+package org.dandoy.dbpop.upload;
+
+import org.dandoy.dbpop.database.ColumnType;
+import org.dandoy.dbpop.database.DefaultDatabase;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * The types of the columns of a BinaryDataFile.
+ * <p>
+ * A value is only stored in its binary form when formatting it gives back the exact text of the CSV cell,
+ * the other cells are stored as text, so that the conversions in both directions are lossless.
+ */
+public enum BinaryColumnType {
+    STRING,
+    LONG,
+    DECIMAL,
+    /**
+     * The seconds of the LocalDateTime at UTC, in the format of DefaultDatabase.DATE_TIME_FORMATTER
+     */
+    TIMESTAMP,
+    /**
+     * The milliseconds of the day, HH:mm:ss or HH:mm:ss.SSS
+     */
+    TIME,
+    /**
+     * The epoch day, yyyy-MM-dd
+     */
+    DATE,
+    /**
+     * The bytes of a base64 column
+     */
+    BYTES;
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter TIME_MILLIS_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final BinaryColumnType[] VALUES = values();
+
+    public static BinaryColumnType of(ColumnType columnType, boolean binary) {
+        if (binary) return BYTES;
+        if (columnType == ColumnType.INTEGER) return LONG;
+        if (columnType == ColumnType.BIG_DECIMAL) return DECIMAL;
+        if (columnType == ColumnType.TIMESTAMP) return TIMESTAMP;
+        if (columnType == ColumnType.TIME) return TIME;
+        if (columnType == ColumnType.DATE) return DATE;
+        return STRING;
+    }
+
+    static BinaryColumnType fromOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= VALUES.length) throw new RuntimeException("Invalid column type: " + ordinal);
+        return VALUES[ordinal];
+    }
+
+    /**
+     * @return the binary form of the text, null if the text is not in the canonical format of the type
+     */
+    @Nullable
+    public Object parse(String text) {
+        try {
+            Object value = switch (this) {
+                case STRING -> text;
+                case LONG -> Long.parseLong(text);
+                case DECIMAL -> new BigDecimal(text);
+                case TIMESTAMP -> LocalDateTime.parse(text, DefaultDatabase.DATE_TIME_FORMATTER).toEpochSecond(ZoneOffset.UTC);
+                case TIME -> (int) (LocalTime.parse(text, text.length() == 8 ? TIME_FORMATTER : TIME_MILLIS_FORMATTER).toNanoOfDay() / 1_000_000);
+                case DATE -> LocalDate.parse(text).toEpochDay();
+                case BYTES -> Base64.getDecoder().decode(text);
+            };
+            return text.equals(format(value)) ? value : null;
+        } catch (DateTimeParseException | IllegalArgumentException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the text of a value returned by {@link #parse(String)}
+     */
+    public String format(Object value) {
+        return switch (this) {
+            case STRING -> (String) value;
+            case LONG -> Long.toString((Long) value);
+            case DECIMAL -> ((BigDecimal) value).toPlainString();
+            case TIMESTAMP -> DefaultDatabase.DATE_TIME_FORMATTER.format(LocalDateTime.ofEpochSecond((Long) value, 0, ZoneOffset.UTC));
+            case TIME -> formatTime((Integer) value);
+            case DATE -> LocalDate.ofEpochDay((Long) value).toString();
+            case BYTES -> Base64.getEncoder().encodeToString((byte[]) value);
+        };
+    }
+
+    static String formatTime(int millisOfDay) {
+        LocalTime localTime = LocalTime.ofNanoOfDay(millisOfDay * 1_000_000L);
+        return (millisOfDay % 1000 == 0 ? TIME_FORMATTER : TIME_MILLIS_FORMATTER).format(localTime);
+    }
+}
@@ -0,0 +1,283 @@
+package org.dandoy.dbpop.upload;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.dandoy.dbpop.datasets.CsvCompression;
+import org.dandoy.dbpop.download.PrimaryKeyIndex;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sidecar file of a CSV file that holds its rows in a typed binary form, so that the populate doesn't have to parse the CSV file.
+ * The CSV file remains the source of truth: like the PrimaryKeyIndex, the header holds the length and the last modification time of
+ * the CSV file when the binary file was completed, a binary file that doesn't match its CSV file is ignored.
+ * <p>
+ * The header is followed by the schema: the number of columns, then the name and the BinaryColumnType of each column.
+ * The rows follow in groups: the number of rows of the group, then a block per column made of the length of the block
+ * followed by the cells of the column. A group of 0 rows ends the file.
+ * Each cell starts with a tag: null, a value in the binary form of the column type, or text.
+ */
+public class BinaryDataFile {
+    public static final String SUFFIX = ".dbpb";
+    static final int MAGIC = 0x44425042; // DBPB
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final byte TAG_NULL = 0;
+    static final byte TAG_VALUE = 1;
+    static final byte TAG_TEXT = 2;
+    private static final long INCOMPLETE = -1;
+    private static final int ROWS_PER_GROUP = 4096;
+    private static final Set<BinaryColumnType> INFERRED_TYPES = EnumSet.of(
+            BinaryColumnType.LONG,
+            BinaryColumnType.DECIMAL,
+            BinaryColumnType.TIMESTAMP,
+            BinaryColumnType.DATE,
+            BinaryColumnType.TIME
+    );
+
+    public static File getBinaryFile(File csvFile) {
+        return new File(csvFile.getParentFile(), csvFile.getName() + SUFFIX);
+    }
+
+    public static boolean isBinaryFile(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    public static void deleteBinaryFile(File csvFile) {
+        //noinspection ResultOfMethodCallIgnored
+        getBinaryFile(csvFile).delete();
+    }
+
+    /**
+     * @return true if the binary file of the CSV file is complete and matches the CSV file
+     */
+    public static boolean isValid(File csvFile) {
+        File binaryFile = getBinaryFile(csvFile);
+        if (!binaryFile.isFile() || binaryFile.length() < HEADER_SIZE) return false;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryFile), HEADER_SIZE))) {
+            return inputStream.readInt() == MAGIC &&
+                   inputStream.readInt() == VERSION &&
+                   inputStream.readLong() == csvFile.length() &&
+                   inputStream.readLong() == csvFile.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts a CSV file to its binary file.
+     *
+     * @param columnTypes the types of the columns of the CSV file, null to infer them from the values
+     */
+    public static void writeBinaryFile(File csvFile, @Nullable List<BinaryColumnType> columnTypes) {
+        long csvLength = csvFile.length();
+        long csvLastModified = csvFile.lastModified();
+        File binaryFile = getBinaryFile(csvFile);
+        try {
+            if (columnTypes == null) columnTypes = inferColumnTypes(csvFile);
+            try (DataReader dataReader = CsvDataReader.open(csvFile)) {
+                List<String> headerNames = dataReader.getHeaderNames();
+                if (headerNames.isEmpty()) columnTypes = List.of(); // An empty CSV file has no headers
+                if (columnTypes.size() != headerNames.size()) {
+                    throw new RuntimeException("Expected %d column types, got %d".formatted(headerNames.size(), columnTypes.size()));
+                }
+                try (Writer writer = new Writer(binaryFile, headerNames, columnTypes)) {
+                    while (dataReader.next()) {
+                        writer.add(dataReader);
+                    }
+                    writer.commit(csvLength, csvLastModified);
+                }
+            }
+        } catch (IOException e) {
+            deleteBinaryFile(csvFile);
+            throw new RuntimeException("Failed to convert " + csvFile, e);
+        } catch (RuntimeException e) {
+            deleteBinaryFile(csvFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Converts the binary file of a CSV file back to the CSV file, the binary file then matches the new CSV file.
+     */
+    public static void writeCsvFile(File csvFile) {
+        File binaryFile = getBinaryFile(csvFile);
+        CsvCompression csvCompression = CsvCompression.of(csvFile);
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile("dbpop-", csvCompression.getSuffix(), csvFile.getParentFile());
+            try (BinaryDataReader dataReader = BinaryDataReader.open(binaryFile);
+                 CSVPrinter csvPrinter = new CSVPrinter(
+                         csvCompression.newWriter(tempFile),
+                         CSVFormat.DEFAULT.builder()
+                                 .setNullString("")
+                                 .setHeader(dataReader.getHeaderNames().toArray(String[]::new))
+                                 .build()
+                 )) {
+                while (dataReader.next()) {
+                    for (int i = 0; i < dataReader.size(); i++) {
+                        csvPrinter.print(dataReader.get(i));
+                    }
+                    csvPrinter.println();
+                }
+            }
+            Files.move(tempFile.toPath(), csvFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            PrimaryKeyIndex.deleteIndex(csvFile);
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(binaryFile, "rw")) {
+                writeHeader(randomAccessFile, csvFile.length(), csvFile.lastModified());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to convert " + binaryFile, e);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            if (tempFile != null) tempFile.delete();
+        }
+    }
+
+    /**
+     * Picks for each column the first type that can hold all its values in binary form.
+     */
+    private static List<BinaryColumnType> inferColumnTypes(File csvFile) throws IOException {
+        try (DataReader dataReader = CsvDataReader.open(csvFile)) {
+            List<String> headerNames = dataReader.getHeaderNames();
+            List<Set<BinaryColumnType>> candidates = new ArrayList<>();
+            for (String headerName : headerNames) {
+                candidates.add(new DataFileHeader(headerName).isBinary() ? EnumSet.of(BinaryColumnType.BYTES) : EnumSet.copyOf(INFERRED_TYPES));
+            }
+            boolean[] hasValues = new boolean[headerNames.size()];
+            while (dataReader.next()) {
+                for (int i = 0; i < candidates.size(); i++) {
+                    Set<BinaryColumnType> columnCandidates = candidates.get(i);
+                    if (columnCandidates.isEmpty() || i >= dataReader.size() || dataReader.isNull(i) || dataReader.isExpression(i)) continue;
+                    hasValues[i] = true;
+                    String text = dataReader.get(i);
+                    columnCandidates.removeIf(columnType -> columnType.parse(text) == null);
+                }
+            }
+            List<BinaryColumnType> columnTypes = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                Set<BinaryColumnType> columnCandidates = candidates.get(i);
+                columnTypes.add(hasValues[i] && !columnCandidates.isEmpty() ? columnCandidates.iterator().next() : BinaryColumnType.STRING);
+            }
+            return columnTypes;
+        }
+    }
+
+    private static void writeHeader(RandomAccessFile randomAccessFile, long csvLength, long csvLastModified) throws IOException {
+        randomAccessFile.seek(0);
+        randomAccessFile.writeInt(MAGIC);
+        randomAccessFile.writeInt(VERSION);
+        randomAccessFile.writeLong(csvLength);
+        randomAccessFile.writeLong(csvLastModified);
+    }
+
+    /**
+     * Writes a binary file one row at a time.
+     * The file is marked as incomplete until {@link #commit(long, long)}.
+     */
+    public static class Writer implements Closeable {
+        private final File binaryFile;
+        private final List<BinaryColumnType> columnTypes;
+        private final DataOutputStream outputStream;
+        private final ByteArrayOutputStream[] blocks;
+        private final DataOutputStream[] blockStreams;
+        private int rowCount;
+
+        public Writer(File binaryFile, List<String> headerNames, List<BinaryColumnType> columnTypes) throws IOException {
+            this.binaryFile = binaryFile;
+            this.columnTypes = columnTypes;
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryFile), 65536));
+            this.blocks = new ByteArrayOutputStream[columnTypes.size()];
+            this.blockStreams = new DataOutputStream[columnTypes.size()];
+            for (int i = 0; i < columnTypes.size(); i++) {
+                blocks[i] = new ByteArrayOutputStream();
+                blockStreams[i] = new DataOutputStream(blocks[i]);
+            }
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeLong(INCOMPLETE);
+            outputStream.writeLong(INCOMPLETE);
+            outputStream.writeInt(columnTypes.size());
+            for (int i = 0; i < columnTypes.size(); i++) {
+                outputStream.writeUTF(headerNames.get(i));
+                outputStream.writeByte(columnTypes.get(i).ordinal());
+            }
+        }
+
+        public void add(DataRecord dataRecord) throws IOException {
+            for (int i = 0; i < columnTypes.size(); i++) {
+                writeCell(blockStreams[i], columnTypes.get(i), i < dataRecord.size() ? dataRecord.get(i) : null);
+            }
+            if (++rowCount == ROWS_PER_GROUP) {
+                flushGroup();
+            }
+        }
+
+        private static void writeCell(DataOutputStream blockStream, BinaryColumnType columnType, @Nullable String text) throws IOException {
+            if (text == null) {
+                blockStream.writeByte(TAG_NULL);
+                return;
+            }
+            Object value = columnType.parse(text);
+            if (value == null) {
+                blockStream.writeByte(TAG_TEXT);
+                writeBytes(blockStream, text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            blockStream.writeByte(TAG_VALUE);
+            switch (columnType) {
+                case STRING -> writeBytes(blockStream, text.getBytes(StandardCharsets.UTF_8));
+                case LONG, TIMESTAMP, DATE -> blockStream.writeLong((Long) value);
+                case TIME -> blockStream.writeInt((Integer) value);
+                case DECIMAL -> {
+                    BigDecimal bigDecimal = (BigDecimal) value;
+                    blockStream.writeInt(bigDecimal.scale());
+                    writeBytes(blockStream, bigDecimal.unscaledValue().toByteArray());
+                }
+                case BYTES -> writeBytes(blockStream, (byte[]) value);
+            }
+        }
+
+        private static void writeBytes(DataOutputStream blockStream, byte[] bytes) throws IOException {
+            blockStream.writeInt(bytes.length);
+            blockStream.write(bytes);
+        }
+
+        private void flushGroup() throws IOException {
+            if (rowCount == 0) return;
+            outputStream.writeInt(rowCount);
+            for (ByteArrayOutputStream block : blocks) {
+                outputStream.writeInt(block.size());
+                block.writeTo(outputStream);
+                block.reset();
+            }
+            rowCount = 0;
+        }
+
+        /**
+         * Ends the file and records the CSV file it was converted from
+         */
+        public void commit(long csvLength, long csvLastModified) throws IOException {
+            flushGroup();
+            outputStream.writeInt(0);
+            outputStream.close();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(binaryFile, "rw")) {
+                writeHeader(randomAccessFile, csvLength, csvLastModified);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+}
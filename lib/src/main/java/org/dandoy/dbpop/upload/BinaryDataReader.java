@@ -0,0 +1,258 @@
+package org.dandoy.dbpop.upload;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.dandoy.dbpop.upload.BinaryDataFile.HEADER_SIZE;
+import static org.dandoy.dbpop.upload.BinaryDataFile.MAGIC;
+import static org.dandoy.dbpop.upload.BinaryDataFile.TAG_NULL;
+import static org.dandoy.dbpop.upload.BinaryDataFile.TAG_TEXT;
+import static org.dandoy.dbpop.upload.BinaryDataFile.TAG_VALUE;
+import static org.dandoy.dbpop.upload.BinaryDataFile.VERSION;
+
+/**
+ * Reads a BinaryDataFile.
+ * <p>
+ * The blocks of a row group are decoded column by column into primitive arrays,
+ * the typed getters return these values without going through text when the cell has the type of its column.
+ * The other cells are converted from their text, like CSV cells.
+ */
+public class BinaryDataReader implements DataReader {
+    private final DataInputStream inputStream;
+    private final List<String> headerNames;
+    private final ColumnBlock[] columnBlocks;
+    private byte[] block = new byte[65536];
+    private int rowCount;
+    private int row;
+    private boolean ended;
+
+    private BinaryDataReader(DataInputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+        if (inputStream.readInt() != MAGIC) throw new IOException("Not a binary data file");
+        if (inputStream.readInt() != VERSION) throw new IOException("Unsupported binary data file version");
+        inputStream.skipNBytes(HEADER_SIZE - 8);
+        int columnCount = inputStream.readInt();
+        List<String> headerNames = new ArrayList<>(columnCount);
+        columnBlocks = new ColumnBlock[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            headerNames.add(inputStream.readUTF());
+            columnBlocks[i] = new ColumnBlock(BinaryColumnType.fromOrdinal(inputStream.readByte()));
+        }
+        this.headerNames = Collections.unmodifiableList(headerNames);
+    }
+
+    public static BinaryDataReader open(File binaryFile) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryFile), 65536));
+        try {
+            return new BinaryDataReader(inputStream);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    @Override
+    public List<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (++row < rowCount) return true;
+        if (ended) return false;
+        rowCount = inputStream.readInt();
+        if (rowCount == 0) {
+            ended = true;
+            return false;
+        }
+        for (ColumnBlock columnBlock : columnBlocks) {
+            int length = inputStream.readInt();
+            if (length > block.length) block = new byte[Math.max(length, block.length * 2)];
+            inputStream.readFully(block, 0, length);
+            columnBlock.decode(ByteBuffer.wrap(block, 0, length), rowCount);
+        }
+        row = 0;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return columnBlocks.length;
+    }
+
+    private boolean isValue(ColumnBlock columnBlock, BinaryColumnType columnType) {
+        return columnBlock.columnType == columnType && columnBlock.tags[row] == TAG_VALUE;
+    }
+
+    @Override
+    public String get(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        byte tag = columnBlock.tags[row];
+        if (tag == TAG_NULL) return null;
+        if (tag == TAG_TEXT) return (String) columnBlock.objects[row];
+        return switch (columnBlock.columnType) {
+            case STRING, DECIMAL, BYTES -> columnBlock.columnType.format(columnBlock.objects[row]);
+            case LONG, TIMESTAMP, DATE -> columnBlock.columnType.format(columnBlock.longs[row]);
+            case TIME -> BinaryColumnType.formatTime((int) columnBlock.longs[row]);
+        };
+    }
+
+    /**
+     * The length of a typed cell is the length of its text, estimated for the numbers
+     */
+    @Override
+    public int getLength(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        byte tag = columnBlock.tags[row];
+        if (tag == TAG_NULL) return 0;
+        if (tag == TAG_TEXT) return ((String) columnBlock.objects[row]).length();
+        return switch (columnBlock.columnType) {
+            case STRING -> ((String) columnBlock.objects[row]).length();
+            case BYTES -> (((byte[]) columnBlock.objects[row]).length + 2) / 3 * 4;
+            case LONG, DECIMAL -> 10;
+            case TIMESTAMP -> 19;
+            case TIME -> 12;
+            case DATE -> 10;
+        };
+    }
+
+    @Override
+    public boolean isNull(int pos) {
+        return columnBlocks[pos].tags[row] == TAG_NULL;
+    }
+
+    @Override
+    public boolean isExpression(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        byte tag = columnBlock.tags[row];
+        if (tag == TAG_TEXT || (tag == TAG_VALUE && columnBlock.columnType == BinaryColumnType.STRING)) {
+            String s = (String) columnBlock.objects[row];
+            return s.startsWith("{{") && s.endsWith("}}");
+        }
+        return false;
+    }
+
+    @Override
+    public long getLong(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        if (isValue(columnBlock, BinaryColumnType.LONG)) return columnBlock.longs[row];
+        return DataReader.super.getLong(pos);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        if (isValue(columnBlock, BinaryColumnType.DECIMAL)) return (BigDecimal) columnBlock.objects[row];
+        if (isValue(columnBlock, BinaryColumnType.LONG)) return BigDecimal.valueOf(columnBlock.longs[row]);
+        return DataReader.super.getBigDecimal(pos);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        if (isValue(columnBlock, BinaryColumnType.TIMESTAMP)) {
+            return Timestamp.valueOf(LocalDateTime.ofEpochSecond(columnBlock.longs[row], 0, ZoneOffset.UTC));
+        }
+        if (isValue(columnBlock, BinaryColumnType.DATE)) {
+            return Timestamp.valueOf(LocalDate.ofEpochDay(columnBlock.longs[row]).atStartOfDay());
+        }
+        return DataReader.super.getTimestamp(pos);
+    }
+
+    @Override
+    public Time getTime(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        if (isValue(columnBlock, BinaryColumnType.TIME)) {
+            int millisOfDay = (int) columnBlock.longs[row];
+            Time time = Time.valueOf(LocalTime.ofSecondOfDay(millisOfDay / 1000));
+            return new Time(time.getTime() + millisOfDay % 1000);
+        }
+        return DataReader.super.getTime(pos);
+    }
+
+    @Override
+    public Date getDate(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        if (isValue(columnBlock, BinaryColumnType.DATE)) return Date.valueOf(LocalDate.ofEpochDay(columnBlock.longs[row]));
+        return DataReader.super.getDate(pos);
+    }
+
+    @Override
+    public byte[] getBytes(int pos) {
+        ColumnBlock columnBlock = columnBlocks[pos];
+        if (isValue(columnBlock, BinaryColumnType.BYTES)) return (byte[]) columnBlock.objects[row];
+        return DataReader.super.getBytes(pos);
+    }
+
+    /**
+     * The cells of a column in the current row group
+     */
+    private static class ColumnBlock {
+        private final BinaryColumnType columnType;
+        private byte[] tags = new byte[0];
+        private long[] longs = new long[0];
+        private Object[] objects = new Object[0];
+
+        private ColumnBlock(BinaryColumnType columnType) {
+            this.columnType = columnType;
+        }
+
+        private void decode(ByteBuffer buffer, int rowCount) {
+            if (tags.length < rowCount) {
+                tags = new byte[rowCount];
+                longs = new long[rowCount];
+                objects = new Object[rowCount];
+            }
+            for (int i = 0; i < rowCount; i++) {
+                byte tag = buffer.get();
+                tags[i] = tag;
+                objects[i] = null;
+                if (tag == TAG_TEXT) {
+                    objects[i] = readString(buffer);
+                } else if (tag == TAG_VALUE) {
+                    switch (columnType) {
+                        case STRING -> objects[i] = readString(buffer);
+                        case LONG, TIMESTAMP, DATE -> longs[i] = buffer.getLong();
+                        case TIME -> longs[i] = buffer.getInt();
+                        case DECIMAL -> {
+                            int scale = buffer.getInt();
+                            objects[i] = new BigDecimal(new BigInteger(readBytes(buffer)), scale);
+                        }
+                        case BYTES -> objects[i] = readBytes(buffer);
+                    }
+                }
+            }
+        }
+
+        private static String readString(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+
+        private static byte[] readBytes(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.dandoy.dbpop.upload;
+
+import org.dandoy.dbpop.database.ColumnType;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A DataRecord whose cells are ranges of a char buffer.
+ * Numbers and timestamps are parsed from the buffer without creating a String.
+ */
+abstract class CharBufferRecord implements DataRecord {
+    private static final int[] NANOS_MULTIPLIERS = {0, 100_000_000, 10_000_000, 1_000_000};
+    char[] chars;
+    int[] cellStarts;
+    int[] cellEnds;
+    /**
+     * Index of the first cell of the record in cellStarts and cellEnds
+     */
+    int cellOffset;
+    int cellCount;
+
+    CharBufferRecord(char[] chars, int[] cellStarts, int[] cellEnds) {
+        this.chars = chars;
+        this.cellStarts = cellStarts;
+        this.cellEnds = cellEnds;
+    }
+
+    @Override
+    public int size() {
+        return cellCount;
+    }
+
+    int start(int pos) {
+        if (pos >= cellCount) {
+            throw new ArrayIndexOutOfBoundsException("Index %d out of bounds for length %d".formatted(pos, cellCount));
+        }
+        return cellStarts[cellOffset + pos];
+    }
+
+    int end(int pos) {
+        return cellEnds[cellOffset + pos];
+    }
+
+    @Override
+    public String get(int pos) {
+        int start = start(pos);
+        int length = end(pos) - start;
+        return length == 0 ? null : new String(chars, start, length);
+    }
+
+    @Override
+    public int getLength(int pos) {
+        return end(pos) - start(pos);
+    }
+
+    @Override
+    public boolean isNull(int pos) {
+        return start(pos) == end(pos);
+    }
+
+    @Override
+    public boolean isExpression(int pos) {
+        int start = start(pos);
+        int end = end(pos);
+        return end - start >= 4 &&
+               chars[start] == '{' && chars[start + 1] == '{' &&
+               chars[end - 2] == '}' && chars[end - 1] == '}';
+    }
+
+    /**
+     * Parses up to 18 ASCII digits in place, anything else goes through Long.parseLong()
+     */
+    @Override
+    public long getLong(int pos) {
+        int start = start(pos);
+        int end = end(pos);
+        int length = end - start;
+        if (length == 0 || length > 18) return Long.parseLong(get(pos));
+        int i = start;
+        boolean negative = chars[i] == '-';
+        if (negative || chars[i] == '+') {
+            i++;
+            if (i == end) return Long.parseLong(get(pos));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) return Long.parseLong(get(pos));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int pos) {
+        int start = start(pos);
+        return new BigDecimal(chars, start, end(pos) - start);
+    }
+
+    /**
+     * Parses yyyy-MM-dd, yyyy-MM-dd HH:mm:ss[.SSS] and yyyy-MM-ddTHH:mm:ss[.SSS]Z in place, the other formats go through ColumnType.TIMESTAMP
+     */
+    @Override
+    public Timestamp getTimestamp(int pos) {
+        int start = start(pos);
+        int length = end(pos) - start;
+        char separator = ' ';
+        if (length >= 20 && chars[start + 10] == 'T' && chars[start + length - 1] == 'Z') {
+            separator = 'T';
+            length--;
+        }
+        if ((length == 10 || length == 19 || (21 <= length && length <= 23 && chars[start + 19] == '.')) &&
+            isDigits(start, 4) && chars[start + 4] == '-' && isDigits(start + 5, 2) && chars[start + 7] == '-' && isDigits(start + 8, 2)) {
+            int year = toInt(start, 4);
+            int month = toInt(start + 5, 2);
+            int day = toInt(start + 8, 2);
+            if (length == 10) {
+                return Timestamp.valueOf(LocalDate.of(year, month, day).atStartOfDay());
+            }
+            if (chars[start + 10] == separator &&
+                isDigits(start + 11, 2) && chars[start + 13] == ':' && isDigits(start + 14, 2) && chars[start + 16] == ':' && isDigits(start + 17, 2) &&
+                (length == 19 || isDigits(start + 20, length - 20))) {
+                int nanos = length == 19 ? 0 : toInt(start + 20, length - 20) * NANOS_MULTIPLIERS[length - 20];
+                return Timestamp.valueOf(LocalDateTime.of(year, month, day, toInt(start + 11, 2), toInt(start + 14, 2), toInt(start + 17, 2), nanos));
+            }
+        }
+        return (Timestamp) ColumnType.TIMESTAMP.parse(get(pos));
+    }
+
+    private boolean isDigits(int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (chars[i] < '0' || chars[i] > '9') return false;
+        }
+        return true;
+    }
+
+    private int toInt(int start, int length) {
+        int ret = 0;
+        for (int i = start; i < start + length; i++) {
+            ret = ret * 10 + chars[i] - '0';
+        }
+        return ret;
+    }
+}
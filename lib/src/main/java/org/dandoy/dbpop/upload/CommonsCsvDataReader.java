@@ -0,0 +1,49 @@
+package org.dandoy.dbpop.upload;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A DataReader that uses commons-csv.
+ */
+public class CommonsCsvDataReader implements DataReader {
+    private final CSVParser csvParser;
+    private final Iterator<CSVRecord> iterator;
+    private CSVRecord csvRecord;
+
+    public CommonsCsvDataReader(CSVParser csvParser) {
+        this.csvParser = csvParser;
+        this.iterator = csvParser.iterator();
+    }
+
+    @Override
+    public List<String> getHeaderNames() {
+        return csvParser.getHeaderNames();
+    }
+
+    @Override
+    public boolean next() {
+        if (!iterator.hasNext()) return false;
+        csvRecord = iterator.next();
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return csvRecord.size();
+    }
+
+    @Override
+    public String get(int pos) {
+        return csvRecord.get(pos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvParser.close();
+    }
+}
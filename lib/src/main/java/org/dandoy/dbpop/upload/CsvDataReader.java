@@ -0,0 +1,148 @@
+package org.dandoy.dbpop.upload;
+
+import org.dandoy.dbpop.datasets.CsvCompression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A CSV reader for the populate path.
+ * It reads the format of DbPopUtils.createCsvParser(): RFC 4180 with a header record, empty lines are skipped and empty cells are null.
+ * <p>
+ * The characters of the current row are copied into a reusable buffer and the cells are exposed as offsets in that buffer.
+ */
+public class CsvDataReader extends CharBufferRecord implements DataReader {
+    private static final int END_OF_FILE = -1;
+    private static final int BUFFER_SIZE = 65536;
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferEnd;
+    private int charCount;
+    private long recordNumber;
+    private final List<String> headerNames;
+
+    public CsvDataReader(Reader reader) throws IOException {
+        super(new char[1024], new int[32], new int[32]);
+        this.reader = reader;
+        List<String> headerNames = new ArrayList<>();
+        if (readRecord()) {
+            for (int i = 0; i < cellCount; i++) {
+                String headerName = get(i);
+                if (headerName == null) throw new IOException("A header name is missing");
+                headerNames.add(headerName);
+            }
+        }
+        this.headerNames = Collections.unmodifiableList(headerNames);
+    }
+
+    public static CsvDataReader open(File file) throws IOException {
+        Reader reader = CsvCompression.of(file).newReader(file);
+        try {
+            return new CsvDataReader(reader);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    @Override
+    public List<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return readRecord();
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferEnd) {
+            int n = reader.read(buffer, 0, buffer.length);
+            if (n <= 0) return END_OF_FILE;
+            bufferPos = 0;
+            bufferEnd = n;
+        }
+        return buffer[bufferPos++];
+    }
+
+    private boolean readRecord() throws IOException {
+        charCount = 0;
+        cellCount = 0;
+        int c = read();
+        // Skips the empty lines, and the \n of a \r\n
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == END_OF_FILE) return false;
+        recordNumber++;
+        while (true) {
+            int start = charCount;
+            if (c == '"') {
+                c = readQuoted();
+            } else {
+                while (c != ',' && c != '\r' && c != '\n' && c != END_OF_FILE) {
+                    append((char) c);
+                    c = read();
+                }
+            }
+            addCell(start, charCount);
+            if (c != ',') return true;
+            c = read();
+        }
+    }
+
+    /**
+     * @return the character that follows the closing quote
+     */
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == END_OF_FILE) {
+                throw new IOException("EOF reached before the closing quote of record " + recordNumber);
+            }
+            if (c == '"') {
+                c = read();
+                if (c == '"') {
+                    append('"');
+                    continue;
+                }
+                while (c != ',' && c != '\r' && c != '\n' && c != END_OF_FILE) {
+                    if (!Character.isWhitespace(c)) {
+                        throw new IOException("Invalid character between the closing quote and the delimiter of record " + recordNumber);
+                    }
+                    c = read();
+                }
+                return c;
+            }
+            append((char) c);
+        }
+    }
+
+    private void append(char c) {
+        if (charCount == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[charCount++] = c;
+    }
+
+    private void addCell(int start, int end) {
+        if (cellCount == cellStarts.length) {
+            cellStarts = Arrays.copyOf(cellStarts, cellCount * 2);
+            cellEnds = Arrays.copyOf(cellEnds, cellCount * 2);
+        }
+        cellStarts[cellCount] = start;
+        cellEnds[cellCount] = end;
+        cellCount++;
+    }
+}
@@ -0,0 +1,20 @@
+package org.dandoy.dbpop.upload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads a data file one row at a time.
+ * Like a ResultSet, the reader is positioned on the current row and the values it returns are only valid until the next call to next().
+ */
+public interface DataReader extends DataRecord, Closeable {
+    List<String> getHeaderNames();
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false if there are no more rows
+     */
+    boolean next() throws IOException;
+}
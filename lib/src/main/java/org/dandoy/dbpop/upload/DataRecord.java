@@ -0,0 +1,73 @@
+package org.dandoy.dbpop.upload;
+
+import org.dandoy.dbpop.database.ColumnType;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * A row of a data file.
+ * The typed getters let an implementation convert a cell without creating a String.
+ */
+public interface DataRecord {
+    /**
+     * @return the number of cells
+     */
+    int size();
+
+    /**
+     * @return the value of the cell, null if the cell is empty
+     */
+    String get(int pos);
+
+    /**
+     * @return the number of characters of the cell
+     */
+    default int getLength(int pos) {
+        String s = get(pos);
+        return s == null ? 0 : s.length();
+    }
+
+    default boolean isNull(int pos) {
+        return get(pos) == null;
+    }
+
+    /**
+     * @return true if the cell is an expression surrounded by double curly braces
+     */
+    default boolean isExpression(int pos) {
+        String s = get(pos);
+        return s != null && s.startsWith("{{") && s.endsWith("}}");
+    }
+
+    default long getLong(int pos) {
+        return Long.parseLong(get(pos));
+    }
+
+    default BigDecimal getBigDecimal(int pos) {
+        return new BigDecimal(get(pos));
+    }
+
+    default Timestamp getTimestamp(int pos) {
+        return (Timestamp) ColumnType.TIMESTAMP.parse(get(pos));
+    }
+
+    default Time getTime(int pos) {
+        return (Time) ColumnType.TIME.parse(get(pos));
+    }
+
+    default Date getDate(int pos) {
+        return (Date) ColumnType.DATE.parse(get(pos));
+    }
+
+    /**
+     * @return the bytes of a base64 cell
+     */
+    default byte[] getBytes(int pos) {
+        String s = get(pos);
+        return s == null ? null : Base64.getDecoder().decode(s);
+    }
+}
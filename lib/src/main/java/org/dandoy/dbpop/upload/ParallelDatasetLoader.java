@@ -0,0 +1,144 @@
+package org.dandoy.dbpop.upload;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dandoy.dbpop.database.*;
+import org.dandoy.dbpop.utils.AutoComitterOff;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntBiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the data files of a dataset on a pool of connections.
+ * <p>
+ * The tables are independent once the DatabasePreparationStrategy has suppressed their foreign keys.
+ * A table that still has an enforced foreign key to another table of the dataset is only scheduled once that table has been loaded.
+ * The largest files are scheduled first.
+ */
+@Slf4j
+class ParallelDatasetLoader implements AutoCloseable {
+    private static final Comparator<DataFile> LARGEST_FIRST = Comparator.comparingLong((DataFile dataFile) -> dataFile.getFile().length()).reversed();
+    private final Map<TableName, Table> tablesByName;
+    private final Set<ForeignKey> suppressedForeignKeys;
+    private final List<Database> databases = new ArrayList<>();
+    private final BlockingQueue<Database> availableDatabases;
+    private final ExecutorService executorService;
+
+    ParallelDatasetLoader(Database database, int parallelism, Map<TableName, Table> tablesByName, Set<ForeignKey> suppressedForeignKeys) {
+        this.tablesByName = tablesByName;
+        this.suppressedForeignKeys = suppressedForeignKeys;
+        availableDatabases = new ArrayBlockingQueue<>(parallelism);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "Populator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ConnectionBuilder connectionBuilder = database.getConnectionBuilder();
+            for (int i = 0; i < parallelism; i++) {
+                DefaultDatabase workerDatabase = Database.createDefaultDatabase(connectionBuilder);
+                databases.add(workerDatabase);
+                availableDatabases.add(workerDatabase);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        databases.forEach(Database::close);
+    }
+
+    /**
+     * Loads the data files and waits for all of them to complete.
+     *
+     * @return the number of rows loaded
+     */
+    int load(Collection<DataFile> dataFiles, ToIntBiFunction<Database, DataFile> dataFileLoader) {
+        Map<TableName, Set<TableName>> dependencies = getDependencies(dataFiles);
+        List<DataFile> waitingDataFiles = new ArrayList<>(dataFiles);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<Integer>, DataFile> runningDataFiles = new HashMap<>();
+        int rowCount = 0;
+        RuntimeException failure = null;
+        try {
+            while (!runningDataFiles.isEmpty() || (failure == null && !waitingDataFiles.isEmpty())) {
+                if (failure == null) {
+                    List<DataFile> readyDataFiles = waitingDataFiles.stream()
+                            .filter(dataFile -> dependencies.get(dataFile.getTableName()).isEmpty())
+                            .sorted(LARGEST_FIRST)
+                            .toList();
+                    if (readyDataFiles.isEmpty() && runningDataFiles.isEmpty()) {
+                        // The enforced foreign keys form a cycle, no order can satisfy them
+                        log.warn("Circular foreign keys between {}", waitingDataFiles.stream().map(dataFile -> dataFile.getTableName().toQualifiedName()).collect(Collectors.joining(", ")));
+                        readyDataFiles = waitingDataFiles.stream().sorted(LARGEST_FIRST).toList();
+                    }
+                    for (DataFile dataFile : readyDataFiles) {
+                        waitingDataFiles.remove(dataFile);
+                        Future<Integer> future = completionService.submit(() -> loadDataFile(dataFile, dataFileLoader));
+                        runningDataFiles.put(future, dataFile);
+                    }
+                }
+
+                Future<Integer> future = completionService.take();
+                DataFile dataFile = runningDataFiles.remove(future);
+                try {
+                    rowCount += future.get();
+                    dependencies.values().forEach(parents -> parents.remove(dataFile.getTableName()));
+                } catch (ExecutionException e) {
+                    // Let the other tables complete before we report the failure
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            runningDataFiles.keySet().forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (failure != null) throw failure;
+        return rowCount;
+    }
+
+    private int loadDataFile(DataFile dataFile, ToIntBiFunction<Database, DataFile> dataFileLoader) throws InterruptedException {
+        Database database = availableDatabases.take();
+        try (AutoComitterOff autoComitterOff = new AutoComitterOff(database.getConnection())) {
+            int rowCount = dataFileLoader.applyAsInt(database, dataFile);
+            autoComitterOff.commit();
+            return rowCount;
+        } finally {
+            availableDatabases.add(database);
+        }
+    }
+
+    /**
+     * @return for each table, the tables it must wait for
+     */
+    private Map<TableName, Set<TableName>> getDependencies(Collection<DataFile> dataFiles) {
+        Set<TableName> tableNames = dataFiles.stream()
+                .map(DataFile::getTableName)
+                .collect(Collectors.toSet());
+        Map<TableName, Set<TableName>> ret = new HashMap<>();
+        for (TableName tableName : tableNames) {
+            Set<TableName> parents = new HashSet<>();
+            Table table = tablesByName.get(tableName);
+            if (table != null) {
+                for (ForeignKey foreignKey : table.getForeignKeys()) {
+                    TableName pkTableName = foreignKey.getPkTableName();
+                    if (!pkTableName.equals(tableName) && tableNames.contains(pkTableName) && !suppressedForeignKeys.contains(foreignKey)) {
+                        parents.add(pkTableName);
+                    }
+                }
+            }
+            ret.put(tableName, parents);
+        }
+        return ret;
+    }
+}
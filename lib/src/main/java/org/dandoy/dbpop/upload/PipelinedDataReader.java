@@ -0,0 +1,173 @@
+package org.dandoy.dbpop.upload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a DataReader on a separate thread.
+ * <p>
+ * The reader thread copies the rows into batches while the caller binds and executes the previous rows.
+ * The batches are recycled through a bounded queue, the reader thread blocks when it is too far ahead.
+ * A failure of the reader thread, including an Error, is reported by next() after the rows that precede it.
+ */
+public class PipelinedDataReader extends CharBufferRecord implements DataReader {
+    private static final int ROWS_PER_BATCH = 1024;
+    /**
+     * Enough rows to prepare a full JDBC batch while the previous one executes
+     */
+    private static final int BATCH_COUNT = 16;
+    private final DataReader dataReader;
+    private final BlockingQueue<RowBatch> freeBatches = new ArrayBlockingQueue<>(BATCH_COUNT);
+    private final BlockingQueue<RowBatch> readBatches = new ArrayBlockingQueue<>(BATCH_COUNT);
+    private final Thread thread;
+    private RowBatch rowBatch;
+    private int row;
+
+    public PipelinedDataReader(DataReader dataReader, String name) {
+        super(null, null, null);
+        this.dataReader = dataReader;
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            freeBatches.add(new RowBatch());
+        }
+        thread = new Thread(this::readBatches, "DataReader-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dataReader.close();
+    }
+
+    @Override
+    public List<String> getHeaderNames() {
+        return dataReader.getHeaderNames();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (rowBatch == null || row + 1 >= rowBatch.rowCount) {
+            if (rowBatch != null) {
+                if (rowBatch.failure instanceof IOException e) throw e;
+                if (rowBatch.failure instanceof Error e) throw e;
+                if (rowBatch.failure != null) throw new IOException(rowBatch.failure);
+                if (rowBatch.last) return false;
+                freeBatches.add(rowBatch);
+                rowBatch = null;
+            }
+            try {
+                rowBatch = readBatches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            row = -1;
+        }
+        row++;
+        chars = rowBatch.chars;
+        cellStarts = rowBatch.cellStarts;
+        cellEnds = rowBatch.cellEnds;
+        cellOffset = rowBatch.rowOffsets[row];
+        cellCount = rowBatch.rowOffsets[row + 1] - cellOffset;
+        return true;
+    }
+
+    private void readBatches() {
+        try {
+            while (true) {
+                RowBatch batch = freeBatches.take();
+                batch.clear();
+                try {
+                    while (batch.rowCount < ROWS_PER_BATCH) {
+                        if (!dataReader.next()) {
+                            batch.last = true;
+                            break;
+                        }
+                        batch.add(dataReader);
+                    }
+                } catch (IOException e) {
+                    batch.failure = e;
+                } catch (UncheckedIOException e) {
+                    batch.failure = e.getCause();
+                } catch (Throwable e) {
+                    batch.failure = e;
+                }
+                readBatches.put(batch);
+                if (batch.last || batch.failure != null) return;
+            }
+        } catch (InterruptedException ignored) {
+            // close()
+        }
+    }
+
+    private static class RowBatch {
+        private char[] chars = new char[65536];
+        private int charCount;
+        private int[] cellStarts = new int[4096];
+        private int[] cellEnds = new int[4096];
+        private int cellTotal;
+        /**
+         * Index of the first cell of each row, followed by the total number of cells
+         */
+        private final int[] rowOffsets = new int[ROWS_PER_BATCH + 1];
+        private int rowCount;
+        private boolean last;
+        private Throwable failure;
+
+        private void clear() {
+            charCount = 0;
+            cellTotal = 0;
+            rowCount = 0;
+            last = false;
+            failure = null;
+        }
+
+        private void add(DataRecord dataRecord) {
+            int size = dataRecord.size();
+            for (int pos = 0; pos < size; pos++) {
+                if (dataRecord instanceof CharBufferRecord charBufferRecord) {
+                    int start = charBufferRecord.start(pos);
+                    int length = charBufferRecord.end(pos) - start;
+                    reserve(length);
+                    System.arraycopy(charBufferRecord.chars, start, chars, charCount, length);
+                    addCell(length);
+                } else {
+                    String s = dataRecord.get(pos);
+                    int length = s == null ? 0 : s.length();
+                    reserve(length);
+                    if (s != null) s.getChars(0, length, chars, charCount);
+                    addCell(length);
+                }
+            }
+            rowCount++;
+            rowOffsets[rowCount] = cellTotal;
+        }
+
+        private void reserve(int length) {
+            if (charCount + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+            }
+        }
+
+        private void addCell(int length) {
+            if (cellTotal == cellStarts.length) {
+                cellStarts = Arrays.copyOf(cellStarts, cellTotal * 2);
+                cellEnds = Arrays.copyOf(cellEnds, cellTotal * 2);
+            }
+            cellStarts[cellTotal] = charCount;
+            charCount += length;
+            cellEnds[cellTotal] = charCount;
+            cellTotal++;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.dandoy.dbpop.upload;
+
+public class PopulateCancelledException extends RuntimeException {
+    public PopulateCancelledException() {
+        super("The populate has been cancelled");
+    }
+}
@@ -4,16 +4,18 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.dandoy.dbpop.database.*;
 import org.dandoy.dbpop.datasets.Datasets;
 import org.dandoy.dbpop.utils.AutoComitterOff;
 import org.dandoy.dbpop.utils.DbPopUtils;
+import org.dandoy.dbpop.utils.ElapsedStopWatch;
+import org.dandoy.dbpop.utils.ExceptionUtils;
 import org.dandoy.dbpop.utils.MultiCauseException;
 import org.dandoy.dbpop.utils.StopWatch;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.function.Function;
@@ -29,14 +31,53 @@ public class Populator {
     @Getter
     @Setter
     private boolean staticLoaded;
+    /**
+     * Number of connections used to load the tables of a dataset, 1 loads the tables one after the other.
+     */
     @Getter
     @Setter
     @Accessors(chain = true)
-    PopulatorListener populatorListener = new PopulatorListener() {
-        public void afterPopulate() {}
-
-        public void afterPopulate(String dataset) {}
-    };
+    private int parallelism = 1;
+    /**
+     * Use the native bulk protocol of the database when all the columns of a table support it.
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    private boolean bulkInsert;
+    /**
+     * Read the data files on a separate thread while the rows are sent to the database.
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    private boolean pipelined;
+    /**
+     * Remove the secondary indexes of the tables during the load and rebuild them after.
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    private boolean deferIndexes;
+    /**
+     * The indexes of the tables with smaller data files are left alone.
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    private long deferIndexesMinSize = 1024 * 1024;
+    /**
+     * Prepare the database for a minimally logged load, implies bulkInsert and deferIndexes for all the tables.
+     * Only meant for throwaway databases, the recovery model and the indexes are changed during the load.
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    private boolean minimalLogging;
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    PopulatorListener populatorListener = new PopulatorListener() {};
 
     protected Populator(Database database, Map<String, Dataset> datasetsByName, Map<TableName, Table> tablesByName) {
         this.database = database;
@@ -106,11 +147,23 @@ public class Populator {
      * @return the number of rows loaded
      */
     public int load(List<String> datasets) {
+        return load(datasets, null);
+    }
+
+    /**
+     * Loads the datasets.
+     *
+     * @param datasets     the datasets to load
+     * @param tablesToLoad if not null, only those tables are deleted and loaded, the other tables are left untouched
+     * @return the number of rows loaded
+     */
+    public int load(List<String> datasets, @Nullable Set<TableName> tablesToLoad) {
         return StopWatch.record("Populator.load()", () -> {
             List<String> adjustedDatasets = adjustDatasets(datasets);
             log.debug("---- Loading {}", String.join(", ", adjustedDatasets));
+            checkCancelled();
             int rowCount = 0;
-            try (AutoComitterOff ignored = new AutoComitterOff(database.getConnection())) {
+            try (AutoComitterOff autoComitterOff = new AutoComitterOff(database.getConnection())) {
 
                 Set<TableName> allTables = datasetsByName.values().stream()
                         .flatMap(it -> it.getDataFiles().stream())
@@ -126,26 +179,54 @@ public class Populator {
                                 .forEach(allTables::remove);
                     }
                 }
+                if (tablesToLoad != null) {
+                    allTables.retainAll(tablesToLoad);
+                }
 
-                DatabasePreparationStrategy databasePreparationStrategy = database.createDatabasePreparationFactory()
-                        .createDatabasePreparationStrategy(
-                                database,
-                                allTables
-                        );
+                DatabasePreparationStrategy databasePreparationStrategy = createDatabasePreparationStrategy(allTables, adjustedDatasets);
 
-                databasePreparationStrategy.beforeInserts();
+                boolean committed = false;
+                boolean prepared = false;
                 try {
-                    for (String datasetName : adjustedDatasets) {
-                        Dataset dataset = datasetsByName.get(datasetName);
-                        if (dataset == null) throw new RuntimeException("Dataset not found: " + datasetName);
-                        rowCount += loadDataset(dataset);
-                        if (datasetName.equals(Datasets.STATIC)) {
-                            staticLoaded = true;
+                    ElapsedStopWatch beforeInsertsStopWatch = new ElapsedStopWatch();
+                    StopWatch.record("beforeInserts", databasePreparationStrategy::beforeInserts);
+                    log.debug("beforeInserts: {}", beforeInsertsStopWatch);
+                    prepared = true;
+                    try (ParallelDatasetLoader parallelDatasetLoader = createParallelDatasetLoader(databasePreparationStrategy)) {
+                        if (parallelDatasetLoader != null) {
+                            // The workers have their own connections, they must not wait on the locks held by the deletes
+                            autoComitterOff.commit();
+                            committed = true;
+                        }
+                        for (String datasetName : adjustedDatasets) {
+                            Dataset dataset = datasetsByName.get(datasetName);
+                            if (dataset == null) throw new RuntimeException("Dataset not found: " + datasetName);
+                            rowCount += loadDataset(dataset, tablesToLoad, parallelDatasetLoader);
+                            if (datasetName.equals(Datasets.STATIC)) {
+                                staticLoaded = true;
+                            }
                         }
                     }
-                } finally {
-                    databasePreparationStrategy.afterInserts();
+                } catch (RuntimeException e) {
+                    // The cleanup must not hide the failure of the populate
+                    try {
+                        if (ExceptionUtils.getCause(e, PopulateCancelledException.class).isPresent()) {
+                            if (!committed) {
+                                // Nothing has been committed, the rollback leaves the tables as they were before the populate
+                                autoComitterOff.rollback();
+                                staticLoaded = false;
+                            }
+                            // The rows already inserted would not pass the foreign key checks of afterInserts()
+                            if (prepared) afterCancel(databasePreparationStrategy, !committed);
+                        } else if (prepared) {
+                            afterInserts(databasePreparationStrategy);
+                        }
+                    } catch (RuntimeException cleanupException) {
+                        e.addSuppressed(cleanupException);
+                    }
+                    throw e;
                 }
+                afterInserts(databasePreparationStrategy);
             }
             try {
                 populatorListener.afterPopulate();
@@ -156,6 +237,69 @@ public class Populator {
         });
     }
 
+    private static void afterInserts(DatabasePreparationStrategy databasePreparationStrategy) {
+        ElapsedStopWatch afterInsertsStopWatch = new ElapsedStopWatch();
+        StopWatch.record("afterInserts", databasePreparationStrategy::afterInserts);
+        log.debug("afterInserts: {}", afterInsertsStopWatch);
+    }
+
+    private static void afterCancel(DatabasePreparationStrategy databasePreparationStrategy, boolean rolledBack) {
+        ElapsedStopWatch afterCancelStopWatch = new ElapsedStopWatch();
+        StopWatch.record("afterCancel", () -> databasePreparationStrategy.afterCancel(rolledBack));
+        log.debug("afterCancel: {}", afterCancelStopWatch);
+    }
+
+    @Nullable
+    private ParallelDatasetLoader createParallelDatasetLoader(DatabasePreparationStrategy databasePreparationStrategy) {
+        if (parallelism <= 1) return null;
+        return new ParallelDatasetLoader(database, parallelism, tablesByName, databasePreparationStrategy.getSuppressedForeignKeys());
+    }
+
+    /**
+     * Wraps the strategy of the database with the optional strategies, the indexes are deferred on the tables with enough data.
+     */
+    private DatabasePreparationStrategy createDatabasePreparationStrategy(Set<TableName> allTables, List<String> adjustedDatasets) {
+        DatabasePreparationStrategy databasePreparationStrategy = database.createDatabasePreparationFactory()
+                .createDatabasePreparationStrategy(
+                        database,
+                        allTables
+                );
+        if (deferIndexes || minimalLogging) {
+            long minSize = minimalLogging ? 0 : deferIndexesMinSize;
+            Map<TableName, Long> dataSizes = new HashMap<>();
+            for (String datasetName : adjustedDatasets) {
+                Dataset dataset = datasetsByName.get(datasetName);
+                if (dataset == null) continue;
+                for (DataFile dataFile : dataset.getDataFiles()) {
+                    dataSizes.merge(dataFile.getTableName(), dataFile.getFile().length(), Long::sum);
+                }
+            }
+            List<Table> tables = allTables.stream()
+                    .filter(tableName -> dataSizes.getOrDefault(tableName, 0L) >= minSize)
+                    .map(tablesByName::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+            DatabasePreparationStrategy deferredIndexesPreparationStrategy = database.createDeferredIndexesPreparationStrategy(databasePreparationStrategy, tables);
+            if (deferredIndexesPreparationStrategy != null) {
+                databasePreparationStrategy = deferredIndexesPreparationStrategy;
+            } else {
+                log.warn("The database does not support deferring the indexes");
+            }
+        }
+        if (minimalLogging) {
+            DatabasePreparationStrategy minimalLoggingPreparationStrategy = database.createMinimalLoggingPreparationStrategy(
+                    databasePreparationStrategy,
+                    allTables.stream().map(tablesByName::get).filter(Objects::nonNull).toList()
+            );
+            if (minimalLoggingPreparationStrategy != null) {
+                databasePreparationStrategy = minimalLoggingPreparationStrategy;
+            } else {
+                log.warn("The database does not support minimal logging");
+            }
+        }
+        return databasePreparationStrategy;
+    }
+
     /**
      * The static dataset is only loaded once per Populator
      */
@@ -177,11 +321,21 @@ public class Populator {
         return ret;
     }
 
-    private int loadDataset(Dataset dataset) {
+    private int loadDataset(Dataset dataset, @Nullable Set<TableName> tablesToLoad, @Nullable ParallelDatasetLoader parallelDatasetLoader) {
         int rowCount = 0;
         try {
-            for (DataFile dataFile : dataset.getDataFiles()) {
-                rowCount += loadDataFile(dataFile);
+            Collection<DataFile> dataFiles = dataset.getDataFiles();
+            if (tablesToLoad != null) {
+                dataFiles = dataFiles.stream()
+                        .filter(dataFile -> tablesToLoad.contains(dataFile.getTableName()))
+                        .toList();
+            }
+            if (parallelDatasetLoader != null) {
+                rowCount = parallelDatasetLoader.load(dataFiles, this::loadDataFile);
+            } else {
+                for (DataFile dataFile : dataFiles) {
+                    rowCount += loadDataFile(database, dataFile);
+                }
             }
             populatorListener.afterPopulate(dataset.getName());
         } catch (Exception e) {
@@ -190,16 +344,23 @@ public class Populator {
         return rowCount;
     }
 
-    private int loadDataFile(DataFile dataFile) {
+    private int loadDataFile(Database database, DataFile dataFile) {
         return StopWatch.record("loadDataFile", () -> {
             File file = dataFile.getFile();
             TableName tableName = dataFile.getTableName();
             log.debug(String.format("Loading %-60s", tableName.toQualifiedName()));
             try {
+                checkCancelled();
+                populatorListener.tableStarted(tableName);
                 Table table = tablesByName.get(tableName);
-                try (CSVParser csvParser = DbPopUtils.createCsvParser(file)) {
-                    return insertRows(table, csvParser);
+                int rowCount;
+                try (DataReader dataReader = createDataReader(file)) {
+                    rowCount = insertRows(database, table, dataReader);
                 }
+                populatorListener.tableCompleted(tableName, rowCount);
+                return rowCount;
+            } catch (PopulateCancelledException e) {
+                throw e;
             } catch (Exception e) {
                 String message = String.format(
                         "Failed to load %s from %s",
@@ -211,15 +372,44 @@ public class Populator {
         });
     }
 
-    private int insertRows(Table table, CSVParser csvParser) {
+    private DataReader createDataReader(File file) throws IOException {
+        DataReader dataReader = DbPopUtils.createDataReader(file);
+        // The pipeline copies the cells as text, which would undo the typed values of a binary file
+        if (pipelined && !(dataReader instanceof BinaryDataReader)) {
+            return new PipelinedDataReader(dataReader, file.getName());
+        }
+        return dataReader;
+    }
+
+    private int insertRows(Database database, Table table, DataReader dataReader) throws IOException {
         int count = 0;
-        List<String> headerNames = csvParser.getHeaderNames();
+        List<String> headerNames = dataReader.getHeaderNames();
         List<DataFileHeader> dataFileHeaders = headerNames.stream().map(DataFileHeader::new).collect(Collectors.toList());
+        TableName tableName = table.getTableName();
+        if (bulkInsert || minimalLogging) {
+            BulkInserter bulkInserter = database.createBulkInserter(table, dataFileHeaders);
+            if (bulkInserter != null) {
+                bulkInserter.setTableLock(minimalLogging);
+                try {
+                    int rowCount = bulkInserter.insert(dataReader);
+                    populatorListener.rowsInserted(tableName, rowCount);
+                    return rowCount;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
         try (DefaultDatabase.DatabaseInserter databaseInserter = database.createInserter(table, dataFileHeaders)) {
-            for (CSVRecord csvRecord : csvParser) {
+            databaseInserter.setBatchListener(rowCount -> {
+                populatorListener.rowsInserted(tableName, rowCount);
+                checkCancelled();
+            });
+            while (dataReader.next()) {
                 try {
-                    databaseInserter.insert(csvRecord);
+                    databaseInserter.insert(dataReader);
                     count++;
+                } catch (PopulateCancelledException e) {
+                    throw e;
                 } catch (Exception e) {
                     throw new RuntimeException("Failed to process row " + count, e);
                 }
@@ -229,4 +419,10 @@ public class Populator {
         }
         return count;
     }
+
+    private void checkCancelled() {
+        if (!populatorListener.keepRunning()) {
+            throw new PopulateCancelledException();
+        }
+    }
 }
@@ -1,7 +1,29 @@
 package org.dandoy.dbpop.upload;
 
+import org.dandoy.dbpop.database.TableName;
+
 public interface PopulatorListener {
-    void afterPopulate();
+    default void afterPopulate() {}
+
+    default void afterPopulate(String dataset) {}
+
+    /**
+     * Called before the rows of a data file are inserted.
+     * With parallelism, the progress methods are called from the worker threads.
+     */
+    default void tableStarted(TableName tableName) {}
+
+    /**
+     * Called after each batch sent to the database, the bulk inserts report all the rows of the table at once.
+     */
+    default void rowsInserted(TableName tableName, int rowCount) {}
+
+    default void tableCompleted(TableName tableName, int rowCount) {}
 
-    void afterPopulate(String dataset);
+    /**
+     * Checked before each table and after each batch, returning false aborts the populate with a PopulateCancelledException.
+     */
+    default boolean keepRunning() {
+        return true;
+    }
 }
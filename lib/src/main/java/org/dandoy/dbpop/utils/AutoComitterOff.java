@@ -19,6 +19,28 @@ public class AutoComitterOff implements AutoCloseable {
         }
     }
 
+    /**
+     * Commits the work done so far, the auto-commit stays off.
+     */
+    public void commit() {
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Discards the work done since the last commit, the auto-commit stays off.
+     */
+    public void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void close() {
         if (autoCommit) {
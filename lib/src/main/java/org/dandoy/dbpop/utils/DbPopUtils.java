@@ -4,11 +4,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.dandoy.dbpop.FeatureFlags;
 import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.datasets.CsvCompression;
+import org.dandoy.dbpop.datasets.DatasetSettings;
+import org.dandoy.dbpop.upload.BinaryDataFile;
+import org.dandoy.dbpop.upload.BinaryDataReader;
+import org.dandoy.dbpop.upload.CommonsCsvDataReader;
+import org.dandoy.dbpop.upload.CsvDataReader;
+import org.dandoy.dbpop.upload.DataReader;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 
 @Slf4j
 public class DbPopUtils {
@@ -20,9 +27,26 @@ public class DbPopUtils {
                 .setNullString("")
                 .build();
 
-        return csvFormat.parse(Files.newBufferedReader(file.toPath()));
+        return csvFormat.parse(CsvCompression.of(file).newReader(file));
     }
 
+    /**
+     * Opens a data file for the populate, from its BinaryDataFile when it matches the CSV file,
+     * with the fast CSV reader when FeatureFlags.fastCsvReader is set.
+     */
+    public static DataReader createDataReader(File file) throws IOException {
+        if (FeatureFlags.binaryDataFiles && BinaryDataFile.isValid(file)) {
+            return BinaryDataReader.open(BinaryDataFile.getBinaryFile(file));
+        }
+        if (FeatureFlags.fastCsvReader) {
+            return CsvDataReader.open(file);
+        }
+        return new CommonsCsvDataReader(createCsvParser(file));
+    }
+
+    /**
+     * @return the existing data file of the table, or a new file in the compression of the dataset
+     */
     public static File getOutputFile(File datasetsDirectory, String dataset, TableName tableName) {
         File dir = new File(datasetsDirectory, dataset);
         if (tableName.getCatalog() != null) dir = new File(dir, tableName.getCatalog());
@@ -31,7 +55,12 @@ public class DbPopUtils {
         if (!dir.mkdirs() && !dir.isDirectory()) {
             throw new RuntimeException("Cannot create the directory " + dir);
         }
-        return new File(dir, tableName.getTable() + ".csv");
+        for (CsvCompression csvCompression : CsvCompression.values()) {
+            File file = new File(dir, tableName.getTable() + csvCompression.getSuffix());
+            if (file.exists()) return file;
+        }
+        CsvCompression csvCompression = DatasetSettings.getCompression(datasetsDirectory, dataset);
+        return new File(dir, tableName.getTable() + csvCompression.getSuffix());
     }
 
     public static Integer getCsvRowCount(File file) {
@@ -0,0 +1,162 @@
+package org.dandoy.dbpop.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of composite string keys.
+ * Each key is encoded once into a shared byte array, and the hash table only holds the offsets and the hashes of the keys,
+ * so a key costs a few bytes more than its UTF-8 representation instead of a List and a String per value.
+ * <p>
+ * A value is encoded as its length plus one as a var-int followed by its UTF-8 bytes, a null value is encoded as 0.
+ */
+public class EncodedKeySet {
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MAX_DATA_SIZE = Integer.MAX_VALUE - 16;
+    private byte[] data = new byte[1024];
+    private int dataSize;
+    /**
+     * Offset of the key in data plus one, 0 when the slot is empty
+     */
+    private int[] offsets;
+    private int[] hashes;
+    private int size;
+    private int resizeAt;
+    private byte[] encoded = new byte[64];
+    private int encodedSize;
+
+    public EncodedKeySet() {
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        offsets = new int[capacity];
+        hashes = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @return true if the key was not already in the set
+     */
+    public boolean add(List<String> key) {
+        encode(key);
+        int hash = hash(encoded, encodedSize);
+        int mask = offsets.length - 1;
+        int pos = hash & mask;
+        while (offsets[pos] != 0) {
+            if (hashes[pos] == hash && matches(offsets[pos] - 1)) return false;
+            pos = (pos + 1) & mask;
+        }
+        int offset = store();
+        offsets[pos] = offset + 1;
+        hashes[pos] = hash;
+        if (++size > resizeAt) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(List<String> key) {
+        encode(key);
+        int hash = hash(encoded, encodedSize);
+        int mask = offsets.length - 1;
+        int pos = hash & mask;
+        while (offsets[pos] != 0) {
+            if (hashes[pos] == hash && matches(offsets[pos] - 1)) return true;
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void encode(List<String> key) {
+        encodedSize = 0;
+        writeVarInt(key.size());
+        for (String value : key) {
+            if (value == null) {
+                writeVarInt(0);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(bytes.length + 1);
+                ensureEncodedCapacity(bytes.length);
+                System.arraycopy(bytes, 0, encoded, encodedSize, bytes.length);
+                encodedSize += bytes.length;
+            }
+        }
+    }
+
+    private void writeVarInt(int value) {
+        ensureEncodedCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            encoded[encodedSize++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        encoded[encodedSize++] = (byte) value;
+    }
+
+    private void ensureEncodedCapacity(int length) {
+        if (encodedSize + length > encoded.length) {
+            encoded = Arrays.copyOf(encoded, Math.max(encoded.length * 2, encodedSize + length));
+        }
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The stored keys are prefixed with the length of their encoding
+     */
+    private boolean matches(int offset) {
+        int length = readLength(offset);
+        if (length != encodedSize) return false;
+        int start = offset + 4;
+        return Arrays.equals(data, start, start + length, encoded, 0, encodedSize);
+    }
+
+    private int readLength(int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private int store() {
+        int required = dataSize + 4 + encodedSize;
+        if (required < 0 || required > MAX_DATA_SIZE) throw new IllegalStateException("The set is too large");
+        if (required > data.length) {
+            data = Arrays.copyOf(data, (int) Math.min(MAX_DATA_SIZE, Math.max(required, data.length * 2L)));
+        }
+        int offset = dataSize;
+        data[offset] = (byte) (encodedSize >>> 24);
+        data[offset + 1] = (byte) (encodedSize >>> 16);
+        data[offset + 2] = (byte) (encodedSize >>> 8);
+        data[offset + 3] = (byte) encodedSize;
+        System.arraycopy(encoded, 0, data, offset + 4, encodedSize);
+        dataSize = required;
+        return offset;
+    }
+
+    private void resize() {
+        int[] oldOffsets = offsets;
+        int[] oldHashes = hashes;
+        if (oldOffsets.length >= (1 << 30)) throw new IllegalStateException("The set is too large");
+        allocate(oldOffsets.length * 2);
+        int mask = offsets.length - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] != 0) {
+                int pos = oldHashes[i] & mask;
+                while (offsets[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                offsets[pos] = oldOffsets[i];
+                hashes[pos] = oldHashes[i];
+            }
+        }
+    }
+}
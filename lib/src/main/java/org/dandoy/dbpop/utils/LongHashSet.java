@@ -0,0 +1,115 @@
+package org.dandoy.dbpop.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive longs using open addressing with linear probing.
+ * It stores a key in 8 bytes instead of a boxed Long in a HashMap entry.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+    private long[] slots;
+    private int size;
+    private boolean hasEmptyKey;
+    private int resizeAt;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(expectedSize / LOAD_FACTOR)));
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = 16;
+        while (size < n) {
+            if (size >= (1 << 30)) throw new IllegalStateException("The set is too large");
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+        // Spreads the sequential keys across the table
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return true if the key was not already in the set
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (hasEmptyKey) return false;
+            hasEmptyKey = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        int pos = hash(key) & mask;
+        while (slots[pos] != EMPTY) {
+            if (slots[pos] == key) return false;
+            pos = (pos + 1) & mask;
+        }
+        slots[pos] = key;
+        if (++size > resizeAt) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) return hasEmptyKey;
+        int mask = slots.length - 1;
+        int pos = hash(key) & mask;
+        while (slots[pos] != EMPTY) {
+            if (slots[pos] == key) return true;
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        hasEmptyKey = false;
+        size = 0;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (hasEmptyKey) consumer.accept(EMPTY);
+        for (long slot : slots) {
+            if (slot != EMPTY) consumer.accept(slot);
+        }
+    }
+
+    private void resize() {
+        long[] oldSlots = slots;
+        allocate(tableSizeFor(oldSlots.length * 2));
+        int mask = slots.length - 1;
+        for (long key : oldSlots) {
+            if (key != EMPTY) {
+                int pos = hash(key) & mask;
+                while (slots[pos] != EMPTY) {
+                    pos = (pos + 1) & mask;
+                }
+                slots[pos] = key;
+            }
+        }
+    }
+}
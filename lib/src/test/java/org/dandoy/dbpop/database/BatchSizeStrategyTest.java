@@ -0,0 +1,33 @@
+package org.dandoy.dbpop.database;
+
+import org.dandoy.dbpop.FeatureFlags;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchSizeStrategyTest {
+    @Test
+    void initialSize() {
+        BatchSizeStrategy narrow = new BatchSizeStrategy(16);
+        BatchSizeStrategy wide = new BatchSizeStrategy(16000);
+        assertTrue(narrow.getBatchSize() > wide.getBatchSize());
+        assertEquals(FeatureFlags.batchSizeMax, new BatchSizeStrategy(0).getBatchSize());
+        assertEquals(FeatureFlags.batchSizeMin, new BatchSizeStrategy(Integer.MAX_VALUE).getBatchSize());
+    }
+
+    @Test
+    void adjustments() {
+        BatchSizeStrategy batchSizeStrategy = new BatchSizeStrategy(1000);
+        int batchSize = batchSizeStrategy.getBatchSize();
+
+        // Slow batch: halved at most
+        batchSizeStrategy.batchExecuted(batchSize, batchSize * 10L, 60_000_000_000L);
+        assertEquals(batchSize / 2, batchSizeStrategy.getBatchSize());
+
+        // Fast and narrow: doubled at most
+        batchSize = batchSizeStrategy.getBatchSize();
+        batchSizeStrategy.batchExecuted(batchSize, batchSize, 1_000_000L);
+        assertEquals(batchSize * 2, batchSizeStrategy.getBatchSize());
+    }
+}
@@ -0,0 +1,42 @@
+package org.dandoy.dbpop.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ForeignKeyGraphTest {
+    private static final TableName customers = new TableName("dbpop", "dbo", "customers");
+    private static final TableName invoices = new TableName("dbpop", "dbo", "invoices");
+    private static final TableName invoiceDetails = new TableName("dbpop", "dbo", "invoice_details");
+    private static final TableName products = new TableName("dbpop", "dbo", "products");
+
+    @Test
+    void adjacency() {
+        ForeignKey invoicesCustomersFk = new ForeignKey("invoices_customers_fk", null, customers, List.of("customer_id"), invoices, List.of("customer_id"));
+        ForeignKey detailsInvoicesFk = new ForeignKey("details_invoices_fk", null, invoices, List.of("invoice_id"), invoiceDetails, List.of("invoice_id"));
+        ForeignKey detailsProductsFk = new ForeignKey("details_products_fk", null, products, List.of("product_id"), invoiceDetails, List.of("product_id"));
+        ForeignKeyGraph foreignKeyGraph = ForeignKeyGraph.build(List.of(
+                table(customers),
+                table(invoices, invoicesCustomersFk),
+                table(invoiceDetails, detailsInvoicesFk, detailsProductsFk),
+                table(products)
+        ));
+
+        assertEquals(List.of(), foreignKeyGraph.getForeignKeys(customers));
+        assertEquals(List.of(invoicesCustomersFk), foreignKeyGraph.getRelatedForeignKeys(customers));
+        assertEquals(List.of(invoicesCustomersFk), foreignKeyGraph.getForeignKeys(invoices));
+        assertEquals(List.of(detailsInvoicesFk), foreignKeyGraph.getRelatedForeignKeys(invoices));
+        assertEquals(List.of(detailsInvoicesFk, detailsProductsFk), foreignKeyGraph.getForeignKeys(invoiceDetails));
+        assertEquals(List.of(), foreignKeyGraph.getRelatedForeignKeys(invoiceDetails));
+        assertEquals(List.of(), foreignKeyGraph.getForeignKeys(new TableName("dbpop", "dbo", "unknown")));
+
+        assertThrows(UnsupportedOperationException.class, () -> foreignKeyGraph.getForeignKeys(invoices).clear());
+    }
+
+    private static Table table(TableName tableName, ForeignKey... foreignKeys) {
+        return new Table(tableName, List.of(), List.of(), null, List.of(foreignKeys));
+    }
+}
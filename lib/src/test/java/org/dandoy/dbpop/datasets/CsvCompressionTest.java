@@ -0,0 +1,80 @@
+package org.dandoy.dbpop.datasets;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.dandoy.dbpop.database.TableName;
+import org.dandoy.dbpop.download.DeferredCsvPrinter;
+import org.dandoy.dbpop.upload.DataFile;
+import org.dandoy.dbpop.upload.DataReader;
+import org.dandoy.dbpop.upload.Dataset;
+import org.dandoy.dbpop.utils.DbPopUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvCompressionTest {
+    private static final TableName customers = new TableName("dbpop", "dbo", "customers");
+
+    @Test
+    void gzip(@TempDir File datasetsDirectory) throws IOException {
+        DatasetSettings.setCompression(datasetsDirectory, "base", CsvCompression.GZIP);
+        File file = DbPopUtils.getOutputFile(datasetsDirectory, "base", customers);
+        assertEquals("customers.csv.gz", file.getName());
+
+        // The second printer appends a gzip member
+        try (DeferredCsvPrinter csvPrinter = new DeferredCsvPrinter(file, List.of("id", "name"))) {
+            csvPrinter.print("1");
+            csvPrinter.print("Smith, John");
+            csvPrinter.println();
+        }
+        try (DeferredCsvPrinter csvPrinter = new DeferredCsvPrinter(file, List.of("id", "name"))) {
+            csvPrinter.print("2");
+            csvPrinter.print(null);
+            csvPrinter.println();
+        }
+
+        List<List<String>> expected = List.of(
+                List.of("1", "Smith, John"),
+                new ArrayList<>(Arrays.asList("2", null))
+        );
+        try (CSVParser csvParser = DbPopUtils.createCsvParser(file)) {
+            assertEquals(List.of("id", "name"), csvParser.getHeaderNames());
+            List<List<String>> actual = new ArrayList<>();
+            for (CSVRecord csvRecord : csvParser) {
+                actual.add(new ArrayList<>(csvRecord.toList()));
+            }
+            assertEquals(expected, actual);
+        }
+        try (DataReader dataReader = DbPopUtils.createDataReader(file)) {
+            assertEquals(List.of("id", "name"), dataReader.getHeaderNames());
+            List<List<String>> actual = new ArrayList<>();
+            while (dataReader.next()) {
+                actual.add(new ArrayList<>(Arrays.asList(dataReader.get(0), dataReader.get(1))));
+            }
+            assertEquals(expected, actual);
+        }
+
+        Dataset dataset = Datasets.getDataset(datasetsDirectory, "base");
+        assertEquals(List.of(customers), dataset.getDataFiles().stream().map(DataFile::getTableName).toList());
+
+        // The existing file keeps its format
+        DatasetSettings.setCompression(datasetsDirectory, "base", CsvCompression.NONE);
+        assertEquals(file, DbPopUtils.getOutputFile(datasetsDirectory, "base", customers));
+    }
+
+    @Test
+    void duplicateDataFiles(@TempDir File datasetsDirectory) throws IOException {
+        File dir = new File(datasetsDirectory, "base/dbpop/dbo");
+        assertTrue(dir.mkdirs());
+        assertTrue(new File(dir, "customers.csv").createNewFile());
+        assertTrue(new File(dir, "customers.csv.gz").createNewFile());
+        assertThrows(RuntimeException.class, () -> Datasets.getDataset(datasetsDirectory, "base"));
+    }
+}
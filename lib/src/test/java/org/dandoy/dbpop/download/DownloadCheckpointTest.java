@@ -0,0 +1,55 @@
+package org.dandoy.dbpop.download;
+
+import org.dandoy.dbpop.database.TableName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadCheckpointTest {
+    private static final TableName customers = new TableName("dbpop", "dbo", "customers");
+    private static final TableName invoices = new TableName("dbpop", "dbo", "invoices");
+
+    @Test
+    void resume(@TempDir File datasetsDirectory) {
+        try (DownloadCheckpoint checkpoint = DownloadCheckpoint.open(datasetsDirectory, "base", false)) {
+            checkpoint.tableCompleted(customers);
+            checkpoint.primaryKeyWritten(invoices, List.of("1000", "a,b"));
+            checkpoint.primaryKeyWritten(invoices, List.of("2000", "c\"d"));
+        }
+
+        try (DownloadCheckpoint checkpoint = DownloadCheckpoint.open(datasetsDirectory, "base", true)) {
+            assertTrue(checkpoint.isCompleted(customers));
+            assertFalse(checkpoint.isCompleted(invoices));
+            assertNull(checkpoint.getLastPrimaryKey(customers));
+            assertEquals(List.of("2000", "c\"d"), checkpoint.getLastPrimaryKey(invoices));
+
+            checkpoint.tableCompleted(invoices);
+            assertNull(checkpoint.getLastPrimaryKey(invoices));
+        }
+    }
+
+    @Test
+    void restart(@TempDir File datasetsDirectory) {
+        try (DownloadCheckpoint checkpoint = DownloadCheckpoint.open(datasetsDirectory, "base", false)) {
+            checkpoint.tableCompleted(customers);
+        }
+        try (DownloadCheckpoint checkpoint = DownloadCheckpoint.open(datasetsDirectory, "base", false)) {
+            assertFalse(checkpoint.isCompleted(customers));
+        }
+    }
+
+    @Test
+    void delete(@TempDir File datasetsDirectory) {
+        File file = DownloadCheckpoint.getCheckpointFile(datasetsDirectory, "base");
+        try (DownloadCheckpoint checkpoint = DownloadCheckpoint.open(datasetsDirectory, "base", false)) {
+            checkpoint.tableCompleted(customers);
+            assertTrue(file.exists());
+            checkpoint.delete();
+        }
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,84 @@
+package org.dandoy.dbpop.download;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimaryKeyIndexTest {
+    @Test
+    void appendAndRead(@TempDir File dir) throws IOException {
+        File csvFile = new File(dir, "customers.csv");
+        write(csvFile, List.of("1", "a,b"));
+        write(csvFile, Arrays.asList("2", null), List.of("3", "\u00e9"));
+
+        List<List<String>> keys = new ArrayList<>();
+        assertTrue(PrimaryKeyIndex.read(csvFile, keys::add));
+        assertEquals(List.of(List.of("1", "a,b"), Arrays.asList("2", null), List.of("3", "\u00e9")), keys);
+    }
+
+    @Test
+    void modifiedCsvFile(@TempDir File dir) throws IOException {
+        File csvFile = new File(dir, "customers.csv");
+        write(csvFile, List.of("1", "a"));
+        Files.writeString(csvFile.toPath(), "1,b\n", StandardOpenOption.APPEND);
+
+        assertFalse(PrimaryKeyIndex.read(csvFile, key -> fail()));
+        // The index cannot be maintained anymore
+        write(csvFile, List.of("2", "c"));
+        assertFalse(PrimaryKeyIndex.getIndexFile(csvFile).exists());
+    }
+
+    @Test
+    void emptyTable(@TempDir File dir) throws IOException {
+        File csvFile = new File(dir, "customers.csv");
+        write(csvFile);
+        assertTrue(csvFile.exists());
+
+        // The index of the empty file is complete
+        assertTrue(PrimaryKeyIndex.read(csvFile, key -> fail()));
+        write(csvFile, List.of("1", "a"));
+        List<List<String>> keys = new ArrayList<>();
+        assertTrue(PrimaryKeyIndex.read(csvFile, keys::add));
+        assertEquals(List.of(List.of("1", "a")), keys);
+    }
+
+    @Test
+    void appendRecordsFile(@TempDir File dir) throws IOException {
+        File csvFile = new File(dir, "customers.csv");
+        File chunkFile = new File(dir, "chunk.csv.part");
+        try (DeferredCsvPrinter chunkPrinter = new DeferredCsvPrinter(chunkFile, null, true)) {
+            chunkPrinter.print("2");
+            chunkPrinter.println(List.of("2"));
+        }
+        try (DeferredCsvPrinter csvPrinter = new DeferredCsvPrinter(csvFile, List.of("id"), true)) {
+            csvPrinter.print("1");
+            csvPrinter.println(List.of("1"));
+            csvPrinter.append(chunkFile);
+        }
+
+        List<List<String>> keys = new ArrayList<>();
+        assertTrue(PrimaryKeyIndex.read(csvFile, keys::add));
+        assertEquals(List.of(List.of("1"), List.of("2")), keys);
+    }
+
+    @SafeVarargs
+    private static void write(File csvFile, List<String>... pks) throws IOException {
+        try (DeferredCsvPrinter csvPrinter = new DeferredCsvPrinter(csvFile, List.of("id", "name"), true)) {
+            for (List<String> pk : pks) {
+                for (String value : pk) {
+                    csvPrinter.print(value);
+                }
+                csvPrinter.println(pk);
+            }
+        }
+    }
+}
@@ -51,6 +51,25 @@ class ExecutionPlanTest {
         assertRowCounts(rowCounts, products, 3);
     }
 
+    @Test
+    void testFullModelPipelined() throws IOException {
+        TestUtils.delete(TestUtils.TEMP_DIR);
+        TableExecutionModel tableExecutionModel = readTableExecutionModel("fullTableExecutionModel1.json");
+        ExecutionContext executionContext = ExecutionPlan.execute(sourceDatabase, DATASETS_DIRECTORY, "download", invoices, tableExecutionModel, Collections.emptyList(), Collections.emptySet(), ExecutionMode.SAVE, null, true);
+        Map<TableName, Integer> rowCounts = executionContext.getRowCounts();
+        assertRowCounts(rowCounts, invoices, 4);
+        assertRowCounts(rowCounts, invoiceDetails, 7);
+        assertRowCounts(rowCounts, customers, 2);
+        assertRowCounts(rowCounts, products, 3);
+    }
+
+    @Test
+    void testRowCountLimitPipelined() throws IOException {
+        TableExecutionModel tableExecutionModel = readTableExecutionModel("fullTableExecutionModel1.json");
+        ExecutionContext executionContext = ExecutionPlan.execute(sourceDatabase, DATASETS_DIRECTORY, "download", invoices, tableExecutionModel, Collections.emptyList(), Collections.emptySet(), ExecutionMode.COUNT, 3, true);
+        Assertions.assertEquals(3, executionContext.getTotalRowCount());
+    }
+
     @Test
     void testRowCountLimit() throws IOException {
         TableExecutionModel tableExecutionModel = readTableExecutionModel("fullTableExecutionModel1.json");
@@ -1,21 +1,34 @@
 package org.dandoy.dbpop.mssql;
 
 import org.dandoy.dbpop.database.*;
+import org.dandoy.dbpop.tests.mssql.DbPopContainerSetup;
 import org.dandoy.dbpop.tests.mssql.DbPopContainerTest;
+import org.dandoy.dbpop.upload.PopulateCancelledException;
 import org.dandoy.dbpop.upload.Populator;
+import org.dandoy.dbpop.upload.PopulatorListener;
+import org.dandoy.dbpop.utils.ExceptionUtils;
 import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.dandoy.dbpop.mssql.MsSqlTestUtils.customers;
 import static org.dandoy.dbpop.mssql.MsSqlTestUtils.invoices;
@@ -103,6 +116,384 @@ public class SqlServerTests {
         testExpressions();
     }
 
+    @Test
+    void testCancelPopulate() throws SQLException {
+        Populator populator = Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql"));
+        populator.load("base");
+        assertCount(targetConnection, "customers", 3);
+
+        List<TableName> startedTables = new ArrayList<>();
+        populator.setPopulatorListener(new PopulatorListener() {
+            @Override
+            public void tableStarted(TableName tableName) {
+                startedTables.add(tableName);
+            }
+
+            @Override
+            public boolean keepRunning() {
+                return startedTables.isEmpty();
+            }
+        });
+        RuntimeException e = assertThrows(RuntimeException.class, () -> populator.load("extra"));
+        assertTrue(ExceptionUtils.getCause(e, PopulateCancelledException.class).isPresent());
+        assertEquals(1, startedTables.size());
+
+        // Rolled back
+        assertCount(targetConnection, "customers", 3);
+        assertCount(targetConnection, "invoices", 4);
+        assertCount(targetConnection, "invoice_details", 7);
+        assertCount(targetConnection, "products", 3);
+    }
+
+    @Test
+    void testParallelPopulate() throws SQLException {
+        Populator populator = Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql"))
+                .setParallelism(3);
+        for (int i = 0; i < 2; i++) {
+            populator.load("base");
+            assertCount(targetConnection, "customers", 3);
+            assertCount(targetConnection, "invoices", 4);
+            assertCount(targetConnection, "invoice_details", 7);
+            assertCount(targetConnection, "products", 3);
+            assertCount(targetConnection, "customer_types", 2);
+            assertCount(targetConnection, "product_categories", 2);
+        }
+
+        populator.load("extra");
+        assertCount(targetConnection, "customers", 4);
+        assertCount(targetConnection, "invoices", 4);
+
+        try (Statement statement = targetConnection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM dbpop.sys.foreign_keys WHERE is_disabled = 1")) {
+                assertTrue(resultSet.next());
+                assertEquals(0, resultSet.getInt(1), "The foreign keys must be enabled again");
+            }
+        }
+        populator.load("base");
+    }
+
+    /**
+     * The rows inserted before the cancellation violate the foreign keys, the populate must still be rolled back
+     */
+    @Test
+    void testCancelPopulateWithOrphans(@TempDir File datasetsDirectory) throws IOException, SQLException {
+        writeDataFile(datasetsDirectory, "base", "customers", "customer_id,customer_type_id,name\n201,,Orphan Customer\n");
+        writeDataFile(datasetsDirectory, "base", "invoices", "invoice_id,customer_id,invoice_date\n2001,999,2022-01-01 00:00:00.0\n");
+        writeDataFile(datasetsDirectory, "base", "invoice_details", "invoice_detail_id,invoice_id,product_id\n");
+        writeDataFile(datasetsDirectory, "extra", "customers", "customer_id,customer_type_id,name\n202,,Never Loaded\n");
+
+        for (int parallelism : new int[]{1, 2}) {
+            Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql")).load("base");
+
+            List<String> populatedDatasets = new ArrayList<>();
+            Populator populator = Populator.createPopulator(targetDatabase, datasetsDirectory)
+                    .setParallelism(parallelism)
+                    .setPopulatorListener(new PopulatorListener() {
+                        @Override
+                        public void afterPopulate(String dataset) {
+                            populatedDatasets.add(dataset);
+                        }
+
+                        @Override
+                        public boolean keepRunning() {
+                            return populatedDatasets.isEmpty();
+                        }
+                    });
+            RuntimeException e = assertThrows(RuntimeException.class, () -> populator.load("base", "extra"));
+            assertTrue(ExceptionUtils.getCause(e, PopulateCancelledException.class).isPresent(), "The cancellation must remain the primary exception");
+            assertEquals(List.of("base"), populatedDatasets);
+
+            if (parallelism == 1) {
+                // Rolled back
+                assertCount(targetConnection, "customers", 3);
+                assertCount(targetConnection, "invoices", 4);
+                assertCount(targetConnection, "invoice_details", 7);
+            } else {
+                // The deletes have been committed before the parallel inserts
+                assertCount(targetConnection, "customers", 1);
+                assertCount(targetConnection, "invoices", 1);
+                assertCount(targetConnection, "invoice_details", 0);
+            }
+            assertCount(targetConnection, "products", 3);
+            try (Statement statement = targetConnection.createStatement()) {
+                try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM dbpop.sys.foreign_keys WHERE is_disabled = 1")) {
+                    assertTrue(resultSet.next());
+                    assertEquals(0, resultSet.getInt(1), "The foreign keys must be enabled again");
+                }
+            }
+        }
+        Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql")).load("base");
+    }
+
+    private static void writeDataFile(File datasetsDirectory, String dataset, String table, String content) throws IOException {
+        File file = new File(datasetsDirectory, dataset + "/dbpop/dbo/" + table + ".csv");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), content);
+    }
+
+    /**
+     * The bulk insert must load the same values as the INSERT statements
+     */
+    @Test
+    void testBulkInsert(@TempDir File datasetsDirectory) throws IOException, SQLException {
+        writeDataFile(datasetsDirectory, "base", "bulk_test", """
+                id,name,data*b64,created
+                1,,AQID,2023-01-02 03:04:05
+                2,"",,{{yesterday}}
+                3," ",AA==,
+                4,"a ""b"", c",,2023-01-02 00:00:00
+                5,\\N,"",1999-12-31 23:59:59
+                """);
+        try (Statement statement = targetConnection.createStatement()) {
+            statement.execute("USE dbpop");
+            statement.execute("DROP TABLE IF EXISTS dbo.bulk_test");
+            statement.execute("CREATE TABLE dbo.bulk_test (id INT PRIMARY KEY, name VARCHAR(32), data VARBINARY(16), created DATETIME)");
+        }
+        try {
+            Populator.createPopulator(targetDatabase, datasetsDirectory).load("base");
+            List<List<Object>> inserted = selectBulkTest();
+            Populator.createPopulator(targetDatabase, datasetsDirectory).setBulkInsert(true).load("base");
+            List<List<Object>> bulkInserted = selectBulkTest();
+
+            assertEquals(5, bulkInserted.size());
+            assertEquals(inserted.stream().map(row -> row.subList(0, 3)).toList(), bulkInserted.stream().map(row -> row.subList(0, 3)).toList());
+            assertNull(bulkInserted.get(0).get(1), "An empty cell is NULL");
+            assertNull(bulkInserted.get(1).get(1), "An empty quoted cell is NULL");
+            assertEquals(" ", bulkInserted.get(2).get(1));
+            assertEquals("a \"b\", c", bulkInserted.get(3).get(1));
+            assertEquals("\\N", bulkInserted.get(4).get(1));
+            assertEquals("010203", bulkInserted.get(0).get(2));
+            assertEquals("00", bulkInserted.get(2).get(2));
+            assertNull(bulkInserted.get(1).get(2));
+            assertEquals(Timestamp.valueOf("2023-01-02 03:04:05"), bulkInserted.get(0).get(3));
+            assertNull(bulkInserted.get(2).get(3));
+            long yesterday = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            long created = ((Timestamp) bulkInserted.get(1).get(3)).getTime();
+            assertTrue(Math.abs(created - yesterday) < TimeUnit.MINUTES.toMillis(5), "The expression is evaluated");
+        } finally {
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("DROP TABLE IF EXISTS dbo.bulk_test");
+            }
+        }
+    }
+
+    private List<List<Object>> selectBulkTest() throws SQLException {
+        List<List<Object>> rows = new ArrayList<>();
+        try (Statement statement = targetConnection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT id, name, data, created FROM dbpop.dbo.bulk_test ORDER BY id")) {
+                while (resultSet.next()) {
+                    byte[] data = resultSet.getBytes("data");
+                    rows.add(Arrays.asList(
+                            resultSet.getInt("id"),
+                            resultSet.getString("name"),
+                            data == null ? null : HexFormat.of().formatHex(data),
+                            resultSet.getTimestamp("created")
+                    ));
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    void testDeferIndexes() throws SQLException {
+        try (Statement statement = targetConnection.createStatement()) {
+            statement.execute("USE dbpop");
+            statement.execute("CREATE INDEX invoices_customer_idx ON dbo.invoices (customer_id)");
+        }
+        try {
+            List<Boolean> disabledDuringLoad = new ArrayList<>();
+            Populator populator = Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql"))
+                    .setDeferIndexes(true)
+                    .setDeferIndexesMinSize(0)
+                    .setPopulatorListener(new PopulatorListener() {
+                        @Override
+                        public void tableStarted(TableName tableName) {
+                            if (tableName.equals(invoices)) {
+                                disabledDuringLoad.add(isInvoicesCustomerIndexDisabled());
+                            }
+                        }
+                    });
+            populator.load("base");
+            assertCount(targetConnection, "invoices", 4);
+            assertEquals(List.of(true), disabledDuringLoad);
+            assertFalse(isInvoicesCustomerIndexDisabled());
+        } finally {
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("DROP INDEX IF EXISTS invoices_customer_idx ON dbo.invoices");
+            }
+        }
+    }
+
+    private boolean isInvoicesCustomerIndexDisabled() {
+        try (Statement statement = targetConnection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT is_disabled FROM dbpop.sys.indexes WHERE name = 'invoices_customer_idx'")) {
+                assertTrue(resultSet.next());
+                return resultSet.getBoolean(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void testMinimalLogging() throws SQLException {
+        try (Statement statement = targetConnection.createStatement()) {
+            statement.execute("ALTER DATABASE dbpop SET RECOVERY FULL");
+        }
+        Populator populator = Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql"))
+                .setMinimalLogging(true);
+        populator.load("base");
+        assertCount(targetConnection, "customers", 3);
+        assertCount(targetConnection, "invoices", 4);
+        assertCount(targetConnection, "invoice_details", 7);
+        assertCount(targetConnection, "products", 3);
+
+        try (Statement statement = targetConnection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT recovery_model_desc FROM sys.databases WHERE name = 'dbpop'")) {
+                assertTrue(resultSet.next());
+                assertEquals("FULL", resultSet.getString(1));
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM dbpop.sys.indexes WHERE is_disabled = 1")) {
+                assertTrue(resultSet.next());
+                assertEquals(0, resultSet.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    void testDatabaseCacheInvalidation() throws SQLException {
+        TableName cacheTest = new TableName("dbpop", "dbo", "cache_test");
+        try (Statement statement = targetConnection.createStatement()) {
+            statement.execute("USE dbpop");
+            statement.execute("DROP TABLE IF EXISTS dbo.cache_test");
+            statement.execute("CREATE TABLE dbo.cache_test (id INT PRIMARY KEY)");
+        }
+        try {
+            DatabaseCache databaseCache = new DatabaseCache(targetDatabase, VirtualFkCache.createVirtualFkCache());
+            Table customersTable = databaseCache.getTable(customers);
+            assertEquals(1, databaseCache.getTable(cacheTest).getColumns().size());
+            assertEquals(Set.of(), databaseCache.invalidateChangedTables());
+
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("ALTER TABLE dbo.cache_test ADD name VARCHAR(32)");
+            }
+            assertEquals(Set.of(cacheTest), databaseCache.invalidateChangedTables());
+            assertEquals(2, databaseCache.getTable(cacheTest).getColumns().size());
+            assertSame(customersTable, databaseCache.getTable(customers), "The other tables must not be reloaded");
+
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("DROP TABLE dbo.cache_test");
+            }
+            assertEquals(Set.of(cacheTest), databaseCache.invalidateChangedTables());
+            assertNull(databaseCache.getTable(cacheTest));
+        } finally {
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("DROP TABLE IF EXISTS dbo.cache_test");
+            }
+        }
+    }
+
+    @Test
+    void testResetTables() throws SQLException {
+        TableName resetParent = new TableName("dbpop", "dbo", "reset_parent");
+        TableName resetChild = new TableName("dbpop", "dbo", "reset_child");
+        TableName resetEmpty = new TableName("dbpop", "dbo", "reset_empty");
+        try (Statement statement = targetConnection.createStatement()) {
+            statement.execute("USE dbpop");
+            statement.execute("DROP TABLE IF EXISTS dbo.reset_child");
+            statement.execute("DROP TABLE IF EXISTS dbo.reset_parent");
+            statement.execute("DROP TABLE IF EXISTS dbo.reset_empty");
+            statement.execute("CREATE TABLE dbo.reset_parent (id INT IDENTITY PRIMARY KEY, name VARCHAR(32))");
+            statement.execute("CREATE TABLE dbo.reset_child (id INT IDENTITY PRIMARY KEY, parent_id INT REFERENCES dbo.reset_parent)");
+            statement.execute("CREATE TABLE dbo.reset_empty (id INT PRIMARY KEY)");
+            statement.execute("INSERT INTO dbo.reset_parent (name) VALUES ('a'), ('b')");
+            statement.execute("INSERT INTO dbo.reset_child (parent_id) VALUES (1), (2)");
+        }
+        try {
+            // reset_child is truncated first, reset_parent is referenced by reset_child and must be deleted
+            targetDatabase.resetTables(List.of(resetParent, resetChild, resetEmpty));
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("INSERT INTO dbo.reset_parent (name) VALUES ('c')");
+                statement.execute("INSERT INTO dbo.reset_child (parent_id) VALUES (3)");
+                try (ResultSet resultSet = statement.executeQuery("SELECT id FROM dbo.reset_parent")) {
+                    assertTrue(resultSet.next());
+                    assertEquals(3, resultSet.getInt(1), "DELETE keeps the identity");
+                    assertFalse(resultSet.next());
+                }
+                try (ResultSet resultSet = statement.executeQuery("SELECT id FROM dbo.reset_child")) {
+                    assertTrue(resultSet.next());
+                    assertEquals(1, resultSet.getInt(1), "TRUNCATE resets the identity");
+                    assertFalse(resultSet.next());
+                }
+            }
+        } finally {
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("DROP TABLE IF EXISTS dbo.reset_child");
+                statement.execute("DROP TABLE IF EXISTS dbo.reset_parent");
+                statement.execute("DROP TABLE IF EXISTS dbo.reset_empty");
+            }
+        }
+    }
+
+    @Test
+    void testSnapshot() throws SQLException {
+        Populator populator = Populator.createPopulator(targetDatabase, new File("src/test/resources/mssql"));
+        populator.load("base");
+        targetDatabase.createSnapshot("dbpop");
+        try {
+            assertTrue(databaseExists("dbpop_dbpop_snapshot"));
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("USE dbpop");
+                statement.execute("DELETE FROM dbo.invoice_details");
+                statement.execute("CREATE TABLE dbo.snapshot_test (id INT PRIMARY KEY)");
+            }
+            try (Connection otherConnection = DbPopContainerSetup.getTargetContainer().createConnection("")) {
+                try (Statement statement = otherConnection.createStatement()) {
+                    statement.execute("USE dbpop");
+                }
+
+                targetDatabase.restoreSnapshot("dbpop");
+
+                // SET SINGLE_USER WITH ROLLBACK IMMEDIATE kills the other sessions of the catalog
+                assertThrows(SQLException.class, () -> {
+                    try (Statement statement = otherConnection.createStatement()) {
+                        statement.execute("SELECT 1");
+                    }
+                });
+            }
+            assertEquals("dbpop", targetConnection.getCatalog());
+            assertCount(targetConnection, "invoice_details", 7);
+            // The whole catalog is reverted, not only the tables of the datasets
+            try (Statement statement = targetConnection.createStatement()) {
+                try (ResultSet resultSet = statement.executeQuery("SELECT OBJECT_ID('dbpop.dbo.snapshot_test')")) {
+                    assertTrue(resultSet.next());
+                    assertNull(resultSet.getObject(1));
+                }
+            }
+        } finally {
+            targetDatabase.dropSnapshot("dbpop");
+        }
+        assertFalse(databaseExists("dbpop_dbpop_snapshot"));
+    }
+
+    private boolean databaseExists(String name) throws SQLException {
+        try (PreparedStatement preparedStatement = targetConnection.prepareStatement("SELECT DB_ID(?)")) {
+            preparedStatement.setString(1, name);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                assertTrue(resultSet.next());
+                return resultSet.getObject(1) != null;
+            }
+        }
+    }
+
     private void testExpressions() {
         Populator populator = Populator.createPopulator(targetDatabase, new File("src/test/resources/test_expressions"));
         populator.load("base");
@@ -2,6 +2,7 @@ package org.dandoy.dbpop.mssql;
 
 import org.dandoy.dbpop.database.Database;
 import org.dandoy.dbpop.database.Table;
+import org.dandoy.dbpop.download.ExecutionContext;
 import org.dandoy.dbpop.download.ExecutionMode;
 import org.dandoy.dbpop.download.TableDownloader;
 import org.dandoy.dbpop.tests.TestUtils;
@@ -11,11 +12,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import static org.dandoy.dbpop.mssql.MsSqlTestUtils.invoiceDetails;
 import static org.dandoy.dbpop.mssql.MsSqlTestUtils.invoices;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @DbPopContainerTest(source = true, target = false)
 class TableDownloaderTest {
@@ -54,6 +59,37 @@ class TableDownloaderTest {
         TestUtils.delete(TEST_DIR);
     }
 
+    @Test
+    void testByPrimaryKeySet() {
+        TestUtils.delete(TEST_DIR);
+
+        File datasetsDirectory = new File("src/test/resources/mssql");
+
+        Table table = sourceDatabase.getTable(invoices);
+        ExecutionContext executionContext = new ExecutionContext();
+        try (TableDownloader tableDownloader = TableDownloader.builder()
+                .setDatabase(sourceDatabase)
+                .setDatasetsDirectory(datasetsDirectory)
+                .setDataset("download")
+                .setTableName(invoices)
+                .setFilteredColumns(table.getPrimaryKey().getColumns())
+                .setExecutionMode(ExecutionMode.SAVE)
+                .setExecutionContext(executionContext)
+                .build()) {
+
+            // More keys than a chain of OR can hold
+            Set<List<Object>> pks = new HashSet<>();
+            for (int i = 0; i < 500; i++) {
+                pks.add(List.of(-i));
+            }
+            pks.add(List.of(1001));
+            pks.add(List.of(1002));
+            tableDownloader.download(pks);
+        }
+        assertEquals(2, executionContext.getRowCounts().get(invoices).intValue());
+        TestUtils.delete(TEST_DIR);
+    }
+
     @Test
     void testByForeignKey() {
         TestUtils.delete(TEST_DIR);
@@ -96,4 +132,33 @@ class TableDownloaderTest {
         }
         TestUtils.delete(TEST_DIR);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testChunked() throws IOException {
+        TestUtils.delete(TEST_DIR);
+        File datasetsDirectory = new File("src/test/resources/mssql");
+        File file = new File(datasetsDirectory, "download/dbpop/dbo/invoices.csv");
+
+        try (TableDownloader tableDownloader = TableDownloader.builder()
+                .setDatabase(sourceDatabase)
+                .setDatasetsDirectory(datasetsDirectory)
+                .setDataset("download")
+                .setTableName(invoices)
+                .build()) {
+            tableDownloader.download();
+        }
+        String expected = Files.readString(file.toPath());
+        TestUtils.delete(TEST_DIR);
+
+        try (TableDownloader tableDownloader = TableDownloader.builder()
+                .setDatabase(sourceDatabase)
+                .setDatasetsDirectory(datasetsDirectory)
+                .setDataset("download")
+                .setTableName(invoices)
+                .build()) {
+            tableDownloader.download(10, 3, 2);
+        }
+        assertEquals(expected, Files.readString(file.toPath()));
+        TestUtils.delete(TEST_DIR);
+    }
+}
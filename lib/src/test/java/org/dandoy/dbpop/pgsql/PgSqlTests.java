@@ -8,19 +8,27 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * I need to rethink the tests since postgres makes it hard to connect across databases.
@@ -111,6 +119,72 @@ public class PgSqlTests {
         }
     }
 
+    /**
+     * The COPY must load the same values as the INSERT statements: quoting, NULLs, bytea in hex and expressions
+     */
+    @Test
+    void bulkInsert(@TempDir File datasetsDirectory) throws IOException, SQLException {
+        String catalog = targetConnection.getCatalog();
+        File file = new File(datasetsDirectory, "base/" + catalog + "/public/bulk_test.csv");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), """
+                id,name,data*b64,created
+                1,,AQID,2023-01-02 03:04:05
+                2,"",,{{yesterday}}
+                3," ",AA==,
+                4,"a ""b"", c",,2023-01-02 00:00:00
+                5,\\N,"",1999-12-31 23:59:59
+                """);
+        try (Statement statement = targetConnection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS public.bulk_test");
+            statement.execute("CREATE TABLE public.bulk_test (id INT PRIMARY KEY, name VARCHAR(32), data BYTEA, created TIMESTAMP)");
+        }
+        try {
+            Populator.createPopulator(targetDatabase, datasetsDirectory).load("base");
+            List<List<Object>> inserted = selectBulkTest();
+            Populator.createPopulator(targetDatabase, datasetsDirectory).setBulkInsert(true).load("base");
+            List<List<Object>> bulkInserted = selectBulkTest();
+
+            assertEquals(5, bulkInserted.size());
+            assertEquals(inserted.stream().map(row -> row.subList(0, 3)).toList(), bulkInserted.stream().map(row -> row.subList(0, 3)).toList());
+            assertNull(bulkInserted.get(0).get(1), "An empty cell is NULL");
+            assertNull(bulkInserted.get(1).get(1), "An empty quoted cell is NULL");
+            assertEquals(" ", bulkInserted.get(2).get(1));
+            assertEquals("a \"b\", c", bulkInserted.get(3).get(1));
+            assertEquals("\\N", bulkInserted.get(4).get(1), "COPY must not read \\N as NULL");
+            assertEquals("010203", bulkInserted.get(0).get(2));
+            assertEquals("00", bulkInserted.get(2).get(2));
+            assertNull(bulkInserted.get(1).get(2));
+            assertEquals(Timestamp.valueOf("2023-01-02 03:04:05"), bulkInserted.get(0).get(3));
+            assertNull(bulkInserted.get(2).get(3));
+            long yesterday = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            long created = ((Timestamp) bulkInserted.get(1).get(3)).getTime();
+            assertTrue(Math.abs(created - yesterday) < TimeUnit.MINUTES.toMillis(5), "The expression is evaluated");
+        } finally {
+            try (Statement statement = targetConnection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS public.bulk_test");
+            }
+        }
+    }
+
+    private static List<List<Object>> selectBulkTest() throws SQLException {
+        List<List<Object>> rows = new ArrayList<>();
+        try (Statement statement = targetConnection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT id, name, data, created FROM public.bulk_test ORDER BY id")) {
+                while (resultSet.next()) {
+                    byte[] data = resultSet.getBytes("data");
+                    rows.add(Arrays.asList(
+                            resultSet.getInt("id"),
+                            resultSet.getString("name"),
+                            data == null ? null : HexFormat.of().formatHex(data),
+                            resultSet.getTimestamp("created")
+                    ));
+                }
+            }
+        }
+        return rows;
+    }
+
     public static void assertCount(Connection connection, String table, int expected) throws SQLException {
         try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT COUNT(*) FROM dbpop.public." + table)) {
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
@@ -0,0 +1,111 @@
+package org.dandoy.dbpop.upload;
+
+import org.dandoy.dbpop.utils.DbPopUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryDataFileTest {
+    private static final String CSV = """
+            id,code,amount,created,day,at,data*b64,name
+            1,007,12.50,2023-01-02 03:04:05,2023-01-02,03:04:05,AQID,"Smith, John"
+            -2,8,1E+3,2023-01-02 03:04:05.6,2023-01-02,03:04:05.123,,
+            3,,0,2023-01-02,,,{{b64}},{{yesterday}}
+            4,x,-0.5,,1999-12-31,23:59:59,AA==,""
+            """;
+
+    @Test
+    void roundTrip(@TempDir File dir) throws IOException {
+        File csvFile = new File(dir, "customers.csv");
+        Files.writeString(csvFile.toPath(), CSV);
+        List<List<String>> expected = readAll(CsvDataReader.open(csvFile));
+
+        // Inferred column types
+        BinaryDataFile.writeBinaryFile(csvFile, null);
+        assertSameRows(csvFile);
+
+        // The values that are not in the canonical format of their column type are kept as text
+        BinaryDataFile.writeBinaryFile(csvFile, List.of(
+                BinaryColumnType.LONG,
+                BinaryColumnType.LONG,
+                BinaryColumnType.DECIMAL,
+                BinaryColumnType.TIMESTAMP,
+                BinaryColumnType.DATE,
+                BinaryColumnType.TIME,
+                BinaryColumnType.BYTES,
+                BinaryColumnType.STRING
+        ));
+        assertSameRows(csvFile);
+
+        // The binary file is ignored once the CSV file changes
+        Files.writeString(csvFile.toPath(), "5,,,,,,,\n", StandardOpenOption.APPEND);
+        assertFalse(BinaryDataFile.isValid(csvFile));
+        try (DataReader dataReader = DbPopUtils.createDataReader(csvFile)) {
+            assertFalse(dataReader instanceof BinaryDataReader);
+        }
+
+        // The CSV file can be written back from the binary file
+        BinaryDataFile.writeCsvFile(csvFile);
+        assertTrue(BinaryDataFile.isValid(csvFile));
+        assertEquals(expected, readAll(CsvDataReader.open(csvFile)));
+    }
+
+    @Test
+    void emptyFile(@TempDir File dir) throws IOException {
+        File csvFile = new File(dir, "customers.csv");
+        assertTrue(csvFile.createNewFile());
+        BinaryDataFile.writeBinaryFile(csvFile, List.of(BinaryColumnType.LONG));
+        try (DataReader dataReader = DbPopUtils.createDataReader(csvFile)) {
+            assertInstanceOf(BinaryDataReader.class, dataReader);
+            assertEquals(List.of(), dataReader.getHeaderNames());
+            assertFalse(dataReader.next());
+        }
+    }
+
+    private static void assertSameRows(File csvFile) throws IOException {
+        assertTrue(BinaryDataFile.isValid(csvFile));
+        try (DataReader csvReader = CsvDataReader.open(csvFile);
+             DataReader binaryReader = DbPopUtils.createDataReader(csvFile)) {
+            assertInstanceOf(BinaryDataReader.class, binaryReader);
+            assertEquals(csvReader.getHeaderNames(), binaryReader.getHeaderNames());
+            while (csvReader.next()) {
+                assertTrue(binaryReader.next());
+                for (int i = 0; i < csvReader.size(); i++) {
+                    assertEquals(csvReader.get(i), binaryReader.get(i));
+                    assertEquals(csvReader.isNull(i), binaryReader.isNull(i));
+                    assertEquals(csvReader.isExpression(i), binaryReader.isExpression(i));
+                }
+                assertEquals(csvReader.getLong(0), binaryReader.getLong(0));
+                assertEquals(csvReader.getBigDecimal(0), binaryReader.getBigDecimal(0));
+                if (!csvReader.isNull(3)) assertEquals(csvReader.getTimestamp(3), binaryReader.getTimestamp(3));
+                if (!csvReader.isNull(4)) assertEquals(csvReader.getDate(4), binaryReader.getDate(4));
+                if (!csvReader.isNull(5)) assertEquals(csvReader.getTime(5), binaryReader.getTime(5));
+                if (!csvReader.isNull(6) && !csvReader.isExpression(6)) assertArrayEquals(csvReader.getBytes(6), binaryReader.getBytes(6));
+            }
+            assertFalse(binaryReader.next());
+        }
+    }
+
+    private static List<List<String>> readAll(DataReader dataReader) throws IOException {
+        try (dataReader) {
+            List<List<String>> rows = new ArrayList<>();
+            while (dataReader.next()) {
+                String[] row = new String[dataReader.size()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = dataReader.get(i);
+                }
+                rows.add(Arrays.asList(row));
+            }
+            return rows;
+        }
+    }
+}
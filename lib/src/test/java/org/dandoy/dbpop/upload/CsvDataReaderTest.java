@@ -0,0 +1,164 @@
+package org.dandoy.dbpop.upload;
+
+import org.apache.commons.csv.CSVFormat;
+import org.dandoy.dbpop.database.ColumnType;
+import org.dandoy.dbpop.utils.DbPopUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvDataReaderTest {
+    private static final String CSV = """
+            id,name,amount,created
+            1,"Smith, John",12.50,2023-01-02 03:04:05.6
+
+            -2,"say ""hi""\",,2023-01-02
+            3,"",0,2023-01-02T03:04:05Z\r
+            4,"multi
+            line" ,-0.5,2023-01-02 03:04:05
+            5,{{yesterday}},1,
+            """;
+
+    @Test
+    void sameAsCommonsCsv() throws IOException {
+        CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .setNullString("")
+                .build();
+        try (DataReader expected = new CommonsCsvDataReader(csvFormat.parse(new StringReader(CSV)));
+             DataReader actual = new CsvDataReader(new StringReader(CSV))) {
+            assertEquals(expected.getHeaderNames(), actual.getHeaderNames());
+            assertEquals(readAll(expected), readAll(actual));
+        }
+    }
+
+    @Test
+    void typedGetters() throws IOException {
+        try (DataReader dataReader = new CsvDataReader(new StringReader(CSV))) {
+            assertTrue(dataReader.next());
+            assertEquals(1L, dataReader.getLong(0));
+            assertEquals(new BigDecimal("12.50"), dataReader.getBigDecimal(2));
+            assertEquals(Timestamp.valueOf("2023-01-02 03:04:05.6"), dataReader.getTimestamp(3));
+
+            assertTrue(dataReader.next());
+            assertEquals(-2L, dataReader.getLong(0));
+            assertTrue(dataReader.isNull(2));
+            assertEquals(Timestamp.valueOf("2023-01-02 00:00:00"), dataReader.getTimestamp(3));
+
+            assertTrue(dataReader.next());
+            assertTrue(dataReader.isNull(1));
+            assertEquals(Timestamp.valueOf("2023-01-02 03:04:05"), dataReader.getTimestamp(3));
+
+            assertTrue(dataReader.next());
+            assertEquals(new BigDecimal("-0.5"), dataReader.getBigDecimal(2));
+
+            assertTrue(dataReader.next());
+            assertTrue(dataReader.isExpression(1));
+            assertFalse(dataReader.isExpression(0));
+            assertThrows(NumberFormatException.class, () -> dataReader.getLong(1));
+
+            assertFalse(dataReader.next());
+        }
+    }
+
+    @Test
+    void invalidQuotes() {
+        assertThrows(IOException.class, () -> {
+            try (DataReader dataReader = new CsvDataReader(new StringReader("a,b\n\"x\"y,z\n"))) {
+                dataReader.next();
+            }
+        });
+        assertThrows(IOException.class, () -> {
+            try (DataReader dataReader = new CsvDataReader(new StringReader("a,b\n\"x,z\n"))) {
+                dataReader.next();
+            }
+        });
+    }
+
+    @Test
+    void timestamps() throws IOException {
+        String csv = """
+                created
+                2023-01-02
+                2023-01-02 03:04:05
+                2023-01-02 03:04:05.6
+                2023-01-02 03:04:05.678
+                2023-01-02T03:04:05Z
+                2023-01-02T03:04:05.6Z
+                2023-01-02T03:04:05.678Z
+                """;
+        try (DataReader dataReader = new CsvDataReader(new StringReader(csv))) {
+            while (dataReader.next()) {
+                String value = dataReader.get(0);
+                assertEquals(ColumnType.TIMESTAMP.parse(value), dataReader.getTimestamp(0), value);
+            }
+        }
+        assertEquals(Timestamp.valueOf("2023-01-02 03:04:05.678"), ColumnType.TIMESTAMP.parse("2023-01-02T03:04:05.678Z"));
+    }
+
+    /**
+     * Reads every data file of the test datasets with both readers
+     */
+    @Test
+    void testDatasets() throws IOException {
+        List<File> files;
+        try (Stream<Path> paths = Files.walk(Path.of("src/test/resources"))) {
+            files = paths
+                    .filter(path -> path.toString().endsWith(".csv"))
+                    .map(Path::toFile)
+                    .toList();
+        }
+        assertFalse(files.isEmpty());
+        for (File file : files) {
+            try (DataReader expected = new CommonsCsvDataReader(DbPopUtils.createCsvParser(file));
+                 DataReader actual = CsvDataReader.open(file)) {
+                assertEquals(expected.getHeaderNames(), actual.getHeaderNames(), file.toString());
+                while (expected.next()) {
+                    assertTrue(actual.next(), file.toString());
+                    for (int i = 0; i < expected.getHeaderNames().size(); i++) {
+                        assertEquals(expected.get(i), actual.get(i), file.toString());
+                        assertEquals(expected.isExpression(i), actual.isExpression(i), file.toString());
+                        if (isTimestamp(expected.get(i))) {
+                            assertEquals(expected.getTimestamp(i), actual.getTimestamp(i), file.toString());
+                        }
+                    }
+                }
+                assertFalse(actual.next(), file.toString());
+            }
+        }
+    }
+
+    private static boolean isTimestamp(String value) {
+        if (value == null || value.length() < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') return false;
+        try {
+            ColumnType.TIMESTAMP.parse(value);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static List<List<String>> readAll(DataReader dataReader) throws IOException {
+        List<List<String>> ret = new ArrayList<>();
+        while (dataReader.next()) {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < dataReader.getHeaderNames().size(); i++) {
+                values.add(dataReader.get(i));
+            }
+            ret.add(values);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,59 @@
+package org.dandoy.dbpop.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelinedDataReaderTest {
+    @Test
+    void sameRowsAsTheSource() throws IOException {
+        StringBuilder csv = new StringBuilder("id,name,value\n");
+        for (int i = 0; i < 10000; i++) {
+            csv.append(i).append(",\"name ").append(i).append("\",").append(i % 3 == 0 ? "" : i * 2).append('\n');
+        }
+        try (DataReader expected = new CsvDataReader(new StringReader(csv.toString()));
+             DataReader actual = new PipelinedDataReader(new CsvDataReader(new StringReader(csv.toString())), "test")) {
+            assertEquals(expected.getHeaderNames(), actual.getHeaderNames());
+            while (expected.next()) {
+                assertTrue(actual.next());
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.getLong(0), actual.getLong(0));
+                assertEquals(expected.get(1), actual.get(1));
+                assertEquals(expected.isNull(2), actual.isNull(2));
+            }
+            assertFalse(actual.next());
+        }
+    }
+
+    @Test
+    void failureAfterTheValidRows() throws IOException {
+        String csv = "id,name\n1,a\n2,\"b\"x\n";
+        try (DataReader dataReader = new PipelinedDataReader(new CsvDataReader(new StringReader(csv)), "test")) {
+            assertTrue(dataReader.next());
+            assertEquals("a", dataReader.get(1));
+            assertThrows(IOException.class, dataReader::next);
+        }
+    }
+
+    @Test
+    void errorAfterTheValidRows() throws IOException {
+        String csv = "id,name\n1,a\n2,b\n";
+        DataReader failing = new CsvDataReader(new StringReader(csv)) {
+            private int rows;
+
+            @Override
+            public boolean next() throws IOException {
+                if (++rows == 2) throw new StackOverflowError();
+                return super.next();
+            }
+        };
+        try (DataReader dataReader = new PipelinedDataReader(failing, "test")) {
+            assertTrue(dataReader.next());
+            assertEquals("a", dataReader.get(1));
+            assertThrows(StackOverflowError.class, dataReader::next);
+        }
+    }
+}
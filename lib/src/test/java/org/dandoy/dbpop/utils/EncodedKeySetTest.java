@@ -0,0 +1,39 @@
+package org.dandoy.dbpop.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedKeySetTest {
+    @Test
+    void addAndContains() {
+        EncodedKeySet set = new EncodedKeySet();
+        assertTrue(set.add(List.of("a", "b")));
+        assertFalse(set.add(List.of("a", "b")));
+        assertTrue(set.add(List.of("ab", "")));
+        assertTrue(set.add(List.of("a", "")));
+        assertTrue(set.add(Arrays.asList("a", null)));
+        assertFalse(set.add(Arrays.asList("a", null)));
+        assertTrue(set.add(List.of("a")));
+        assertTrue(set.add(List.of("\u00e9", "\u65e5\u672c")));
+        assertTrue(set.contains(List.of("\u00e9", "\u65e5\u672c")));
+        assertFalse(set.contains(List.of("b", "a")));
+        assertEquals(6, set.size());
+    }
+
+    @Test
+    void resize() {
+        EncodedKeySet set = new EncodedKeySet();
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.add(List.of("key" + i, String.valueOf(i % 7))));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.contains(List.of("key" + i, String.valueOf(i % 7))));
+            assertFalse(set.contains(List.of("key" + i, String.valueOf((i + 1) % 7))));
+        }
+        assertEquals(100_000, set.size());
+    }
+}
@@ -0,0 +1,46 @@
+package org.dandoy.dbpop.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+    @Test
+    void addAndContains() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(-1));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-1));
+        assertFalse(set.contains(1));
+        assertEquals(3, set.size());
+
+        set.clear();
+        assertFalse(set.contains(0));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    void resize() {
+        LongHashSet set = new LongHashSet();
+        for (long i = 0; i < 100_000; i++) {
+            assertTrue(set.add(i * 3));
+        }
+        for (long i = 0; i < 100_000; i++) {
+            assertFalse(set.add(i * 3));
+            assertTrue(set.contains(i * 3));
+            assertFalse(set.contains(i * 3 + 1));
+        }
+        assertEquals(100_000, set.size());
+
+        Set<Long> values = new HashSet<>();
+        set.forEach(values::add);
+        assertEquals(100_000, values.size());
+    }
+}